@@ -0,0 +1,216 @@
+import java.sql.*;
+import java.time.LocalDateTime;
+
+/**
+ * BenchmarkDatabase points DatabaseConnection at an in-memory H2 database running in MySQL
+ * compatibility mode and creates the current schema in it. It must run before anything
+ * touches DatabaseConnection, because the connection settings are read once at class load.
+ */
+public final class BenchmarkDatabase {
+
+    private static boolean started = false;
+
+    private BenchmarkDatabase() {}
+
+    public static synchronized void start() {
+        if (started) return;
+        System.setProperty("banking.db.url", "jdbc:h2:mem:banking;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        System.setProperty("banking.db.user", "sa");
+        System.setProperty("banking.db.password", "");
+        System.setProperty("banking.db.driver", "org.h2.Driver");
+        System.setProperty("banking.pool.minSize", "1");
+        createSchema();
+        started = true;
+    }
+
+    // Mirrors the schema SchemaMigrator produces on MySQL at LATEST_VERSION; the migrations
+    // themselves use MySQL-only DDL (GET_LOCK, ALGORITHM=INPLACE), so H2 gets the end state
+    // directly and a new migration has to be added here as well
+    private static void createSchema() {
+        execute("""
+            CREATE TABLE IF NOT EXISTS Users (
+                UserID VARCHAR(50) PRIMARY KEY,
+                Username VARCHAR(50) UNIQUE NOT NULL,
+                Password VARCHAR(255) NOT NULL,
+                FullName VARCHAR(100) NOT NULL,
+                Email VARCHAR(100),
+                Phone VARCHAR(20),
+                CreatedDate VARCHAR(50) NOT NULL
+            )
+        """);
+        execute("""
+            CREATE TABLE IF NOT EXISTS CheckingAccount (
+                CheckingAccountNumber VARCHAR(50) PRIMARY KEY,
+                CustomerName VARCHAR(50) NOT NULL,
+                Balance DECIMAL(19,2) NOT NULL DEFAULT 0.00,
+                CustomerID VARCHAR(50) NOT NULL,
+                FOREIGN KEY (CustomerID) REFERENCES Users(UserID)
+            )
+        """);
+        execute("""
+            CREATE TABLE IF NOT EXISTS SavingsAccount (
+                SavingsAccountNumber VARCHAR(50) PRIMARY KEY,
+                CustomerName VARCHAR(50) NOT NULL,
+                Balance DECIMAL(19,2) NOT NULL DEFAULT 0.00,
+                InterestRate DECIMAL(7,4) NOT NULL DEFAULT 2.5000,
+                CustomerID VARCHAR(50) NOT NULL,
+                FOREIGN KEY (CustomerID) REFERENCES Users(UserID)
+            )
+        """);
+        execute("""
+            CREATE TABLE IF NOT EXISTS Transactions (
+                TransactionNumber VARCHAR(50) PRIMARY KEY,
+                TransactionAmount DECIMAL(19,2) NOT NULL,
+                TransactionType VARCHAR(50) NOT NULL,
+                TransactionTime VARCHAR(50) NOT NULL,
+                TransactionDate VARCHAR(50) NOT NULL,
+                FromAccount VARCHAR(50),
+                ToAccount VARCHAR(50),
+                CustomerID VARCHAR(50) NOT NULL,
+                TransactionTimestamp DATETIME NULL,
+                FOREIGN KEY (CustomerID) REFERENCES Users(UserID)
+            )
+        """);
+        execute("CREATE INDEX IF NOT EXISTS idx_transactions_customer_time ON Transactions (CustomerID, TransactionTimestamp, TransactionNumber)");
+        execute("CREATE INDEX IF NOT EXISTS idx_checking_customer ON CheckingAccount (CustomerID)");
+        execute("CREATE INDEX IF NOT EXISTS idx_savings_customer ON SavingsAccount (CustomerID)");
+        execute("""
+            CREATE TABLE IF NOT EXISTS InterestRun (
+                RunID VARCHAR(50) PRIMARY KEY,
+                Months INT NOT NULL,
+                Status VARCHAR(20) NOT NULL,
+                CreatedAt DATETIME NOT NULL,
+                CompletedAt DATETIME NULL
+            )
+        """);
+        execute("""
+            CREATE TABLE IF NOT EXISTS InterestRunChunk (
+                RunID VARCHAR(50) NOT NULL,
+                ChunkNo INT NOT NULL,
+                StartAfter VARCHAR(50) NOT NULL,
+                EndAt VARCHAR(50) NOT NULL,
+                Status VARCHAR(20) NOT NULL,
+                Accounts INT NULL,
+                InterestCents BIGINT NULL,
+                CompletedAt DATETIME NULL,
+                PRIMARY KEY (RunID, ChunkNo),
+                FOREIGN KEY (RunID) REFERENCES InterestRun(RunID)
+            )
+        """);
+        execute("""
+            CREATE TABLE IF NOT EXISTS ImportRun (
+                ImportID VARCHAR(50) PRIMARY KEY,
+                Source VARCHAR(255) NOT NULL,
+                BatchSize INT NOT NULL,
+                Status VARCHAR(20) NOT NULL,
+                CreatedAt DATETIME NOT NULL,
+                CompletedAt DATETIME NULL
+            )
+        """);
+        execute("""
+            CREATE TABLE IF NOT EXISTS ImportBatch (
+                ImportID VARCHAR(50) NOT NULL,
+                BatchNo INT NOT NULL,
+                FirstLine BIGINT NOT NULL,
+                LineCount INT NOT NULL,
+                Customers INT NOT NULL,
+                Accounts INT NOT NULL,
+                Rejected INT NOT NULL,
+                CompletedAt DATETIME NOT NULL,
+                PRIMARY KEY (ImportID, BatchNo),
+                FOREIGN KEY (ImportID) REFERENCES ImportRun(ImportID)
+            )
+        """);
+        execute("""
+            CREATE TABLE IF NOT EXISTS ImportReject (
+                ImportID VARCHAR(50) NOT NULL,
+                LineNo BIGINT NOT NULL,
+                Reason VARCHAR(200) NOT NULL,
+                RawLine TEXT NOT NULL,
+                PRIMARY KEY (ImportID, LineNo),
+                FOREIGN KEY (ImportID) REFERENCES ImportRun(ImportID)
+            )
+        """);
+        execute("""
+            CREATE TABLE IF NOT EXISTS LedgerSinkPosition (
+                PartitionNo INT PRIMARY KEY,
+                LastSequence BIGINT NOT NULL,
+                UpdatedAt DATETIME NOT NULL
+            )
+        """);
+        execute("""
+            CREATE TABLE IF NOT EXISTS DailyAccountRollup (
+                AccountNumber VARCHAR(50) NOT NULL,
+                RollupDate DATE NOT NULL,
+                CustomerID VARCHAR(50) NOT NULL,
+                OpeningBalance DECIMAL(19,2) NOT NULL,
+                ClosingBalance DECIMAL(19,2) NOT NULL,
+                DepositTotal DECIMAL(19,2) NOT NULL,
+                DepositCount INT NOT NULL,
+                WithdrawalTotal DECIMAL(19,2) NOT NULL,
+                WithdrawalCount INT NOT NULL,
+                InterestTotal DECIMAL(19,2) NOT NULL,
+                InterestCount INT NOT NULL,
+                TransferInTotal DECIMAL(19,2) NOT NULL,
+                TransferInCount INT NOT NULL,
+                TransferOutTotal DECIMAL(19,2) NOT NULL,
+                TransferOutCount INT NOT NULL,
+                PRIMARY KEY (AccountNumber, RollupDate)
+            )
+        """);
+        execute("CREATE INDEX IF NOT EXISTS idx_rollup_customer ON DailyAccountRollup (CustomerID, RollupDate)");
+    }
+
+    /** Registers a user through the application code and returns it as stored. */
+    public static User createUser(String username, String password) {
+        User user = new User(username, password, "Bench " + username, username + "@example.com", "555-0100");
+        if (!user.registerUser()) {
+            throw new IllegalStateException("Could not register benchmark user " + username);
+        }
+        return user;
+    }
+
+    /** Inserts historySize ledger rows for the customer, one minute apart, in a single batch. */
+    public static void seedHistory(String customerID, String accountNumber, int historySize) {
+        Connection connection = DatabaseConnection.getConnection();
+        PreparedStatement statement = null;
+        try {
+            connection.setAutoCommit(false);
+            statement = connection.prepareStatement(Transaction.INSERT_SQL);
+            LocalDateTime start = LocalDateTime.now().minusMinutes(historySize);
+            for (int i = 0; i < historySize; i++) {
+                Transaction t = new Transaction(Money.ofMajor(10 + (i % 50)), i % 2 == 0 ? "Deposit" : "Withdrawal",
+                        i % 2 == 0 ? null : accountNumber, i % 2 == 0 ? accountNumber : null, customerID);
+                LocalDateTime at = start.plusMinutes(i);
+                t.setTransactionDate(at.toLocalDate().toString());
+                t.setTransactionTime(at.toLocalTime().withNano(0).toString());
+                t.bindInsert(statement, 1);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not seed history", e);
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+    }
+
+    public static void execute(String sql, Object... params) {
+        Connection connection = DatabaseConnection.getConnection();
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement(sql);
+            for (int i = 0; i < params.length; i++) {
+                statement.setObject(i + 1, params[i]);
+            }
+            statement.execute();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Benchmark setup failed: " + sql, e);
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Drives the banking classes for the JMH benchmarks in the bench package.
+ */
+public class BenchmarkFixture implements bench.BankingFixture {
+
+    private static final long SAVINGS_BALANCE = Money.ofMajor(1_000_000);
+    private static final String PASSWORD = "correct horse battery staple";
+
+    private CheckingAccount checking;
+    private SavingsAccount savings;
+    private String historyCustomerID;
+    private String writerCustomerID;
+    private String username;
+
+    @Override
+    public void setUpAccounts() {
+        BenchmarkDatabase.start();
+        User user = BenchmarkDatabase.createUser("accounts" + System.nanoTime(), PASSWORD);
+        checking = new CheckingAccount(user.getFullName(), Money.ofMajor(1_000_000_000), user.getUserID());
+        checking.createAccount();
+        // A tiny rate keeps the balance from compounding out of range over millions of calls
+        savings = new SavingsAccount(user.getFullName(), SAVINGS_BALANCE, 0.01f, user.getUserID());
+        savings.createAccount();
+    }
+
+    @Override
+    public void resetSavings() {
+        BenchmarkDatabase.execute("UPDATE SavingsAccount SET Balance = ? WHERE SavingsAccountNumber = ?",
+                Money.toDecimal(SAVINGS_BALANCE), savings.getSavingsAccountNumber());
+        savings.setBalance(SAVINGS_BALANCE);
+    }
+
+    @Override
+    public boolean checkingDeposit() {
+        return checking.deposit(Money.ofMajor(1));
+    }
+
+    @Override
+    public boolean checkingWithdraw() {
+        return checking.withdraw(Money.ofMajor(1));
+    }
+
+    @Override
+    public boolean savingsApplyInterest() {
+        return savings.applyInterest(1);
+    }
+
+    @Override
+    public void setUpLedger(int historySize) {
+        BenchmarkDatabase.start();
+        User reader = BenchmarkDatabase.createUser("history" + historySize + "_" + System.nanoTime(), PASSWORD);
+        CheckingAccount account = new CheckingAccount(reader.getFullName(), 0, reader.getUserID());
+        account.createAccount();
+        BenchmarkDatabase.seedHistory(reader.getUserID(), account.getCheckingAccountNumber(), historySize);
+        historyCustomerID = reader.getUserID();
+
+        // Rows written by recordTransaction go to another customer so the history size stays fixed
+        writerCustomerID = BenchmarkDatabase.createUser("ledger" + System.nanoTime(), PASSWORD).getUserID();
+    }
+
+    @Override
+    public boolean recordTransaction() {
+        return new Transaction(Money.ofMajor(25), "Deposit", null, "CHK-BENCH", writerCustomerID).recordTransaction();
+    }
+
+    @Override
+    public Object getAllTransactions() {
+        return Transaction.getAllTransactions(historyCustomerID);
+    }
+
+    @Override
+    public Object getRecentTransactions() {
+        return Transaction.getRecentTransactions(historyCustomerID);
+    }
+
+    @Override
+    public void streamTransactions(Consumer<Object> sink) {
+        try (Stream<Transaction> transactions = Transaction.streamTransactions(historyCustomerID)) {
+            transactions.forEach(sink);
+        }
+    }
+
+    @Override
+    public void setUpLogin() {
+        BenchmarkDatabase.start();
+        username = "login" + System.nanoTime();
+        BenchmarkDatabase.createUser(username, PASSWORD);
+    }
+
+    @Override
+    public Object authenticateUser() {
+        return User.authenticateUser(username, PASSWORD);
+    }
+}
@@ -0,0 +1,398 @@
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LoadGenerator drives AccountService with a population of synthetic customers, each one a
+ * virtual thread looping over a weighted mix of login, deposit, withdraw, balance, history
+ * and export until the run ends. Latencies are recorded per operation in HdrHistograms and
+ * printed as throughput and p50/p99/p99.9 at every interval and for the whole run. At the
+ * end every seeded account's balance is compared with the sum of its ledger rows.
+ *
+ * The seeded users share a run prefix, so several runs can share a database and the check
+ * only looks at the current run. Passwords are hashed as configured; lower
+ * banking.auth.pbkdf2Iterations to seed large populations quickly.
+ *
+ * Command line:
+ *   java -cp benchmarks.jar LoadGenerator [--h2] [--users N] [--clients N] [--duration S]
+ *        [--warmup S] [--interval S] [--think MS] [--mix login=5,deposit=30,...] [--hgrm DIR]
+ *
+ * --h2 runs against an in-memory database; without it the banking.db.* settings are used.
+ * The exit status is 1 if the consistency check finds a mismatch.
+ */
+public class LoadGenerator {
+
+    enum Operation { LOGIN, DEPOSIT, WITHDRAW, BALANCE, HISTORY, EXPORT }
+
+    private static final String PASSWORD = "load-test password";
+    private static final long OPENING_BALANCE = Money.ofMajor(10_000);
+    private static final long HIGHEST_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int HISTORY_PAGE = 20;
+
+    private final AccountService service = new AccountService();
+    private final String runPrefix = "load" + Long.toString(System.currentTimeMillis(), 36) + "_";
+    private final Map<Operation, Integer> mix;
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+    private final Map<Operation, Histogram> totals = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> rejected = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> failed = new EnumMap<>(Operation.class);
+    private final Operation[] table;
+    private final long thinkMillis;
+    private final Path exportDir;
+
+    private final List<Customer> customers = new ArrayList<>();
+
+    /**
+     * One seeded customer; clients beyond the population share customers round-robin. Each
+     * client keeps its own session, so one client's LOGIN never logs another one out.
+     */
+    private static final class Customer {
+        final String username;
+        final String userID;
+        // Session opened while seeding; taken over by the first client on this customer
+        final String token;
+
+        Customer(String username, String userID, String token) {
+            this.username = username;
+            this.userID = userID;
+            this.token = token;
+        }
+    }
+
+    /**
+     * @param mix Relative weight of each operation; missing operations are not run
+     * @param thinkMillis Pause between one client's operations
+     */
+    public LoadGenerator(Map<Operation, Integer> mix, long thinkMillis) throws IOException {
+        this.mix = mix;
+        this.thinkMillis = thinkMillis;
+        this.exportDir = Files.createTempDirectory("load-export");
+        List<Operation> weighted = new ArrayList<>();
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) weighted.add(entry.getKey());
+        }
+        if (weighted.isEmpty()) throw new IllegalArgumentException("The operation mix is empty");
+        this.table = weighted.toArray(new Operation[0]);
+        for (Operation op : Operation.values()) {
+            recorders.put(op, new Recorder(HIGHEST_LATENCY_NANOS, 3));
+            totals.put(op, new Histogram(HIGHEST_LATENCY_NANOS, 3));
+            rejected.put(op, new LongAdder());
+            failed.put(op, new LongAdder());
+        }
+    }
+
+    /**
+     * Registers the customers and opens a checking and a savings account for each, using a
+     * bounded number of threads so registration is not refused by the login executor.
+     */
+    public void seed(int users) throws InterruptedException {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ExecutorService seeders = Executors.newFixedThreadPool(threads);
+        Customer[] seeded = new Customer[users];
+        AtomicLong done = new AtomicLong();
+        long start = System.nanoTime();
+        for (int i = 0; i < users; i++) {
+            int index = i;
+            seeders.execute(() -> {
+                try {
+                    seeded[index] = seedCustomer(runPrefix + index);
+                } catch (RuntimeException e) {
+                    System.err.println("Seeding " + runPrefix + index + " failed: " + e.getMessage());
+                }
+                long count = done.incrementAndGet();
+                if (count % 1000 == 0) System.out.println("Seeded " + count + " / " + users);
+            });
+        }
+        seeders.shutdown();
+        seeders.awaitTermination(1, TimeUnit.DAYS);
+        for (Customer customer : seeded) {
+            if (customer != null) customers.add(customer);
+        }
+        if (customers.isEmpty()) throw new IllegalStateException("No customers could be seeded");
+        System.out.printf("Seeded %d customers in %.1f s%n", customers.size(), (System.nanoTime() - start) / 1e9);
+    }
+
+    private Customer seedCustomer(String username) {
+        String userID = retryWhileBusy(() -> service.register(username, PASSWORD, "Load " + username,
+                username + "@example.com", "555-0100"));
+        String token = retryWhileBusy(() -> service.login(username, PASSWORD));
+        service.openCheckingAccount(token, OPENING_BALANCE);
+        service.openSavingsAccount(token, OPENING_BALANCE, 2.5f);
+        return new Customer(username, userID, token);
+    }
+
+    private static <T> T retryWhileBusy(Callable<T> call) {
+        while (true) {
+            try {
+                return call.call();
+            } catch (ServiceException e) {
+                if (e.getReason() != ServiceException.Reason.BUSY) throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while seeding", e);
+            }
+        }
+    }
+
+    /**
+     * Runs the clients and reports every interval
+     * @param clients Number of concurrent virtual-thread clients
+     * @param warmupSeconds Leading seconds left out of the final totals
+     */
+    public void run(int clients, int durationSeconds, int warmupSeconds, int intervalSeconds) throws InterruptedException, IOException {
+        long startNanos = System.nanoTime();
+        long measureFrom = startNanos + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long endNanos = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        System.out.printf("Running %d clients over %d customers for %d s (+%d s warm-up), mix %s%n",
+                clients, customers.size(), durationSeconds, warmupSeconds, mix);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                Customer customer = customers.get(i % customers.size());
+                boolean first = i < customers.size();
+                executor.execute(() -> client(customer, first ? customer.token : null, endNanos));
+            }
+            long lastReport = startNanos;
+            boolean warmedUp = warmupSeconds == 0;
+            while (lastReport < endNanos) {
+                // Reports fall on interval boundaries, the end of warm-up and the end of the run
+                long next = Math.min(lastReport + TimeUnit.SECONDS.toNanos(intervalSeconds), warmedUp ? endNanos : measureFrom);
+                TimeUnit.NANOSECONDS.sleep(Math.max(0, next - System.nanoTime()));
+                long now = System.nanoTime();
+                report(warmedUp ? "interval" : "warm-up", now - lastReport, warmedUp);
+                lastReport = now;
+                if (!warmedUp && now >= measureFrom) {
+                    warmedUp = true;
+                    for (Operation op : Operation.values()) {
+                        rejected.get(op).reset();
+                        failed.get(op).reset();
+                    }
+                }
+            }
+        }
+        // Operations that were in flight when the run ended
+        report("drain", System.nanoTime() - endNanos, true);
+        printTotals(Math.max(1, endNanos - measureFrom));
+        Files.deleteIfExists(exportDir);
+    }
+
+    // token is the client's session, or null to open one for a client sharing the customer
+    private void client(Customer customer, String token, long endNanos) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (token == null) {
+            token = retryWhileBusy(() -> service.login(customer.username, PASSWORD));
+        }
+        while (System.nanoTime() < endNanos) {
+            Operation op = table[random.nextInt(table.length)];
+            long start = System.nanoTime();
+            try {
+                token = execute(op, customer, token, random);
+            } catch (ServiceException e) {
+                switch (e.getReason()) {
+                    // Business rejections are valid outcomes, not failures of the system
+                    case INSUFFICIENT_FUNDS, CONFLICT -> rejected.get(op).increment();
+                    default -> failed.get(op).increment();
+                }
+            } catch (Exception e) {
+                failed.get(op).increment();
+            }
+            recorders.get(op).recordValue(Math.min(System.nanoTime() - start, HIGHEST_LATENCY_NANOS));
+            if (thinkMillis > 0) {
+                try {
+                    Thread.sleep(thinkMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Returns the client's session afterwards, which LOGIN replaces
+    private String execute(Operation op, Customer customer, String token, ThreadLocalRandom random) throws Exception {
+        AccountTransfer.AccountType type = random.nextBoolean()
+                ? AccountTransfer.AccountType.CHECKING : AccountTransfer.AccountType.SAVINGS;
+        long amount = Money.ofMajor(1 + random.nextInt(100));
+        switch (op) {
+            case LOGIN -> {
+                String fresh = service.login(customer.username, PASSWORD);
+                service.logout(token);
+                return fresh;
+            }
+            case DEPOSIT -> service.deposit(token, type, amount);
+            case WITHDRAW -> service.withdraw(token, type, amount);
+            case BALANCE -> service.getDashboard(token, 0);
+            case HISTORY -> service.getTransactions(token, null, HISTORY_PAGE);
+            case EXPORT -> {
+                // Each export gets its own directory so clients sharing a customer do not collide
+                Path dir = Files.createTempDirectory(exportDir, "c");
+                TransactionExporter exporter = new TransactionExporter(dir, false);
+                try {
+                    exporter.exportCustomer(customer.userID);
+                } finally {
+                    Files.deleteIfExists(exporter.fileFor(customer.userID));
+                    Files.deleteIfExists(dir);
+                }
+            }
+        }
+        return token;
+    }
+
+    private void report(String label, long elapsedNanos, boolean keep) {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        StringBuilder line = new StringBuilder(String.format("[%s %.1fs]", label, seconds));
+        for (Operation op : mix.keySet()) {
+            Histogram interval = recorders.get(op).getIntervalHistogram();
+            if (keep) totals.get(op).add(interval);
+            line.append(String.format(" %s %.0f/s p99 %.2fms", op.name().toLowerCase(),
+                    interval.getTotalCount() / seconds, interval.getValueAtPercentile(99) / 1e6));
+        }
+        System.out.println(line);
+    }
+
+    private void printTotals(long measuredNanos) {
+        double seconds = measuredNanos / 1e9;
+        System.out.println();
+        System.out.printf("%-9s %10s %9s %8s %8s %10s %10s %10s %10s%n",
+                "operation", "count", "ops/s", "rejected", "failed", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        long all = 0;
+        for (Operation op : mix.keySet()) {
+            Histogram h = totals.get(op);
+            all += h.getTotalCount();
+            System.out.printf("%-9s %10d %9.0f %8d %8d %10.2f %10.2f %10.2f %10.2f%n",
+                    op.name().toLowerCase(), h.getTotalCount(), h.getTotalCount() / seconds,
+                    rejected.get(op).sum(), failed.get(op).sum(),
+                    h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(99) / 1e6,
+                    h.getValueAtPercentile(99.9) / 1e6, h.getMaxValue() / 1e6);
+        }
+        System.out.printf("%-9s %10d %9.0f%n", "total", all, all / seconds);
+    }
+
+    /**
+     * Writes each operation's full percentile distribution to DIR/<operation>.hgrm (in
+     * milliseconds), the format HdrHistogram's plotter reads, for comparing runs.
+     */
+    public void writeDistributions(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        for (Operation op : mix.keySet()) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve(op.name().toLowerCase() + ".hgrm")))) {
+                totals.get(op).outputPercentileDistribution(out, 1e6);
+            }
+        }
+    }
+
+    /**
+     * Compares every seeded account's balance with its ledger: credits are rows whose
+     * ToAccount is the account, debits rows whose FromAccount is.
+     * @return Number of accounts whose balance differs from the ledger sum
+     */
+    public int checkConsistency() throws SQLException {
+        String ledger = "(SELECT COALESCE(SUM(TransactionAmount), 0) FROM Transactions WHERE ToAccount = a.%1$s) - " +
+                "(SELECT COALESCE(SUM(TransactionAmount), 0) FROM Transactions WHERE FromAccount = a.%1$s)";
+        String owners = " WHERE a.CustomerID IN (SELECT UserID FROM Users WHERE Username LIKE ?)";
+        int accounts = 0;
+        int mismatches = 0;
+        Connection connection = DatabaseConnection.getConnection();
+        try {
+            for (String[] table : new String[][] {{"CheckingAccount", "CheckingAccountNumber"}, {"SavingsAccount", "SavingsAccountNumber"}}) {
+                String sql = "SELECT a." + table[1] + ", a.Balance, " + String.format(ledger, table[1]) +
+                        " FROM " + table[0] + " a" + owners;
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setString(1, runPrefix + "%");
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            accounts++;
+                            long balance = Money.read(rs, 2);
+                            long ledgerSum = Money.read(rs, 3);
+                            if (balance != ledgerSum) {
+                                if (mismatches++ < 10) {
+                                    System.err.println("Mismatch on " + rs.getString(1) + ": balance " +
+                                            Money.format(balance) + ", ledger " + Money.format(ledgerSum));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            DatabaseConnection.closeConnection(connection);
+        }
+        System.out.println();
+        System.out.println("Consistency check: " + accounts + " accounts, " + mismatches + " mismatches");
+        return mismatches;
+    }
+
+    /** Parses "login=5,deposit=30,..." into weights. */
+    static Map<Operation, Integer> parseMix(String text) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : text.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) throw new IllegalArgumentException("Bad mix entry: " + part);
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight < 0) throw new IllegalArgumentException("Negative weight: " + part);
+            if (weight > 0) mix.put(Operation.valueOf(pair[0].trim().toUpperCase()), weight);
+        }
+        return mix;
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean h2 = false;
+        int users = 1000;
+        int clients = -1;
+        int duration = 60;
+        int warmup = 10;
+        int interval = 10;
+        long think = 0;
+        String mix = "login=5,deposit=30,withdraw=25,balance=25,history=10,export=5";
+        Path hgrm = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--h2" -> h2 = true;
+                case "--users" -> users = Integer.parseInt(args[++i]);
+                case "--clients" -> clients = Integer.parseInt(args[++i]);
+                case "--duration" -> duration = Integer.parseInt(args[++i]);
+                case "--warmup" -> warmup = Integer.parseInt(args[++i]);
+                case "--interval" -> interval = Integer.parseInt(args[++i]);
+                case "--think" -> think = Long.parseLong(args[++i]);
+                case "--mix" -> mix = args[++i];
+                case "--hgrm" -> hgrm = Paths.get(args[++i]);
+                default -> {
+                    System.out.println("Usage: java LoadGenerator [--h2] [--users N] [--clients N] [--duration S] " +
+                            "[--warmup S] [--interval S] [--think MS] [--mix op=weight,...] [--hgrm DIR]");
+                    return;
+                }
+            }
+        }
+
+        if (h2) {
+            BenchmarkDatabase.start();
+        } else {
+            DatabaseConnection.initializeDatabase();
+        }
+        UsernameFilter.startWarmUp();
+
+        LoadGenerator generator = new LoadGenerator(parseMix(mix), think);
+        generator.seed(users);
+        generator.run(clients > 0 ? clients : users, duration, warmup, Math.max(1, interval));
+        if (hgrm != null) generator.writeDistributions(hgrm);
+        // With the ledger engine on, MySQL trails it by the sink's delay; drain it first
+        LedgerEngine.shutdownIfStarted();
+        int mismatches = generator.checkConsistency();
+        DatabaseConnection.shutdownPool();
+        System.exit(mismatches == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,45 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Money movement hot paths: each operation is a balance UPDATE plus its ledger INSERT
+ * committed together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountBenchmarks {
+
+    private BankingFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = BankingFixture.create();
+        fixture.setUpAccounts();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetSavings() {
+        fixture.resetSavings();
+    }
+
+    @Benchmark
+    public boolean checkingDeposit() {
+        return fixture.checkingDeposit();
+    }
+
+    @Benchmark
+    public boolean checkingWithdraw() {
+        return fixture.checkingWithdraw();
+    }
+
+    @Benchmark
+    public boolean savingsApplyInterest() {
+        return fixture.savingsApplyInterest();
+    }
+}
@@ -0,0 +1,34 @@
+package bench;
+
+import java.util.function.Consumer;
+
+/**
+ * Operations the benchmarks drive. The banking classes live in the default package, which
+ * code in a named package cannot import, so the implementation (BenchmarkFixture, in the
+ * default package) is loaded by name and used through this interface.
+ */
+public interface BankingFixture {
+
+    void setUpAccounts();
+    void resetSavings();
+    boolean checkingDeposit();
+    boolean checkingWithdraw();
+    boolean savingsApplyInterest();
+
+    void setUpLedger(int historySize);
+    boolean recordTransaction();
+    Object getAllTransactions();
+    Object getRecentTransactions();
+    void streamTransactions(Consumer<Object> sink);
+
+    void setUpLogin();
+    Object authenticateUser();
+
+    static BankingFixture create() {
+        try {
+            return (BankingFixture) Class.forName("BenchmarkFixture").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchmarkFixture is missing from the benchmark jar", e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Ledger writes and history reads. History reads run against a customer with a fixed
+ * number of transactions, so their cost can be compared across sizes and releases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LedgerBenchmarks {
+
+    @Param({ "10", "1000", "10000" })
+    public int historySize;
+
+    private BankingFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = BankingFixture.create();
+        fixture.setUpLedger(historySize);
+    }
+
+    @Benchmark
+    public boolean recordTransaction() {
+        return fixture.recordTransaction();
+    }
+
+    @Benchmark
+    public Object getAllTransactions() {
+        return fixture.getAllTransactions();
+    }
+
+    @Benchmark
+    public Object getRecentTransactions() {
+        return fixture.getRecentTransactions();
+    }
+
+    @Benchmark
+    public void streamTransactions(Blackhole blackhole) {
+        fixture.streamTransactions(blackhole::consume);
+    }
+}
@@ -0,0 +1,29 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Login path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserBenchmarks {
+
+    private BankingFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = BankingFixture.create();
+        fixture.setUpLogin();
+    }
+
+    @Benchmark
+    public Object authenticateUser() {
+        return fixture.authenticateUser();
+    }
+}
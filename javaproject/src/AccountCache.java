@@ -0,0 +1,157 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * AccountCache keeps each customer's checking and savings account in memory so the balance
+ * and account-information screens can be served without touching the database.
+ *
+ * Entries are bounded (least recently used customers are dropped first) and expire after a
+ * TTL. Money movements in this process drop the customer's entry as soon as they commit, so
+ * the next read loads the committed balance; patching the cached balance instead could count
+ * a change twice when a concurrent load has already read it. Changes made by other
+ * application instances reach this cache through
+ * invalidate(), which a messaging layer can call when it receives a notification published
+ * via setInvalidationPublisher(); without one, the TTL bounds how stale a balance can get.
+ *
+ * Callers always receive copies, so mutating a returned account never changes the cache.
+ */
+public class AccountCache {
+
+    private static final int MAX_CUSTOMERS = Integer.getInteger("banking.cache.maxCustomers", 10_000);
+    private static final long TTL_MILLIS = Long.getLong("banking.cache.ttlMs", 30_000L);
+
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_CUSTOMERS;
+        }
+    };
+
+    // Bumped on every write or invalidation, under the ENTRIES lock, so a load that raced
+    // with one is not cached; loads compare it under the same lock before storing
+    private static final AtomicLong WRITES = new AtomicLong();
+    private static volatile Consumer<String> invalidationPublisher = customerID -> {};
+
+    private static final class Entry {
+        final long loadedAt;
+        final CheckingAccount checking;
+        final SavingsAccount savings;
+
+        Entry(long loadedAt, CheckingAccount checking, SavingsAccount savings) {
+            this.loadedAt = loadedAt;
+            this.checking = checking;
+            this.savings = savings;
+        }
+    }
+
+    private AccountCache() {}
+
+    /**
+     * Returns the customer's checking account, loading it on a miss
+     * @param customerID Customer to look up
+     * @return Copy of the account, or null if the customer has none
+     */
+    public static CheckingAccount getCheckingAccount(String customerID) {
+        Entry entry = get(customerID);
+        return entry.checking == null ? null : entry.checking.copy();
+    }
+
+    /**
+     * Returns the customer's savings account, loading it on a miss
+     * @param customerID Customer to look up
+     * @return Copy of the account, or null if the customer has none
+     */
+    public static SavingsAccount getSavingsAccount(String customerID) {
+        Entry entry = get(customerID);
+        return entry.savings == null ? null : entry.savings.copy();
+    }
+
+    /**
+     * Drops the customer's entry after a committed local change to their accounts (a balance
+     * change or a new account) and tells other instances to drop their copy
+     * @param customerID Owner of the changed account
+     */
+    public static void accountChanged(String customerID) {
+        invalidate(customerID);
+        invalidationPublisher.accept(customerID);
+    }
+
+    /**
+     * Drops the customer's entry. Call this when another instance reports a change;
+     * it does not publish anything itself.
+     */
+    public static void invalidate(String customerID) {
+        synchronized (ENTRIES) {
+            WRITES.incrementAndGet();
+            ENTRIES.remove(customerID);
+        }
+    }
+
+    public static void invalidateAll() {
+        synchronized (ENTRIES) {
+            WRITES.incrementAndGet();
+            ENTRIES.clear();
+        }
+    }
+
+    /**
+     * Registers a callback that receives the customer ID of every local write, for
+     * broadcasting to other instances that share the database
+     */
+    public static void setInvalidationPublisher(Consumer<String> publisher) {
+        invalidationPublisher = publisher == null ? customerID -> {} : publisher;
+    }
+
+    /** Current write counter; pass it to prime() to detect writes that overlapped a load. */
+    public static long writeStamp() {
+        return WRITES.get();
+    }
+
+    /**
+     * Stores accounts loaded elsewhere (e.g. by CustomerDashboard) so later screens hit the cache
+     * @param writeStamp Value of writeStamp() taken before the accounts were read
+     */
+    public static void prime(String customerID, CheckingAccount checking, SavingsAccount savings, long writeStamp) {
+        if (checking == null && savings == null) {
+            return;
+        }
+        synchronized (ENTRIES) {
+            if (WRITES.get() == writeStamp) {
+                ENTRIES.put(customerID, new Entry(System.currentTimeMillis(), checking, savings));
+            }
+        }
+    }
+
+    public static int size() {
+        synchronized (ENTRIES) {
+            return ENTRIES.size();
+        }
+    }
+
+    private static Entry get(String customerID) {
+        long now = System.currentTimeMillis();
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(customerID);
+            if (entry != null && now - entry.loadedAt < TTL_MILLIS) {
+                return entry;
+            }
+        }
+
+        long writesBefore = WRITES.get();
+        Entry loaded = new Entry(now,
+                CheckingAccount.getAccountByCustomerID(customerID),
+                SavingsAccount.getAccountByCustomerID(customerID));
+        // A failed load looks the same as "no accounts", so only cache what was found
+        boolean found = loaded.checking != null || loaded.savings != null;
+        if (found) {
+            synchronized (ENTRIES) {
+                if (WRITES.get() == writesBefore) {
+                    ENTRIES.put(customerID, loaded);
+                }
+            }
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AccountLocks serializes money movements on the same account inside this JVM without a
+ * global lock. Account numbers hash onto a fixed set of lock stripes, so two requests
+ * for one account queue behind each other while different accounts almost always land
+ * on different stripes and run in parallel. The database guard in the UPDATE remains
+ * the authority across JVMs; the stripes just keep same-account requests from piling
+ * up on the MySQL row lock.
+ */
+public class AccountLocks {
+
+    private static final int STRIPES = stripeCount(Integer.getInteger("banking.lock.stripes", 1024));
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            LOCKS[i] = new ReentrantLock();
+        }
+    }
+
+    private AccountLocks() {}
+
+    /**
+     * Returns the lock guarding the given account
+     * @param accountNumber Checking or savings account number
+     * @return Lock shared by every account that hashes to the same stripe
+     */
+    public static ReentrantLock lockFor(String accountNumber) {
+        return LOCKS[stripeOf(accountNumber)];
+    }
+
+    /**
+     * Locks every stripe the given accounts hash to, in ascending stripe order, so threads
+     * locking overlapping sets of accounts can never wait on each other in a cycle
+     * @param accountNumbers Accounts about to be changed together
+     * @return Locks now held; pass them to unlockAll()
+     */
+    public static ReentrantLock[] lockAll(Collection<String> accountNumbers) {
+        int[] stripes = accountNumbers.stream().mapToInt(AccountLocks::stripeOf).distinct().sorted().toArray();
+        ReentrantLock[] held = new ReentrantLock[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            held[i] = LOCKS[stripes[i]];
+            held[i].lock();
+        }
+        return held;
+    }
+
+    public static void unlockAll(ReentrantLock[] held) {
+        for (int i = held.length - 1; i >= 0; i--) {
+            held[i].unlock();
+        }
+    }
+
+    private static int stripeOf(String accountNumber) {
+        int h = accountNumber == null ? 0 : accountNumber.hashCode();
+        h ^= (h >>> 16);
+        return h & (STRIPES - 1);
+    }
+
+    private static int stripeCount(int requested) {
+        int n = Integer.highestOneBit(Math.max(1, Math.min(requested, 1 << 16)));
+        return n < requested ? n << 1 : n;
+    }
+}
@@ -0,0 +1,334 @@
+import java.time.LocalDate;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * AccountService is the banking API used by both the console and the HTTP front end:
+ * registration and login, accounts, deposits, withdrawals, transfers, interest, history,
+ * activity summaries and profile.
+ *
+ * It holds no per-user state. Every call after login names its caller by the token from
+ * SessionManager, so one instance serves any number of customers from any number of
+ * threads. Accounts are read through AccountCache, which hands out copies, and balances
+ * change only through the database's atomic UPDATEs, so concurrent requests for the same
+ * customer cannot corrupt each other.
+ *
+ * Failures are reported as ServiceException with a Reason.
+ */
+public class AccountService {
+
+    public static final int MAX_PAGE_SIZE = 200;
+
+    /**
+     * Registers a new customer
+     * @return The new customer's user ID
+     */
+    public String register(String username, String password, String fullName, String email, String phone) {
+        username = required("username", username, 50);
+        required("password", password, 255);
+        fullName = required("fullName", fullName, 100);
+        email = optional("email", email, 100);
+        phone = optional("phone", phone, 20);
+
+        User user = new User(username, password, fullName, email, phone);
+        switch (user.register()) {
+            case SUCCESS -> {
+                return user.getUserID();
+            }
+            case USERNAME_TAKEN -> throw new ServiceException(ServiceException.Reason.CONFLICT, "Username already exists");
+            case BUSY -> throw new ServiceException(ServiceException.Reason.BUSY, "The system is busy, try again");
+            default -> throw new ServiceException(ServiceException.Reason.FAILED, "Registration failed");
+        }
+    }
+
+    /** True if the username can still be registered. */
+    public boolean isUsernameAvailable(String username) {
+        return username != null && !username.isBlank() && User.isUsernameAvailable(username.trim());
+    }
+
+    /**
+     * Checks the credentials and starts a session
+     * @return Session token to pass to every other call
+     */
+    public String login(String username, String password) {
+        if (username == null || password == null) {
+            throw new ServiceException(ServiceException.Reason.UNAUTHORIZED, "Invalid username or password");
+        }
+        User user;
+        try {
+            user = User.authenticate(username, password);
+        } catch (RejectedExecutionException e) {
+            throw new ServiceException(ServiceException.Reason.BUSY, "Too many logins in progress, try again");
+        }
+        if (user == null) {
+            throw new ServiceException(ServiceException.Reason.UNAUTHORIZED, "Invalid username or password");
+        }
+        try {
+            return SessionManager.issue(user);
+        } catch (IllegalStateException e) {
+            throw new ServiceException(ServiceException.Reason.BUSY, e.getMessage());
+        }
+    }
+
+    public void logout(String token) {
+        SessionManager.revoke(token);
+    }
+
+    /** The logged-in customer. Callers must not modify it; use updateProfile(). */
+    public User getProfile(String token) {
+        return requireUser(token);
+    }
+
+    /**
+     * Changes the customer's name, email and phone; null or blank keeps the current value
+     * @return The updated profile
+     */
+    public User updateProfile(String token, String fullName, String email, String phone) {
+        User user = requireUser(token);
+        fullName = optional("fullName", fullName, 100);
+        email = optional("email", email, 100);
+        phone = optional("phone", phone, 20);
+        // The session's User is shared by every request of this session, so the update is made
+        // on a copy and copied back only once it has committed
+        User updated = new User();
+        updated.setUserID(user.getUserID());
+        updated.setFullName(fullName != null ? fullName : user.getFullName());
+        updated.setEmail(email != null ? email : user.getEmail());
+        updated.setPhone(phone != null ? phone : user.getPhone());
+        if (!updated.updateUserInfo()) {
+            throw new ServiceException(ServiceException.Reason.FAILED, "Profile update failed");
+        }
+        user.setFullName(updated.getFullName());
+        user.setEmail(updated.getEmail());
+        user.setPhone(updated.getPhone());
+        return user;
+    }
+
+    /**
+     * Balances and recent activity in one query
+     * @param recentLimit Number of recent transactions to include
+     */
+    public CustomerDashboard getDashboard(String token, int recentLimit) {
+        User user = requireUser(token);
+        CustomerDashboard dashboard = CustomerDashboard.load(user.getUserID(), Math.max(0, Math.min(recentLimit, MAX_PAGE_SIZE)));
+        if (dashboard == null) {
+            throw new ServiceException(ServiceException.Reason.FAILED, "Could not load accounts");
+        }
+        return dashboard;
+    }
+
+    /** The customer's checking account, or null if there is none. */
+    public CheckingAccount getCheckingAccount(String token) {
+        return AccountCache.getCheckingAccount(requireUser(token).getUserID());
+    }
+
+    /** The customer's savings account, or null if there is none. */
+    public SavingsAccount getSavingsAccount(String token) {
+        return AccountCache.getSavingsAccount(requireUser(token).getUserID());
+    }
+
+    /**
+     * Opens a checking account
+     * @param initialDeposit Opening balance in minor units
+     * @return The new account number
+     */
+    public String openCheckingAccount(String token, long initialDeposit) {
+        User user = requireUser(token);
+        requireNonNegative(initialDeposit);
+        CheckingAccount account = new CheckingAccount(user.getFullName(), initialDeposit, user.getUserID());
+        if (!account.createAccount()) {
+            throw new ServiceException(ServiceException.Reason.FAILED, "Could not open checking account");
+        }
+        return account.getCheckingAccountNumber();
+    }
+
+    /**
+     * Opens a savings account
+     * @param initialDeposit Opening balance in minor units
+     * @param interestRate Annual rate in percent
+     * @return The new account number
+     */
+    public String openSavingsAccount(String token, long initialDeposit, float interestRate) {
+        User user = requireUser(token);
+        requireNonNegative(initialDeposit);
+        if (!(interestRate >= 0 && interestRate <= 100)) {
+            throw new ServiceException(ServiceException.Reason.INVALID_REQUEST, "Interest rate must be between 0 and 100");
+        }
+        SavingsAccount account = new SavingsAccount(user.getFullName(), initialDeposit, interestRate, user.getUserID());
+        if (!account.createAccount()) {
+            throw new ServiceException(ServiceException.Reason.FAILED, "Could not open savings account");
+        }
+        return account.getSavingsAccountNumber();
+    }
+
+    /**
+     * Deposits into the customer's checking or savings account
+     * @param amount Amount in minor units
+     * @return Balance after the deposit
+     */
+    public long deposit(String token, AccountTransfer.AccountType type, long amount) {
+        User user = requireUser(token);
+        requirePositive(amount);
+        if (type == AccountTransfer.AccountType.CHECKING) {
+            CheckingAccount account = requireChecking(user);
+            if (!account.deposit(amount)) throw failed("Deposit failed");
+            return account.getBalance();
+        }
+        SavingsAccount account = requireSavings(user);
+        if (!account.deposit(amount)) throw failed("Deposit failed");
+        return account.getBalance();
+    }
+
+    /**
+     * Withdraws from the customer's checking or savings account
+     * @param amount Amount in minor units
+     * @return Balance after the withdrawal
+     */
+    public long withdraw(String token, AccountTransfer.AccountType type, long amount) {
+        User user = requireUser(token);
+        requirePositive(amount);
+        WithdrawalResult result;
+        long balance;
+        if (type == AccountTransfer.AccountType.CHECKING) {
+            CheckingAccount account = requireChecking(user);
+            result = account.withdrawChecked(amount);
+            balance = account.getBalance();
+        } else {
+            SavingsAccount account = requireSavings(user);
+            result = account.withdrawChecked(amount);
+            balance = account.getBalance();
+        }
+        check(result, "Withdrawal failed");
+        return balance;
+    }
+
+    /**
+     * Moves money between the customer's checking and savings accounts
+     * @param from Account debited; the other one is credited
+     * @param amount Amount in minor units
+     */
+    public void transfer(String token, AccountTransfer.AccountType from, long amount) {
+        User user = requireUser(token);
+        requirePositive(amount);
+        CheckingAccount checking = requireChecking(user);
+        SavingsAccount savings = requireSavings(user);
+        AccountTransfer transfer = from == AccountTransfer.AccountType.CHECKING
+                ? AccountTransfer.checkingToSavings(checking, savings, amount)
+                : AccountTransfer.savingsToChecking(savings, checking, amount);
+        check(transfer.execute(), "Transfer failed");
+    }
+
+    /**
+     * Interest the savings account would earn, without posting it
+     * @return Interest in minor units
+     */
+    public long calculateInterest(String token, int months) {
+        requireMonths(months);
+        return requireSavings(requireUser(token)).calculateInterest(months);
+    }
+
+    /**
+     * Credits interest to the savings account
+     * @return Interest credited in minor units; 0 if there was nothing to credit
+     */
+    public long applyInterest(String token, int months) {
+        requireMonths(months);
+        SavingsAccount account = requireSavings(requireUser(token));
+        long interest = account.calculateInterest(months);
+        if (interest <= 0) return 0;
+        if (!account.applyInterest(months)) throw failed("Applying interest failed");
+        return interest;
+    }
+
+    /**
+     * One page of the customer's history, newest first
+     * @param after Last transaction of the previous page, or null for the first page
+     * @param pageSize Transactions per page, at most MAX_PAGE_SIZE
+     */
+    public TransactionPage getTransactions(String token, Transaction after, int pageSize) {
+        User user = requireUser(token);
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new ServiceException(ServiceException.Reason.INVALID_REQUEST, "Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return Transaction.getTransactionPage(user.getUserID(), after, pageSize);
+    }
+
+    /**
+     * Balances and activity totals of the customer's checking or savings account between two
+     * dates, inclusive, read from DailyRollup
+     */
+    public DailyRollup.Summary getActivitySummary(String token, AccountTransfer.AccountType type, LocalDate from, LocalDate to) {
+        User user = requireUser(token);
+        if (from.isAfter(to)) {
+            throw new ServiceException(ServiceException.Reason.INVALID_REQUEST, "from must not be after to");
+        }
+        String accountNumber = type == AccountTransfer.AccountType.CHECKING
+                ? requireChecking(user).getCheckingAccountNumber()
+                : requireSavings(user).getSavingsAccountNumber();
+        DailyRollup.Summary summary = DailyRollup.summarize(accountNumber, from, to);
+        if (summary == null) throw failed("Reading the activity summary failed");
+        return summary;
+    }
+
+    // --- Helpers ---
+
+    private static User requireUser(String token) {
+        User user = SessionManager.resolve(token);
+        if (user == null) {
+            throw new ServiceException(ServiceException.Reason.UNAUTHORIZED, "Not logged in or session expired");
+        }
+        return user;
+    }
+
+    private static CheckingAccount requireChecking(User user) {
+        CheckingAccount account = AccountCache.getCheckingAccount(user.getUserID());
+        if (account == null) throw new ServiceException(ServiceException.Reason.NOT_FOUND, "No checking account");
+        return account;
+    }
+
+    private static SavingsAccount requireSavings(User user) {
+        SavingsAccount account = AccountCache.getSavingsAccount(user.getUserID());
+        if (account == null) throw new ServiceException(ServiceException.Reason.NOT_FOUND, "No savings account");
+        return account;
+    }
+
+    private static void check(WithdrawalResult result, String message) {
+        switch (result) {
+            case SUCCESS -> {}
+            case INSUFFICIENT_FUNDS -> throw new ServiceException(ServiceException.Reason.INSUFFICIENT_FUNDS, "Insufficient funds");
+            case INVALID_AMOUNT -> throw new ServiceException(ServiceException.Reason.INVALID_REQUEST, "Invalid amount");
+            case ACCOUNT_NOT_FOUND -> throw new ServiceException(ServiceException.Reason.NOT_FOUND, "Account not found");
+            default -> throw failed(message);
+        }
+    }
+
+    private static ServiceException failed(String message) {
+        return new ServiceException(ServiceException.Reason.FAILED, message);
+    }
+
+    private static void requirePositive(long amount) {
+        if (amount <= 0) throw new ServiceException(ServiceException.Reason.INVALID_REQUEST, "Amount must be positive");
+    }
+
+    private static void requireNonNegative(long amount) {
+        if (amount < 0) throw new ServiceException(ServiceException.Reason.INVALID_REQUEST, "Amount must not be negative");
+    }
+
+    private static void requireMonths(int months) {
+        if (months <= 0) throw new ServiceException(ServiceException.Reason.INVALID_REQUEST, "Months must be positive");
+    }
+
+    private static String required(String field, String value, int maxLength) {
+        String trimmed = optional(field, value, maxLength);
+        if (trimmed == null) throw new ServiceException(ServiceException.Reason.INVALID_REQUEST, field + " is required");
+        return trimmed;
+    }
+
+    private static String optional(String field, String value, int maxLength) {
+        if (value == null || value.isBlank()) return null;
+        String trimmed = value.trim();
+        if (trimmed.length() > maxLength) {
+            throw new ServiceException(ServiceException.Reason.INVALID_REQUEST, field + " is longer than " + maxLength + " characters");
+        }
+        return trimmed;
+    }
+}
@@ -0,0 +1,329 @@
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AccountTransfer moves money between two of a customer's accounts in one database
+ * transaction: the debit, the credit and a single "Transfer" ledger row (with both
+ * FromAccount and ToAccount set) commit together or not at all.
+ *
+ * Transfers never deadlock with each other because every lock is taken in one global order.
+ * In this JVM the AccountLocks stripes are locked in stripe order; in MySQL the account rows
+ * are locked in ascending account-number order, which is simply the order the UPDATEs run
+ * in. Two transfers in opposite directions between the same accounts therefore queue
+ * instead of each holding the row the other one needs.
+ *
+ * executeBatch() posts many transfers in one transaction. It locks every account involved
+ * up front in account-number order, decides each transfer in list order against the running
+ * balances, then writes the net balance changes and the ledger rows with batched statements.
+ */
+public final class AccountTransfer {
+    private static final Log LOG = Log.get(AccountTransfer.class);
+
+    private static final int LOCK_QUERY_CHUNK = 500;
+
+    public enum AccountType {
+        CHECKING("CheckingAccount", "CheckingAccountNumber"),
+        SAVINGS("SavingsAccount", "SavingsAccountNumber");
+
+        final String table;
+        final String keyColumn;
+        final String debitSql;
+        final String creditSql;
+        final String existsSql;
+
+        AccountType(String table, String keyColumn) {
+            this.table = table;
+            this.keyColumn = keyColumn;
+            this.debitSql = "UPDATE " + table + " SET Balance = Balance - ? WHERE " + keyColumn + " = ? AND Balance >= ?";
+            this.creditSql = "UPDATE " + table + " SET Balance = Balance + ? WHERE " + keyColumn + " = ?";
+            this.existsSql = "SELECT 1 FROM " + table + " WHERE " + keyColumn + " = ?";
+        }
+
+        /**
+         * Tells apart the two reasons a guarded debit UPDATE can match no row
+         * @return INSUFFICIENT_FUNDS if the account exists, otherwise ACCOUNT_NOT_FOUND
+         */
+        WithdrawalResult declined(Connection connection, String accountNumber) throws SQLException {
+            PreparedStatement statement = connection.prepareStatement(existsSql);
+            try {
+                statement.setString(1, accountNumber);
+                return statement.executeQuery().next() ? WithdrawalResult.INSUFFICIENT_FUNDS : WithdrawalResult.ACCOUNT_NOT_FOUND;
+            } finally {
+                DatabaseConnection.closeStatement(statement);
+            }
+        }
+    }
+
+    private final AccountType fromType;
+    private final String fromAccount;
+    private final AccountType toType;
+    private final String toAccount;
+    private final long amount;
+    private final String customerID;
+
+    /**
+     * @param fromType Type of the account debited
+     * @param fromAccount Account number debited
+     * @param toType Type of the account credited
+     * @param toAccount Account number credited
+     * @param amount Amount in minor units
+     * @param customerID Owner of both accounts; recorded on the ledger row
+     */
+    public AccountTransfer(AccountType fromType, String fromAccount, AccountType toType, String toAccount,
+                           long amount, String customerID) {
+        this.fromType = fromType;
+        this.fromAccount = fromAccount;
+        this.toType = toType;
+        this.toAccount = toAccount;
+        this.amount = amount;
+        this.customerID = customerID;
+    }
+
+    public static AccountTransfer checkingToSavings(CheckingAccount from, SavingsAccount to, long amount) {
+        return new AccountTransfer(AccountType.CHECKING, from.getCheckingAccountNumber(),
+                AccountType.SAVINGS, to.getSavingsAccountNumber(), amount, from.getCustomerID());
+    }
+
+    public static AccountTransfer savingsToChecking(SavingsAccount from, CheckingAccount to, long amount) {
+        return new AccountTransfer(AccountType.SAVINGS, from.getSavingsAccountNumber(),
+                AccountType.CHECKING, to.getCheckingAccountNumber(), amount, from.getCustomerID());
+    }
+
+    public String getFromAccount() { return fromAccount; }
+    public String getToAccount() { return toAccount; }
+    public long getAmount() { return amount; }
+    public String getCustomerID() { return customerID; }
+
+    private boolean isValid() {
+        return amount > 0 && fromAccount != null && toAccount != null && !fromAccount.equals(toAccount);
+    }
+
+    /**
+     * Executes the transfer
+     * @return SUCCESS; INSUFFICIENT_FUNDS if the source balance is too low; ACCOUNT_NOT_FOUND
+     *         if either account does not exist; INVALID_AMOUNT for a non-positive amount or
+     *         identical accounts; ERROR if the database failed
+     */
+    public WithdrawalResult execute() {
+        if (!isValid()) return WithdrawalResult.INVALID_AMOUNT;
+        if (LedgerEngine.handles(fromAccount) && LedgerEngine.handles(toAccount)) {
+            WithdrawalResult result = LedgerEngine.transfer(fromType, fromAccount, toType, toAccount, customerID, amount).status();
+            if (result == WithdrawalResult.SUCCESS) applyToCache();
+            return result;
+        }
+        Transaction txn = new Transaction(amount, "Transfer", fromAccount, toAccount, customerID);
+        BigDecimal value = Money.toDecimal(amount);
+        ReentrantLock[] locks = AccountLocks.lockAll(List.of(fromAccount, toAccount));
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            Connection connection = uow.getConnection();
+            // Each UPDATE takes its row lock, so running them in account-number order is the lock order
+            if (fromAccount.compareTo(toAccount) < 0) {
+                if (!debit(connection, value)) return fromType.declined(connection, fromAccount);
+                if (!credit(connection, value)) return WithdrawalResult.ACCOUNT_NOT_FOUND;
+            } else {
+                if (!credit(connection, value)) return WithdrawalResult.ACCOUNT_NOT_FOUND;
+                if (!debit(connection, value)) return fromType.declined(connection, fromAccount);
+            }
+            if (!txn.recordTransaction(connection)) return WithdrawalResult.ERROR;
+            uow.commit();
+        } catch (SQLException e) {
+            LOG.error("Transfer Error", e);
+            return WithdrawalResult.ERROR;
+        } finally {
+            AccountLocks.unlockAll(locks);
+        }
+        applyToCache();
+        return WithdrawalResult.SUCCESS;
+    }
+
+    /**
+     * Executes many transfers in one database transaction. Each transfer is decided on its
+     * own, in list order, so an overdrawn transfer is declined without affecting the others.
+     * @param transfers Transfers to post
+     * @return One result per transfer, in the same order; all ERROR if the transaction failed
+     */
+    public static List<WithdrawalResult> executeBatch(List<AccountTransfer> transfers) {
+        WithdrawalResult[] results = new WithdrawalResult[transfers.size()];
+        if (LedgerEngine.isEnabled()) {
+            // The engine holds the balances; each transfer is a single in-memory posting there
+            for (int i = 0; i < results.length; i++) {
+                results[i] = transfers.get(i).execute();
+            }
+            return Arrays.asList(results);
+        }
+        // Sorted by account number: the order rows are locked in
+        TreeMap<String, AccountType> accounts = new TreeMap<>();
+        for (int i = 0; i < results.length; i++) {
+            AccountTransfer transfer = transfers.get(i);
+            if (transfer.isValid()) {
+                accounts.put(transfer.fromAccount, transfer.fromType);
+                accounts.put(transfer.toAccount, transfer.toType);
+            } else {
+                results[i] = WithdrawalResult.INVALID_AMOUNT;
+            }
+        }
+        if (accounts.isEmpty()) return Arrays.asList(results);
+
+        ReentrantLock[] locks = AccountLocks.lockAll(accounts.keySet());
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            Connection connection = uow.getConnection();
+            Map<String, Position> positions = lockAccounts(connection, accounts);
+
+            List<Transaction> ledger = new ArrayList<>();
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] != null) continue;
+                AccountTransfer transfer = transfers.get(i);
+                Position from = positions.get(transfer.fromAccount);
+                Position to = positions.get(transfer.toAccount);
+                if (from == null || to == null) {
+                    results[i] = WithdrawalResult.ACCOUNT_NOT_FOUND;
+                } else if (from.balance < transfer.amount) {
+                    results[i] = WithdrawalResult.INSUFFICIENT_FUNDS;
+                } else {
+                    from.change(Money.negate(transfer.amount));
+                    to.change(transfer.amount);
+                    ledger.add(new Transaction(transfer.amount, "Transfer", transfer.fromAccount, transfer.toAccount,
+                            transfer.customerID));
+                    results[i] = WithdrawalResult.SUCCESS;
+                }
+            }
+
+            if (!ledger.isEmpty()) {
+                writeNetChanges(connection, accounts, positions);
+                writeLedger(connection, ledger);
+            }
+            uow.commit();
+        } catch (SQLException e) {
+            LOG.error("Transfer Batch Error", e);
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] != WithdrawalResult.INVALID_AMOUNT) results[i] = WithdrawalResult.ERROR;
+            }
+            return Arrays.asList(results);
+        } finally {
+            AccountLocks.unlockAll(locks);
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == WithdrawalResult.SUCCESS) transfers.get(i).applyToCache();
+        }
+        return Arrays.asList(results);
+    }
+
+    private boolean debit(Connection connection, BigDecimal value) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(fromType.debitSql);
+        try {
+            statement.setBigDecimal(1, value);
+            statement.setString(2, fromAccount);
+            statement.setBigDecimal(3, value);
+            return statement.executeUpdate() > 0;
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+    }
+
+    private boolean credit(Connection connection, BigDecimal value) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(toType.creditSql);
+        try {
+            statement.setBigDecimal(1, value);
+            statement.setString(2, toAccount);
+            return statement.executeUpdate() > 0;
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+    }
+
+    private void applyToCache() {
+        AccountCache.accountChanged(customerID);
+    }
+
+    // Balance as locked, plus the net change the batch makes to it
+    private static final class Position {
+        long balance;
+        long delta;
+
+        Position(long balance) {
+            this.balance = balance;
+        }
+
+        void change(long amount) {
+            balance = Money.add(balance, amount);
+            delta = Money.add(delta, amount);
+        }
+    }
+
+    // Locks the accounts with SELECT ... FOR UPDATE, walking them in account-number order.
+    // Consecutive accounts of the same type share one query; rows missing from the result do not exist.
+    private static Map<String, Position> lockAccounts(Connection connection, SortedMap<String, AccountType> accounts)
+            throws SQLException {
+        Map<String, Position> positions = new HashMap<>();
+        List<String> run = new ArrayList<>();
+        AccountType runType = null;
+        for (Map.Entry<String, AccountType> account : accounts.entrySet()) {
+            if (account.getValue() != runType || run.size() == LOCK_QUERY_CHUNK) {
+                lockRun(connection, runType, run, positions);
+                run.clear();
+                runType = account.getValue();
+            }
+            run.add(account.getKey());
+        }
+        lockRun(connection, runType, run, positions);
+        return positions;
+    }
+
+    private static void lockRun(Connection connection, AccountType type, List<String> accountNumbers,
+                                Map<String, Position> positions) throws SQLException {
+        if (accountNumbers.isEmpty()) return;
+        String placeholders = String.join(", ", Collections.nCopies(accountNumbers.size(), "?"));
+        PreparedStatement statement = connection.prepareStatement("SELECT " + type.keyColumn + ", Balance FROM "
+                + type.table + " WHERE " + type.keyColumn + " IN (" + placeholders + ") ORDER BY " + type.keyColumn + " FOR UPDATE");
+        ResultSet resultSet = null;
+        try {
+            for (int i = 0; i < accountNumbers.size(); i++) {
+                statement.setString(i + 1, accountNumbers.get(i));
+            }
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                positions.put(resultSet.getString(1), new Position(Money.read(resultSet, 2)));
+            }
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+        }
+    }
+
+    private static void writeNetChanges(Connection connection, SortedMap<String, AccountType> accounts,
+                                        Map<String, Position> positions) throws SQLException {
+        for (AccountType type : AccountType.values()) {
+            PreparedStatement statement = null;
+            try {
+                for (Map.Entry<String, AccountType> account : accounts.entrySet()) {
+                    Position position = positions.get(account.getKey());
+                    if (account.getValue() != type || position == null || position.delta == 0) continue;
+                    if (statement == null) statement = connection.prepareStatement(type.creditSql);
+                    Money.bind(statement, 1, position.delta);
+                    statement.setString(2, account.getKey());
+                    statement.addBatch();
+                }
+                if (statement != null) statement.executeBatch();
+            } finally {
+                DatabaseConnection.closeStatement(statement);
+            }
+        }
+    }
+
+    private static void writeLedger(Connection connection, List<Transaction> ledger) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(Transaction.INSERT_SQL);
+        try {
+            for (Transaction transaction : ledger) {
+                transaction.bindInsert(statement, 1);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+        DailyRollup.record(connection, ledger);
+    }
+}
@@ -0,0 +1,257 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AsyncLogWriter takes log events from any number of threads and writes them on a single
+ * daemon thread. Events go into a fixed-size ring buffer: a producer claims a slot with one
+ * compare-and-set and returns, so logging never blocks on I/O or on another thread's write.
+ * If the buffer is full the event is dropped and counted, and the count is logged once
+ * there is room again.
+ *
+ * The writer appends to banking.log.file (logs/banking.log, relative to the working
+ * directory; missing directories are created). When the file would grow past
+ * banking.log.maxBytes (10 MB) it is renamed to .1, older files move up one, and at most
+ * banking.log.maxFiles (5) old files are kept. Events at banking.log.console (WARN) or above
+ * are also written to stderr; OFF turns that off. banking.log.bufferSize sets the ring size
+ * (8192, rounded down to a power of two).
+ *
+ * A shutdown hook drains the buffer. Events logged after that are written directly.
+ */
+final class AsyncLogWriter {
+
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(64, Integer.getInteger("banking.log.bufferSize", 8192)));
+    private static final long IDLE_PARK_NANOS = 50_000_000L;
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final AsyncLogWriter INSTANCE = new AsyncLogWriter(
+            Paths.get(System.getProperty("banking.log.file", "logs/banking.log")),
+            Long.getLong("banking.log.maxBytes", 10L * 1024 * 1024),
+            Integer.getInteger("banking.log.maxFiles", 5),
+            Log.parse(System.getProperty("banking.log.console"), Log.Level.WARN));
+
+    private record Event(long millis, Log.Level level, String logger, String thread, String message, Object[] args) {}
+
+    private final AtomicReferenceArray<Event> slots = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+    private final LongAdder dropped = new LongAdder();
+
+    private final Path file;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final Log.Level consoleLevel;
+    private final Thread writer;
+    private volatile boolean sleeping = false;
+    private volatile boolean closed = false;
+    // Held by the writer thread while it writes, and by direct writes after shutdown
+    private final ReentrantLock outputLock = new ReentrantLock();
+    private OutputStream out;
+    private long size;
+
+    private AsyncLogWriter(Path file, long maxBytes, int maxFiles, Log.Level consoleLevel) {
+        this.file = file;
+        this.maxBytes = Math.max(1024, maxBytes);
+        this.maxFiles = Math.max(0, maxFiles);
+        this.consoleLevel = consoleLevel;
+        this.writer = new Thread(this::run, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "log-writer-shutdown"));
+    }
+
+    static AsyncLogWriter get() {
+        return INSTANCE;
+    }
+
+    /** Number of events dropped because the buffer was full. */
+    long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    void append(Log.Level level, String logger, String message, Object[] args) {
+        Thread current = Thread.currentThread();
+        // Virtual threads are usually unnamed
+        String thread = current.getName().isEmpty() ? "virtual-" + current.threadId() : current.getName();
+        Event event = new Event(System.currentTimeMillis(), level, logger, thread, message, args);
+        if (closed) {
+            outputLock.lock();
+            try {
+                write(event);
+                flush();
+            } finally {
+                outputLock.unlock();
+            }
+            return;
+        }
+        long slot;
+        do {
+            slot = tail.get();
+            if (slot - head >= CAPACITY) {
+                dropped.increment();
+                return;
+            }
+        } while (!tail.compareAndSet(slot, slot + 1));
+        slots.set((int) slot & (CAPACITY - 1), event);
+        if (sleeping) LockSupport.unpark(writer);
+    }
+
+    private void run() {
+        long reportedDrops = 0;
+        while (!closed) {
+            outputLock.lock();
+            int written;
+            try {
+                written = drain();
+                long drops = dropped.sum();
+                if (drops > reportedDrops) {
+                    write(new Event(System.currentTimeMillis(), Log.Level.WARN, "AsyncLogWriter", writer.getName(),
+                            "Log buffer full, dropped {} events", new Object[] {drops - reportedDrops}));
+                    reportedDrops = drops;
+                }
+                if (written > 0) flush();
+            } finally {
+                outputLock.unlock();
+            }
+            if (written == 0) {
+                sleeping = true;
+                // Check again after announcing the nap, so an event published in between is not missed
+                if (slots.get((int) head & (CAPACITY - 1)) == null) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    // Writes every event published so far; returns how many
+    private int drain() {
+        int count = 0;
+        while (true) {
+            int index = (int) head & (CAPACITY - 1);
+            Event event = slots.get(index);
+            // A claimed slot whose event is not yet stored ends the batch; the next pass picks it up
+            if (event == null) return count;
+            slots.set(index, null);
+            head = head + 1;
+            write(event);
+            count++;
+        }
+    }
+
+    private void close() {
+        outputLock.lock();
+        try {
+            closed = true;
+            drain();
+            flush();
+        } finally {
+            outputLock.unlock();
+        }
+        LockSupport.unpark(writer);
+    }
+
+    private void write(Event event) {
+        StringBuilder line = new StringBuilder(160);
+        line.append(TIME_FORMAT.format(Instant.ofEpochMilli(event.millis()))).append(' ')
+                .append(String.format("%-5s", event.level())).append(" [").append(event.thread()).append("] ")
+                .append(event.logger()).append(" - ");
+        Throwable thrown = format(line, event.message(), event.args());
+        line.append(System.lineSeparator());
+        if (thrown != null) {
+            StringWriter trace = new StringWriter();
+            thrown.printStackTrace(new PrintWriter(trace));
+            line.append(trace);
+        }
+        String text = line.toString();
+        if (consoleLevel != Log.Level.OFF && event.level().compareTo(consoleLevel) >= 0) {
+            System.err.print(text);
+        }
+        writeToFile(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Substitutes "{}" placeholders; a Throwable left over after them is returned for printing
+    private static Throwable format(StringBuilder line, String message, Object[] args) {
+        if (args == null || args.length == 0) {
+            line.append(message);
+            return null;
+        }
+        int used = 0;
+        int from = 0;
+        int at;
+        while (used < args.length && (at = message.indexOf("{}", from)) >= 0) {
+            line.append(message, from, at).append(args[used++]);
+            from = at + 2;
+        }
+        line.append(message, from, message.length());
+        Object last = args[args.length - 1];
+        return used < args.length && last instanceof Throwable t ? t : null;
+    }
+
+    private void writeToFile(byte[] bytes) {
+        try {
+            if (out == null) open();
+            if (size > 0 && size + bytes.length > maxBytes) rotate();
+            out.write(bytes);
+            size += bytes.length;
+        } catch (IOException e) {
+            // Nowhere better to report a failing log file than stderr
+            System.err.println("Log write failed: " + e.getMessage());
+            closeQuietly();
+        }
+    }
+
+    private void open() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        size = Files.exists(file) ? Files.size(file) : 0;
+        out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024);
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+        out = null;
+        if (maxFiles == 0) {
+            Files.deleteIfExists(file);
+        } else {
+            Files.deleteIfExists(rotated(maxFiles));
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                if (Files.exists(rotated(i))) Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        open();
+    }
+
+    private Path rotated(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void flush() {
+        if (out == null) return;
+        try {
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Log write failed: " + e.getMessage());
+            closeQuietly();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            if (out != null) out.close();
+        } catch (IOException e) {
+            // Already failing; the next write reopens the file
+        }
+        out = null;
+    }
+}
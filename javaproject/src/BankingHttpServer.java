@@ -0,0 +1,466 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * BankingHttpServer exposes AccountService over HTTP using the JDK's built-in server.
+ * Every request runs on its own virtual thread, so a request blocked on the database or
+ * on a password check costs a few hundred bytes of stack instead of a platform thread.
+ * Concurrency is bounded by the resources behind the service (the connection pool, the
+ * login executor), not by the number of server threads.
+ *
+ * Requests send parameters as an application/x-www-form-urlencoded body (or a query
+ * string for GET; a POST's query string is ignored) and receive JSON. Amounts are sent and returned as decimal strings such
+ * as "12.50". After POST /api/login, every call carries the session token in an
+ * "Authorization: Bearer <token>" header.
+ *
+ *   POST /api/register          username, password, fullName, email, phone
+ *   POST /api/login             username, password
+ *   POST /api/logout
+ *   GET  /api/profile           POST /api/profile  fullName, email, phone
+ *   GET  /api/accounts          balances and recent activity (recent=N)
+ *   POST /api/accounts/checking deposit
+ *   POST /api/accounts/savings  deposit, rate
+ *   POST /api/deposit           account=checking|savings, amount
+ *   POST /api/withdraw          account=checking|savings, amount
+ *   POST /api/transfer          from=checking|savings, amount
+ *   GET  /api/interest          months (calculate)   POST /api/interest  months (apply)
+ *   GET  /api/transactions      limit, after (the "next" value of the previous page)
+ *   GET  /api/summary           account=checking|savings, from, to (yyyy-MM-dd, inclusive)
+ *
+ * GET /metrics returns Metrics.text() in the Prometheus text format, and GET /metrics/sql
+ * the StatementProfiler report when profiling is enabled. Neither needs a token, so expose
+ * the port only to the network the scraper runs in.
+ *
+ * Command line: java BankingHttpServer [port]   (default banking.http.port, 8080)
+ */
+public class BankingHttpServer {
+    private static final Log LOG = Log.get(BankingHttpServer.class);
+
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    private final AccountService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public BankingHttpServer(AccountService service, int port) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+        server.createContext("/metrics", exchange -> sendText(exchange, Metrics.text()));
+        server.createContext("/metrics/sql", exchange -> sendText(exchange, StatementProfiler.isEnabled()
+                ? StatementProfiler.report(200) : "Statement profiling is off; start with -Dbanking.profiler.enabled=true\n"));
+    }
+
+    public void start() {
+        server.start();
+        LOG.info("HTTP API listening on port {}", getPort());
+    }
+
+    /** Stops accepting requests and waits up to the given number of seconds for running ones. */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            int status = 200;
+            String body;
+            try {
+                Map<String, String> params = parameters(exchange);
+                body = route(exchange.getRequestMethod(), exchange.getRequestURI().getPath(), bearerToken(exchange), params);
+                if (body == null) {
+                    status = 404;
+                    body = error("Not found");
+                }
+            } catch (ServiceException e) {
+                status = statusFor(e.getReason());
+                body = error(e.getMessage());
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                body = error(e.getMessage());
+            } catch (RuntimeException e) {
+                LOG.error("HTTP request failed: {} {}", exchange.getRequestMethod(), exchange.getRequestURI().getPath(), e);
+                status = 500;
+                body = error("Internal error");
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static void sendText(HttpExchange exchange, String text) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    // Returns the JSON response, or null if no endpoint matches
+    private String route(String method, String path, String token, Map<String, String> params) {
+        boolean get = method.equals("GET");
+        boolean post = method.equals("POST");
+        switch (path) {
+            case "/api/register" -> {
+                if (!post) return null;
+                String userID = service.register(params.get("username"), params.get("password"),
+                        params.get("fullName"), params.get("email"), params.get("phone"));
+                return new Json().field("userID", userID).end();
+            }
+            case "/api/login" -> {
+                if (!post) return null;
+                String newToken = service.login(params.get("username"), params.get("password"));
+                return new Json().field("token", newToken).end();
+            }
+            case "/api/logout" -> {
+                if (!post) return null;
+                service.logout(token);
+                return new Json().end();
+            }
+            case "/api/profile" -> {
+                User user = get ? service.getProfile(token)
+                        : post ? service.updateProfile(token, params.get("fullName"), params.get("email"), params.get("phone"))
+                        : null;
+                if (user == null) return null;
+                return new Json().field("userID", user.getUserID()).field("username", user.getUsername())
+                        .field("fullName", user.getFullName()).field("email", user.getEmail())
+                        .field("phone", user.getPhone()).field("createdDate", user.getCreatedDate()).end();
+            }
+            case "/api/accounts" -> {
+                if (!get) return null;
+                return dashboard(service.getDashboard(token, intParam(params, "recent", 5)));
+            }
+            case "/api/accounts/checking" -> {
+                if (!post) return null;
+                String number = service.openCheckingAccount(token, amountParam(params, "deposit", true));
+                return new Json().field("accountNumber", number).end();
+            }
+            case "/api/accounts/savings" -> {
+                if (!post) return null;
+                String number = service.openSavingsAccount(token, amountParam(params, "deposit", true),
+                        floatParam(params, "rate", 2.5f));
+                return new Json().field("accountNumber", number).end();
+            }
+            case "/api/deposit" -> {
+                if (!post) return null;
+                long balance = service.deposit(token, accountParam(params, "account"), amountParam(params, "amount", false));
+                return new Json().field("balance", Money.format(balance)).end();
+            }
+            case "/api/withdraw" -> {
+                if (!post) return null;
+                long balance = service.withdraw(token, accountParam(params, "account"), amountParam(params, "amount", false));
+                return new Json().field("balance", Money.format(balance)).end();
+            }
+            case "/api/transfer" -> {
+                if (!post) return null;
+                service.transfer(token, accountParam(params, "from"), amountParam(params, "amount", false));
+                return new Json().end();
+            }
+            case "/api/interest" -> {
+                int months = intParam(params, "months", 0);
+                long interest = get ? service.calculateInterest(token, months)
+                        : post ? service.applyInterest(token, months)
+                        : -1;
+                if (interest < 0) return null;
+                return new Json().field("interest", Money.format(interest)).end();
+            }
+            case "/api/transactions" -> {
+                if (!get) return null;
+                TransactionPage page = service.getTransactions(token, cursorParam(params.get("after")),
+                        intParam(params, "limit", DEFAULT_PAGE_SIZE));
+                return transactions(page);
+            }
+            case "/api/summary" -> {
+                if (!get) return null;
+                return summary(service.getActivitySummary(token, accountParam(params, "account"),
+                        dateParam(params, "from"), dateParam(params, "to")));
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    private static String dashboard(CustomerDashboard dashboard) {
+        Json json = new Json().field("userID", dashboard.getUserID()).array("accounts");
+        for (CustomerDashboard.AccountSummary account : dashboard.getAccounts()) {
+            Json item = new Json().field("type", account.getType()).field("accountNumber", account.getAccountNumber())
+                    .field("balance", Money.format(account.getBalance()));
+            if (account.isSavings()) item.field("interestRate", account.getInterestRate());
+            json.element(item.end());
+        }
+        json.endArray().array("recentActivity");
+        for (CustomerDashboard.Activity activity : dashboard.getRecentActivity()) {
+            json.element(new Json().field("transactionNumber", activity.getTransactionNumber())
+                    .field("type", activity.getTransactionType()).field("amount", Money.format(activity.getAmount()))
+                    .field("fromAccount", activity.getFromAccount()).field("toAccount", activity.getToAccount())
+                    .field("timestamp", String.valueOf(activity.getTimestamp())).end());
+        }
+        return json.endArray().end();
+    }
+
+    private static String transactions(TransactionPage page) {
+        Json json = new Json().array("transactions");
+        for (Transaction transaction : page.getTransactions()) {
+            json.element(new Json().field("transactionNumber", transaction.getTransactionNumber())
+                    .field("type", transaction.getTransactionType())
+                    .field("amount", Money.format(transaction.getTransactionAmount()))
+                    .field("fromAccount", transaction.getFromAccount()).field("toAccount", transaction.getToAccount())
+                    .field("timestamp", String.valueOf(transaction.getTransactionTimestamp())).end());
+        }
+        json.endArray();
+        Transaction last = page.getLast();
+        // The cursor is the last row's paging key: its timestamp and transaction number
+        json.field("next", page.hasMore() && last != null
+                ? last.getTransactionTimestamp() + "_" + last.getTransactionNumber() : null);
+        return json.end();
+    }
+
+    private static String summary(DailyRollup.Summary summary) {
+        return new Json().field("accountNumber", summary.accountNumber())
+                .field("from", summary.from().toString()).field("to", summary.to().toString())
+                .field("openingBalance", Money.format(summary.openingBalance()))
+                .field("closingBalance", Money.format(summary.closingBalance()))
+                .field("deposits", Money.format(summary.depositTotal())).field("depositCount", summary.depositCount())
+                .field("withdrawals", Money.format(summary.withdrawalTotal())).field("withdrawalCount", summary.withdrawalCount())
+                .field("interest", Money.format(summary.interestTotal())).field("interestCount", summary.interestCount())
+                .field("transfersIn", Money.format(summary.transferInTotal())).field("transferInCount", summary.transferInCount())
+                .field("transfersOut", Money.format(summary.transferOutTotal())).field("transferOutCount", summary.transferOutCount())
+                .end();
+    }
+
+    private static int statusFor(ServiceException.Reason reason) {
+        return switch (reason) {
+            case UNAUTHORIZED -> 401;
+            case INVALID_REQUEST -> 400;
+            case NOT_FOUND -> 404;
+            case CONFLICT, INSUFFICIENT_FUNDS -> 409;
+            case BUSY -> 503;
+            case FAILED -> 500;
+        };
+    }
+
+    private static String error(String message) {
+        return new Json().field("error", message).end();
+    }
+
+    // --- Request parsing ---
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) return null;
+        return header.substring(7).trim();
+    }
+
+    // POST parameters come from the body only, so credentials never end up in URLs, proxy
+    // logs or browser history
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        if (!exchange.getRequestMethod().equals("POST")) {
+            decodeForm(exchange.getRequestURI().getRawQuery(), params);
+        } else {
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+                if (body.length > MAX_BODY_BYTES) throw new IllegalArgumentException("Request body too large");
+                decodeForm(new String(body, StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void decodeForm(String form, Map<String, String> params) {
+        if (form == null || form.isEmpty()) return;
+        for (String pair : form.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+    }
+
+    private static AccountTransfer.AccountType accountParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if ("checking".equalsIgnoreCase(value)) return AccountTransfer.AccountType.CHECKING;
+        if ("savings".equalsIgnoreCase(value)) return AccountTransfer.AccountType.SAVINGS;
+        throw new IllegalArgumentException(name + " must be checking or savings");
+    }
+
+    private static long amountParam(Map<String, String> params, String name, boolean optional) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) {
+            if (optional) return 0;
+            throw new IllegalArgumentException(name + " is required");
+        }
+        try {
+            return Money.parse(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " is not a valid amount");
+        }
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a whole number");
+        }
+    }
+
+    private static float floatParam(Map<String, String> params, String name, float defaultValue) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+
+    private static LocalDate dateParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isBlank()) throw new IllegalArgumentException(name + " is required");
+        try {
+            return LocalDate.parse(value.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(name + " must be a date like 2025-06-30");
+        }
+    }
+
+    private static Transaction cursorParam(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        int split = cursor.indexOf('_');
+        try {
+            if (split > 0) {
+                return Transaction.pageCursor(cursor.substring(split + 1), LocalDateTime.parse(cursor.substring(0, split)));
+            }
+        } catch (DateTimeParseException e) {
+            // fall through
+        }
+        throw new IllegalArgumentException("after is not a valid cursor");
+    }
+
+    // --- JSON output ---
+
+    // Builds one JSON object; values are strings, numbers, nested objects (already built) or null
+    private static final class Json {
+        private final StringBuilder sb = new StringBuilder("{");
+        private boolean first = true;
+        private boolean firstElement;
+
+        Json field(String name, String value) {
+            key(name);
+            if (value == null) sb.append("null");
+            else quote(value);
+            return this;
+        }
+
+        Json field(String name, long value) {
+            key(name);
+            sb.append(value);
+            return this;
+        }
+
+        Json field(String name, float value) {
+            key(name);
+            sb.append(value);
+            return this;
+        }
+
+        Json array(String name) {
+            key(name);
+            sb.append('[');
+            firstElement = true;
+            return this;
+        }
+
+        Json element(String object) {
+            if (!firstElement) sb.append(',');
+            firstElement = false;
+            sb.append(object);
+            return this;
+        }
+
+        Json endArray() {
+            sb.append(']');
+            return this;
+        }
+
+        String end() {
+            return sb.append('}').toString();
+        }
+
+        private void key(String name) {
+            if (!first) sb.append(',');
+            first = false;
+            quote(name);
+            sb.append(':');
+        }
+
+        private void quote(String value) {
+            sb.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"' -> sb.append("\\\"");
+                    case '\\' -> sb.append("\\\\");
+                    case '\n' -> sb.append("\\n");
+                    case '\r' -> sb.append("\\r");
+                    case '\t' -> sb.append("\\t");
+                    default -> {
+                        if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                        else sb.append(c);
+                    }
+                }
+            }
+            sb.append('"');
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("banking.http.port", 8080);
+        DatabaseConnection.initializeDatabase();
+        UsernameFilter.startWarmUp();
+        BankingHttpServer server = new BankingHttpServer(new AccountService(), port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(2);
+            DatabaseConnection.shutdownPool();
+        }));
+        server.start();
+    }
+}
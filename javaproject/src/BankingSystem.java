@@ -1,22 +1,37 @@
-import java.util.List;
 import java.util.Scanner;
-import java.io.FileWriter;
 import java.io.IOException;
-import javax.swing.JOptionPane;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 
+/**
+ * Console front end. It keeps only the session token of the logged-in user and does every
+ * operation through AccountService, the same API the HTTP server exposes.
+ */
 public class BankingSystem {
+    private static final Log LOG = Log.get(BankingSystem.class);
+
     private static final Scanner scanner = new Scanner(System.in);
-    private static User currentUser = null;
+    private static final AccountService service = new AccountService();
+    private static String sessionToken = null;
 
     public static void main(String[] args) {
         System.out.println("=== Welcome to Online Banking System ===");
         DatabaseConnection.initializeDatabase();
+        UsernameFilter.startWarmUp();
 
         while (true) {
-            if (currentUser == null) {
-                showLoginMenu();
-            } else {
-                showMainMenu();
+            if (sessionToken != null && SessionManager.resolve(sessionToken) == null) {
+                System.out.println("Your session has expired. Please log in again.");
+                sessionToken = null;
+            }
+            try {
+                if (sessionToken == null) {
+                    showLoginMenu();
+                } else {
+                    showMainMenu();
+                }
+            } catch (ServiceException e) {
+                System.out.println(e.getMessage() + ".");
             }
         }
     }
@@ -42,17 +57,28 @@ public class BankingSystem {
         System.out.print("Enter password: ");
         String password = scanner.nextLine();
 
-        currentUser = User.authenticateUser(username, password);
-        if (currentUser != null) {
-            System.out.println("Login successful! Welcome back, " + currentUser.getFullName());
-        } else {
-            System.out.println("Login failed. Check your credentials.");
+        try {
+            sessionToken = service.login(username, password);
+        } catch (ServiceException e) {
+            System.out.println("Login failed. " + e.getMessage() + ".");
+            return;
         }
+        System.out.println("Login successful! Welcome back, " + service.getProfile(sessionToken).getFullName());
+        showDashboardSummary();
+    }
+
+    private static void logout() {
+        service.logout(sessionToken);
+        sessionToken = null;
     }
 
     private static void registerUser() {
         System.out.print("Enter username: ");
         String username = scanner.nextLine();
+        if (!service.isUsernameAvailable(username)) {
+            System.out.println("Username already exists! Please choose a different username.");
+            return;
+        }
         System.out.print("Enter password: ");
         String password = scanner.nextLine();
         System.out.print("Enter full name: ");
@@ -62,17 +88,36 @@ public class BankingSystem {
         System.out.print("Enter phone number: ");
         String phone = scanner.nextLine();
 
-        User newUser = new User(username, password, fullName, email, phone);
-        if (newUser.registerUser()) {
+        try {
+            service.register(username, password, fullName, email, phone);
             System.out.println("Registration successful! You can now login.");
-        } else {
-            System.out.println("Registration failed. Try again.");
+        } catch (ServiceException e) {
+            System.out.println("Registration failed. " + e.getMessage() + ".");
+        }
+    }
+
+    // One query loads balances and recent activity, and warms AccountCache for later screens
+    private static void showDashboardSummary() {
+        CustomerDashboard dashboard;
+        try {
+            dashboard = service.getDashboard(sessionToken, 5);
+        } catch (ServiceException e) {
+            return;
+        }
+        for (CustomerDashboard.AccountSummary account : dashboard.getAccounts()) {
+            System.out.println(account.getType() + " Account " + account.getAccountNumber() + ": $" + Money.format(account.getBalance()));
+        }
+        if (!dashboard.getRecentActivity().isEmpty()) {
+            System.out.println("Recent activity:");
+            for (CustomerDashboard.Activity activity : dashboard.getRecentActivity()) {
+                System.out.println("  " + activity.getTimestamp() + "  " + activity.getTransactionType() + "  $" + Money.format(activity.getAmount()));
+            }
         }
     }
 
     private static void showMainMenu() {
         System.out.println("\n=== MAIN MENU ===");
-        System.out.println("Welcome, " + currentUser.getFullName() + "!");
+        System.out.println("Welcome, " + service.getProfile(sessionToken).getFullName() + "!");
         System.out.println("1. Account Management");
         System.out.println("2. Transaction Operations");
         System.out.println("3. View Transaction History");
@@ -92,7 +137,7 @@ public class BankingSystem {
             case 5 -> viewBalance();
             case 6 -> updateProfile();
             case 7 -> exportTransactionsToCSV();
-            case 8 -> currentUser = null;
+            case 8 -> logout();
             default -> System.out.println("Invalid option! Try again.");
         }
     }
@@ -100,36 +145,20 @@ public class BankingSystem {
         System.out.println("\n1. Deposit to Checking Account");
         System.out.println("2. Deposit to Savings Account");
         System.out.print("Choose account type: ");
-        int type = getIntInput();
+        AccountTransfer.AccountType type = getAccountTypeInput();
         System.out.print("Enter amount to deposit: $");
-        float amount = getFloatInput();
+        long amount = getAmountInput();
 
-        if (amount <= 0) {
+        if (amount <= 0 || type == null) {
             System.out.println("Invalid amount.");
             return;
         }
 
-        boolean success = false;
-        float newBalance = 0f;
-
-        if (type == 1) {
-            CheckingAccount acc = CheckingAccount.getAccountByCustomerID(currentUser.getUserID());
-            if (acc != null) {
-                success = acc.deposit(amount);
-                newBalance = acc.getBalance();
-            }
-        } else if (type == 2) {
-            SavingsAccount acc = SavingsAccount.getAccountByCustomerID(currentUser.getUserID());
-            if (acc != null) {
-                success = acc.deposit(amount);
-                newBalance = acc.getBalance();
-            }
-        }
-
-        if (success) {
-            JOptionPane.showMessageDialog(null, "Deposit successful! New Balance: $" + newBalance);
-        } else {
-            JOptionPane.showMessageDialog(null, "Deposit failed.");
+        try {
+            long newBalance = service.deposit(sessionToken, type, amount);
+            System.out.println("Deposit successful! New Balance: $" + Money.format(newBalance));
+        } catch (ServiceException e) {
+            System.out.println("Deposit failed: " + e.getMessage() + ".");
         }
     }
 
@@ -137,85 +166,78 @@ public class BankingSystem {
         System.out.println("\n1. Withdraw from Checking Account");
         System.out.println("2. Withdraw from Savings Account");
         System.out.print("Choose account type: ");
-        int type = getIntInput();
+        AccountTransfer.AccountType type = getAccountTypeInput();
         System.out.print("Enter amount to withdraw: $");
-        float amount = getFloatInput();
+        long amount = getAmountInput();
 
-        if (amount <= 0) {
+        if (amount <= 0 || type == null) {
             System.out.println("Invalid amount.");
             return;
         }
 
-        boolean success = false;
-        float newBalance = 0f;
+        try {
+            long newBalance = service.withdraw(sessionToken, type, amount);
+            System.out.println("Withdrawal successful! New Balance: $" + Money.format(newBalance));
+        } catch (ServiceException e) {
+            System.out.println("Withdrawal failed: " + e.getMessage().toLowerCase() + ".");
+        }
+    }
 
-        if (type == 1) {
-            CheckingAccount acc = CheckingAccount.getAccountByCustomerID(currentUser.getUserID());
-            if (acc != null) {
-                success = acc.withdraw(amount);
-                newBalance = acc.getBalance();
-            }
-        } else if (type == 2) {
-            SavingsAccount acc = SavingsAccount.getAccountByCustomerID(currentUser.getUserID());
-            if (acc != null) {
-                success = acc.withdraw(amount);
-                newBalance = acc.getBalance();
-            }
+    private static void transferMoney() {
+        System.out.println("\n1. Checking to Savings");
+        System.out.println("2. Savings to Checking");
+        System.out.print("Choose direction: ");
+        AccountTransfer.AccountType from = getAccountTypeInput();
+        System.out.print("Enter amount to transfer: $");
+        long amount = getAmountInput();
+
+        if (amount <= 0 || from == null) {
+            System.out.println("Invalid amount.");
+            return;
         }
 
-        if (success) {
-            JOptionPane.showMessageDialog(null, "Withdrawal successful! New Balance: $" + newBalance);
-        } else {
-            JOptionPane.showMessageDialog(null, "Withdrawal failed.");
+        try {
+            service.transfer(sessionToken, from, amount);
+            System.out.println("Transfer successful! $" + Money.format(amount) + " moved.");
+        } catch (ServiceException e) {
+            if (e.getReason() == ServiceException.Reason.NOT_FOUND) {
+                System.out.println("You need both a checking and a savings account to transfer.");
+            } else {
+                System.out.println("Transfer failed: " + e.getMessage().toLowerCase() + ".");
+            }
         }
     }
 
     private static void viewBalance() {
-        CheckingAccount checking = CheckingAccount.getAccountByCustomerID(currentUser.getUserID());
-        SavingsAccount savings = SavingsAccount.getAccountByCustomerID(currentUser.getUserID());
+        CheckingAccount checking = service.getCheckingAccount(sessionToken);
+        SavingsAccount savings = service.getSavingsAccount(sessionToken);
 
-        StringBuilder sb = new StringBuilder("=== Account Balances ===\n");
+        System.out.println("\n=== Account Balances ===");
         if (checking != null) {
-            checking.refreshBalance();
-            sb.append("Checking Account: $").append(checking.getBalance()).append("\n");
+            System.out.println("Checking Account: $" + Money.format(checking.getBalance()));
         } else {
-            sb.append("No checking account.\n");
+            System.out.println("No checking account.");
         }
 
         if (savings != null) {
-            savings.refreshBalance();
-            sb.append("Savings Account: $").append(savings.getBalance());
+            System.out.println("Savings Account: $" + Money.format(savings.getBalance()));
         } else {
-            sb.append("No savings account.");
+            System.out.println("No savings account.");
         }
-
-        JOptionPane.showMessageDialog(null, sb.toString(), "Account Balances", JOptionPane.INFORMATION_MESSAGE);
     }
 
     private static void exportTransactionsToCSV() {
-        List<Transaction> transactions = Transaction.getAllTransactions(currentUser.getUserID());
-        if (transactions.isEmpty()) {
-            System.out.println("No transactions to export.");
-            return;
-        }
-
-        String fileName = "transactions_" + currentUser.getUserID() + ".csv";
-        try (FileWriter writer = new FileWriter(fileName)) {
-            writer.write("TransactionNumber,TransactionAmount,TransactionType,TransactionDate,TransactionTime,FromAccount,ToAccount\n");
-            for (Transaction t : transactions) {
-                writer.write(String.format("%s,%.2f,%s,%s,%s,%s,%s\n",
-                    t.getTransactionNumber(),
-                    t.getTransactionAmount(),
-                    t.getTransactionType(),
-                    t.getTransactionDate(),
-                    t.getTransactionTime(),
-                    t.getFromAccount() != null ? t.getFromAccount() : "",
-                    t.getToAccount() != null ? t.getToAccount() : "")
-                );
+        String userID = service.getProfile(sessionToken).getUserID();
+        TransactionExporter exporter = new TransactionExporter(Paths.get("."), false);
+        try {
+            long rows = exporter.exportCustomer(userID);
+            if (rows == 0) {
+                System.out.println("No transactions to export.");
+            } else {
+                System.out.println("Transactions exported to " + exporter.fileFor(userID).getFileName());
             }
-            System.out.println("Transactions exported to " + fileName);
-        } catch (IOException e) {
-            System.err.println("Error exporting transactions: " + e.getMessage());
+        } catch (IOException | SQLException e) {
+            LOG.error("Error exporting transactions", e);
         }
     }
     private static void showAccountManagementMenu() {
@@ -242,7 +264,8 @@ public class BankingSystem {
         System.out.println("2. Withdraw Money");
         System.out.println("3. Calculate Interest (Savings)");
         System.out.println("4. Apply Interest (Savings)");
-        System.out.println("5. Back to Main Menu");
+        System.out.println("5. Transfer Between Accounts");
+        System.out.println("6. Back to Main Menu");
         System.out.print("Choose an option: ");
 
         int choice = getIntInput();
@@ -251,24 +274,25 @@ public class BankingSystem {
             case 2 -> withdrawMoney();
             case 3 -> calculateInterest();
             case 4 -> applyInterest();
-            case 5 -> {}
+            case 5 -> transferMoney();
+            case 6 -> {}
             default -> System.out.println("Invalid option!");
         }
     }
 private static void createCheckingAccount() {
     System.out.print("Enter initial deposit: $");
-    float amount = getFloatInput();
-    CheckingAccount acc = new CheckingAccount(currentUser.getFullName(), amount, currentUser.getUserID());
-    if (acc.createAccount()) {
-        System.out.println("Checking account created: " + acc.getCheckingAccountNumber());
-    } else {
+    long amount = getAmountInput();
+    try {
+        String accountNumber = service.openCheckingAccount(sessionToken, Math.max(amount, 0));
+        System.out.println("Checking account created: " + accountNumber);
+    } catch (ServiceException e) {
         System.out.println("Failed to create checking account.");
     }
 }
 
 private static void createSavingsAccount() {
     System.out.print("Enter initial deposit: $");
-    float amount = getFloatInput();
+    long amount = getAmountInput();
     System.out.print("Enter interest rate (default 2.5): ");
     String rateInput = scanner.nextLine();
     float interestRate = 2.5f;
@@ -279,57 +303,62 @@ private static void createSavingsAccount() {
     } catch (NumberFormatException e) {
         System.out.println("Invalid interest rate. Using default 2.5%");
     }
-    SavingsAccount acc = new SavingsAccount(currentUser.getFullName(), amount, interestRate, currentUser.getUserID());
-    if (acc.createAccount()) {
-        System.out.println("Savings account created: " + acc.getSavingsAccountNumber());
-    } else {
-        System.out.println("Failed to create savings account.");
+    try {
+        String accountNumber = service.openSavingsAccount(sessionToken, Math.max(amount, 0), interestRate);
+        System.out.println("Savings account created: " + accountNumber);
+    } catch (ServiceException e) {
+        System.out.println("Failed to create savings account. " + e.getMessage() + ".");
     }
 }
 
-   
     private static void calculateInterest() {
-        SavingsAccount acc = SavingsAccount.getAccountByCustomerID(currentUser.getUserID());
-        if (acc == null) {
+        if (service.getSavingsAccount(sessionToken) == null) {
             System.out.println("No savings account found.");
             return;
         }
         System.out.print("Enter number of months: ");
         int months = getIntInput();
-        float interest = acc.calculateInterest(months);
-        System.out.println("Calculated interest: $" + interest);
+        try {
+            long interest = service.calculateInterest(sessionToken, months);
+            System.out.println("Calculated interest: $" + Money.format(interest));
+        } catch (ServiceException e) {
+            System.out.println(e.getMessage() + ".");
+        }
     }
 
     private static void applyInterest() {
-        SavingsAccount acc = SavingsAccount.getAccountByCustomerID(currentUser.getUserID());
-        if (acc == null) {
+        if (service.getSavingsAccount(sessionToken) == null) {
             System.out.println("No savings account found.");
             return;
         }
         System.out.print("Enter number of months: ");
         int months = getIntInput();
-        acc.applyInterest(months);
+        try {
+            long interest = service.applyInterest(sessionToken, months);
+            System.out.println("Interest applied: $" + Money.format(interest));
+        } catch (ServiceException e) {
+            System.out.println(e.getMessage() + ".");
+        }
     }
 
        private static void showAccountInformation() {
-        CheckingAccount checking = CheckingAccount.getAccountByCustomerID(currentUser.getUserID());
-        SavingsAccount savings = SavingsAccount.getAccountByCustomerID(currentUser.getUserID());
+        User user = service.getProfile(sessionToken);
+        CheckingAccount checking = service.getCheckingAccount(sessionToken);
+        SavingsAccount savings = service.getSavingsAccount(sessionToken);
 
         System.out.println("\n=== ACCOUNT INFORMATION ===");
-        System.out.println("Full Name: " + currentUser.getFullName());
-        System.out.println("Email: " + currentUser.getEmail());
-        System.out.println("Phone: " + currentUser.getPhone());
+        System.out.println("Full Name: " + user.getFullName());
+        System.out.println("Email: " + user.getEmail());
+        System.out.println("Phone: " + user.getPhone());
 
         if (checking != null) {
-            checking.refreshBalance();
             System.out.println("Checking Account #: " + checking.getCheckingAccountNumber());
-            System.out.println("Balance: $" + checking.getBalance());
+            System.out.println("Balance: $" + Money.format(checking.getBalance()));
         }
 
         if (savings != null) {
-            savings.refreshBalance();
             System.out.println("Savings Account #: " + savings.getSavingsAccountNumber());
-            System.out.println("Balance: $" + savings.getBalance());
+            System.out.println("Balance: $" + Money.format(savings.getBalance()));
             System.out.println("Interest Rate: " + savings.getInterestRate() + "%");
         }
     }
@@ -337,32 +366,37 @@ private static void createSavingsAccount() {
     private static void updateProfile() {
         System.out.print("Enter new full name (leave blank to keep current): ");
         String name = scanner.nextLine();
-        if (!name.isBlank()) currentUser.setFullName(name);
 
         System.out.print("Enter new email (leave blank to keep current): ");
         String email = scanner.nextLine();
-        if (!email.isBlank()) currentUser.setEmail(email);
 
         System.out.print("Enter new phone (leave blank to keep current): ");
         String phone = scanner.nextLine();
-        if (!phone.isBlank()) currentUser.setPhone(phone);
 
-        if (currentUser.updateUserInfo()) {
+        try {
+            service.updateProfile(sessionToken, name, email, phone);
             System.out.println("Profile updated successfully.");
-        } else {
-            System.out.println("Profile update failed.");
+        } catch (ServiceException e) {
+            System.out.println("Profile update failed. " + e.getMessage() + ".");
         }
     }
 
+    // Pages through the history so a long history is never held in memory at once
     private static void viewAllTransactions() {
-        List<Transaction> transactions = Transaction.getAllTransactions(currentUser.getUserID());
         System.out.println("\n=== TRANSACTIONS ===");
-        if (transactions.isEmpty()) {
-            System.out.println("No transactions found.");
-        } else {
-            for (Transaction t : transactions) {
-                System.out.println(t);
+        Transaction after = null;
+        boolean any = false;
+        while (true) {
+            TransactionPage page = service.getTransactions(sessionToken, after, AccountService.MAX_PAGE_SIZE);
+            for (Transaction transaction : page.getTransactions()) {
+                System.out.println(transaction);
+                any = true;
             }
+            if (!page.hasMore()) break;
+            after = page.getLast();
+        }
+        if (!any) {
+            System.out.println("No transactions found.");
         }
     }
 
@@ -374,11 +408,21 @@ private static void createSavingsAccount() {
         }
     }
 
-    private static float getFloatInput() {
+    // 1 is checking and 2 is savings in every menu that asks; null for anything else
+    private static AccountTransfer.AccountType getAccountTypeInput() {
+        return switch (getIntInput()) {
+            case 1 -> AccountTransfer.AccountType.CHECKING;
+            case 2 -> AccountTransfer.AccountType.SAVINGS;
+            default -> null;
+        };
+    }
+
+    // Amount in minor units, or -1 if the input is not a valid amount
+    private static long getAmountInput() {
         try {
-            return Float.parseFloat(scanner.nextLine());
+            return Money.parse(scanner.nextLine());
         } catch (Exception e) {
-            return -1f;
+            return -1;
         }
     }
 }
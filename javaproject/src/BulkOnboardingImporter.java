@@ -0,0 +1,891 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BulkOnboardingImporter loads a partner bank's customers, with their checking and savings
+ * accounts and opening balances, from a CSV or JSON Lines feed.
+ *
+ * The feed is cut into batches of batchSize lines. Worker threads parse, validate and hash
+ * the passwords of whole batches in parallel, and each batch is written in one database
+ * transaction: the Users, CheckingAccount, SavingsAccount and "Initial Deposit" Transactions
+ * rows go in as JDBC batches (sent as multi-row INSERTs, see rewriteBatchedStatements in
+ * DatabaseConnection), together with the batch's rejected rows and its ImportBatch
+ * checkpoint row. A crashed import started again with the same ID skips every batch that
+ * committed, so no customer is loaded twice.
+ *
+ * Rows that fail validation, or whose username is already taken, are recorded in
+ * ImportReject and written to a CSV report once the import completes. The stored line has
+ * its password masked; a line too malformed to find the password in is not stored at all.
+ *
+ * Fields, by CSV header or JSON key: username, password, fullName, email, phone,
+ * checkingDeposit, savingsDeposit, savingsRate. An account is opened when its deposit field
+ * is present, even if it is 0. A password that is already a PasswordHasher hash is stored
+ * as it is; any other password is hashed here, which is the bulk of the CPU cost.
+ * Each record must be on one line; CSV fields may be quoted but not span lines.
+ *
+ * Command line: java BulkOnboardingImporter <importID> <file> [--threads N] [--batch N] [--rejects file]
+ */
+public class BulkOnboardingImporter {
+    private static final Log LOG = Log.get(BulkOnboardingImporter.class);
+
+    private static final String RUNNING = "RUNNING";
+    private static final String COMPLETED = "COMPLETED";
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int LOOKUP_CHUNK = 500;
+    private static final float DEFAULT_RATE = 2.5f;
+    private static final String MASK = "********";
+    private static final String WITHHELD = "(not stored: the password could not be located in this line)";
+
+    private static final String[] FIELDS = { "username", "password", "fullName", "email", "phone",
+            "checkingDeposit", "savingsDeposit", "savingsRate" };
+
+    private static final String INSERT_USER = "INSERT INTO Users (UserID, Username, Password, FullName, Email, Phone, CreatedDate) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_CHECKING = "INSERT INTO CheckingAccount (CheckingAccountNumber, CustomerName, Balance, CustomerID) " +
+            "VALUES (?, ?, ?, ?)";
+    private static final String INSERT_SAVINGS = "INSERT INTO SavingsAccount (SavingsAccountNumber, CustomerName, Balance, InterestRate, CustomerID) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    private final int threads;
+    private final int batchSize;
+
+    public BulkOnboardingImporter(int threads, int batchSize) {
+        if (threads <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("threads and batchSize must be positive");
+        }
+        if (threads > DatabaseConnection.getPoolMaxSize()) {
+            throw new IllegalArgumentException("threads must not exceed the connection pool size ("
+                    + DatabaseConnection.getPoolMaxSize() + ")");
+        }
+        this.threads = threads;
+        this.batchSize = batchSize;
+    }
+
+    /** Totals for the batches imported by one call to run(). */
+    public static final class Summary {
+        private final int batches;
+        private final long customers;
+        private final long accounts;
+        private final long rejected;
+        private final long elapsedMillis;
+
+        Summary(int batches, long customers, long accounts, long rejected, long elapsedMillis) {
+            this.batches = batches;
+            this.customers = customers;
+            this.accounts = accounts;
+            this.rejected = rejected;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getBatches() { return batches; }
+        public long getCustomers() { return customers; }
+        public long getAccounts() { return accounts; }
+        public long getRejected() { return rejected; }
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        @Override
+        public String toString() {
+            return "Imported " + customers + " customers and " + accounts + " accounts in " + batches
+                    + " batches, rejected " + rejected + " rows, in " + elapsedMillis + " ms";
+        }
+    }
+
+    private enum Format { CSV, JSONL }
+
+    // Consecutive lines of the feed; firstLine is the 1-based line number of lines[0]
+    private static final class Batch {
+        final int number;
+        final long firstLine;
+        final List<String> lines;
+
+        Batch(int number, long firstLine, List<String> lines) {
+            this.number = number;
+            this.firstLine = firstLine;
+            this.lines = lines;
+        }
+    }
+
+    private static final class Customer {
+        final long line;
+        final User user;
+        final String passwordHash;
+        final CheckingAccount checking;
+        final SavingsAccount savings;
+
+        Customer(long line, User user, String passwordHash, CheckingAccount checking, SavingsAccount savings) {
+            this.line = line;
+            this.user = user;
+            this.passwordHash = passwordHash;
+            this.checking = checking;
+            this.savings = savings;
+        }
+    }
+
+    private static final class Reject {
+        final long line;
+        final String reason;
+        final String raw;
+
+        Reject(long line, String reason, String raw) {
+            this.line = line;
+            this.reason = reason;
+            this.raw = raw;
+        }
+    }
+
+    /**
+     * Starts the import, or resumes it if it was started before and did not finish
+     * @param importID Unique ID of this import
+     * @param feed CSV (with a header line) or JSON Lines file; ".jsonl" and ".json" mean JSON Lines
+     * @param rejectsReport File the rejected rows are written to once the import completes
+     * @return Totals for the batches imported by this call; batches committed earlier are not counted
+     * @throws SQLException if a batch could not be written; run again with the same ID to resume
+     */
+    public Summary run(String importID, Path feed, Path rejectsReport)
+            throws SQLException, IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        if (!startIfNew(importID, feed)) {
+            return new Summary(0, 0, 0, 0, System.currentTimeMillis() - start);
+        }
+        Set<Integer> done = committedBatches(importID);
+        Format format = formatOf(feed);
+
+        AtomicInteger imported = new AtomicInteger();
+        AtomicLong customers = new AtomicLong();
+        AtomicLong accounts = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        // Bounds the batches read ahead of the workers, so memory does not grow with the feed
+        Semaphore inFlight = new Semaphore(threads * 2);
+        List<Future<?>> futures = new ArrayList<>();
+        SQLException failure = null;
+
+        try (BufferedReader reader = Files.newBufferedReader(feed, StandardCharsets.UTF_8)) {
+            String[] header = null;
+            long lineNo = 0;
+            if (format == Format.CSV) {
+                String first = reader.readLine();
+                if (first == null) throw new IOException("Empty feed: " + feed);
+                header = parseHeader(stripBom(first));
+                lineNo = 1;
+            }
+            String[] columns = header;
+
+            int batchNo = 0;
+            List<String> lines = new ArrayList<>(batchSize);
+            long firstLine = lineNo + 1;
+            String line;
+            while (true) {
+                line = reader.readLine();
+                if (line != null) {
+                    if (lineNo == 0) line = stripBom(line);
+                    lines.add(line);
+                    lineNo++;
+                }
+                if (lines.size() == batchSize || (line == null && !lines.isEmpty())) {
+                    Batch batch = new Batch(batchNo++, firstLine, lines);
+                    lines = new ArrayList<>(batchSize);
+                    firstLine = lineNo + 1;
+                    if (!done.contains(batch.number)) {
+                        inFlight.acquire();
+                        futures.add(workers.submit(() -> {
+                            try {
+                                long[] totals = importBatchWithRetry(importID, batch, format, columns);
+                                if (totals != null) {
+                                    imported.incrementAndGet();
+                                    customers.addAndGet(totals[0]);
+                                    accounts.addAndGet(totals[1]);
+                                    rejected.addAndGet(totals[2]);
+                                }
+                                return null;
+                            } finally {
+                                inFlight.release();
+                            }
+                        }));
+                    }
+                }
+                if (line == null) break;
+            }
+
+            // Keep going past a failed batch so one bad stretch of the feed does not hold up the rest
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    LOG.error("Import batch failed", cause);
+                    if (failure == null) {
+                        failure = cause instanceof SQLException ? (SQLException) cause : new SQLException(cause);
+                    }
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        markCompleted(importID);
+        long reported = writeRejectsReport(importID, rejectsReport);
+        if (reported > 0) {
+            LOG.info("Wrote {} rejected rows to {}", reported, rejectsReport);
+        }
+        return new Summary(imported.get(), customers.get(), accounts.get(), rejected.get(),
+                System.currentTimeMillis() - start);
+    }
+
+    // Records the import and its batch size. Returns false if the import already completed.
+    private boolean startIfNew(String importID, Path feed) throws SQLException {
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            Connection connection = uow.getConnection();
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT BatchSize, Status FROM ImportRun WHERE ImportID = ? FOR UPDATE");
+            try {
+                statement.setString(1, importID);
+                ResultSet resultSet = statement.executeQuery();
+                if (resultSet.next()) {
+                    // Batch numbers only identify the same lines when the batch size is unchanged
+                    if (resultSet.getInt(1) != batchSize) {
+                        throw new SQLException("Import " + importID + " was started with batch size " + resultSet.getInt(1));
+                    }
+                    return !COMPLETED.equals(resultSet.getString(2));
+                }
+            } finally {
+                DatabaseConnection.closeStatement(statement);
+            }
+
+            statement = connection.prepareStatement(
+                    "INSERT INTO ImportRun (ImportID, Source, BatchSize, Status, CreatedAt) VALUES (?, ?, ?, ?, NOW())");
+            try {
+                statement.setString(1, importID);
+                statement.setString(2, truncate(feed.getFileName().toString(), 255));
+                statement.setInt(3, batchSize);
+                statement.setString(4, RUNNING);
+                statement.executeUpdate();
+            } finally {
+                DatabaseConnection.closeStatement(statement);
+            }
+            uow.commit();
+            return true;
+        }
+    }
+
+    private static Set<Integer> committedBatches(String importID) throws SQLException {
+        Set<Integer> batches = new HashSet<>();
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) throw new SQLException("No database connection available");
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = connection.prepareStatement("SELECT BatchNo FROM ImportBatch WHERE ImportID = ?");
+            statement.setString(1, importID);
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                batches.add(resultSet.getInt(1));
+            }
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+        if (!batches.isEmpty()) {
+            LOG.info("Resuming import {}: {} batches already committed", importID, batches.size());
+        }
+        return batches;
+    }
+
+    // Parsing and hashing happen once; only the database part is retried. Deadlocks, and
+    // usernames taken by another batch or instance after our check, are retried with a full check.
+    private static long[] importBatchWithRetry(String importID, Batch batch, Format format, String[] header)
+            throws SQLException {
+        List<Customer> customers = new ArrayList<>(batch.lines.size());
+        List<Reject> rejects = new ArrayList<>();
+        parse(batch, format, header, customers, rejects);
+
+        boolean checkAll = false;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return importBatch(importID, batch, format, header, customers, rejects, checkAll);
+            } catch (SQLException e) {
+                boolean retryable = e instanceof SQLTransactionRollbackException || DatabaseConnection.isDuplicateKey(e);
+                if (!retryable || attempt == MAX_ATTEMPTS) throw e;
+                checkAll = true;
+            }
+        }
+    }
+
+    // Returns {customers, accounts, rejected}, or null if another importer already committed the batch
+    private static long[] importBatch(String importID, Batch batch, Format format, String[] header,
+                                      List<Customer> parsed, List<Reject> parseRejects, boolean checkAll) throws SQLException {
+        List<Customer> accepted = new ArrayList<>(parsed.size());
+        List<Reject> rejects = new ArrayList<>(parseRejects);
+        int accounts = 0;
+
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            Connection connection = uow.getConnection();
+            Set<String> taken = takenUsernames(connection, parsed, checkAll);
+            for (Customer customer : parsed) {
+                if (taken.contains(UsernameFilter.fold(customer.user.getUsername()))) {
+                    String raw = batch.lines.get((int) (customer.line - batch.firstLine));
+                    rejects.add(new Reject(customer.line, "Username already exists", redact(format, header, raw)));
+                } else {
+                    accepted.add(customer);
+                    if (customer.checking != null) accounts++;
+                    if (customer.savings != null) accounts++;
+                }
+            }
+
+            if (!claim(connection, importID, batch, accepted.size(), accounts, rejects.size())) {
+                return null;
+            }
+            insertCustomers(connection, accepted);
+            insertRejects(connection, importID, rejects);
+            uow.commit();
+        }
+
+        for (Customer customer : accepted) {
+            UsernameFilter.add(customer.user.getUsername());
+        }
+        return new long[] { accepted.size(), accounts, rejects.size() };
+    }
+
+    // Folded usernames of the batch that are already in Users. Names the filter reports as
+    // definitely free are not looked up unless checkAll is set.
+    private static Set<String> takenUsernames(Connection connection, List<Customer> customers, boolean checkAll)
+            throws SQLException {
+        List<String> lookup = new ArrayList<>();
+        for (Customer customer : customers) {
+            String username = customer.user.getUsername();
+            if (checkAll || UsernameFilter.mightContain(username)) lookup.add(username);
+        }
+
+        Set<String> taken = new HashSet<>();
+        for (int from = 0; from < lookup.size(); from += LOOKUP_CHUNK) {
+            List<String> chunk = lookup.subList(from, Math.min(lookup.size(), from + LOOKUP_CHUNK));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT Username FROM Users WHERE Username IN (" + placeholders + ")");
+            ResultSet resultSet = null;
+            try {
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setString(i + 1, chunk.get(i));
+                }
+                resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    taken.add(UsernameFilter.fold(resultSet.getString(1)));
+                }
+            } finally {
+                DatabaseConnection.closeResultSet(resultSet);
+                DatabaseConnection.closeStatement(statement);
+            }
+        }
+        return taken;
+    }
+
+    // Inserting the checkpoint row first makes it the claim: a second importer on the same
+    // batch waits on its key and then fails with a duplicate key once the first commits
+    private static boolean claim(Connection connection, String importID, Batch batch,
+                                 int customers, int accounts, int rejected) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement("INSERT INTO ImportBatch " +
+                "(ImportID, BatchNo, FirstLine, LineCount, Customers, Accounts, Rejected, CompletedAt) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, NOW())");
+        try {
+            statement.setString(1, importID);
+            statement.setInt(2, batch.number);
+            statement.setLong(3, batch.firstLine);
+            statement.setInt(4, batch.lines.size());
+            statement.setInt(5, customers);
+            statement.setInt(6, accounts);
+            statement.setInt(7, rejected);
+            statement.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            if (DatabaseConnection.isDuplicateKey(e)) return false;
+            throw e;
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+    }
+
+    private static void insertCustomers(Connection connection, List<Customer> customers) throws SQLException {
+        if (customers.isEmpty()) return;
+        List<Transaction> deposits = new ArrayList<>();
+
+        PreparedStatement statement = connection.prepareStatement(INSERT_USER);
+        try {
+            for (Customer customer : customers) {
+                User user = customer.user;
+                statement.setString(1, user.getUserID());
+                statement.setString(2, user.getUsername());
+                statement.setString(3, customer.passwordHash);
+                statement.setString(4, user.getFullName());
+                statement.setString(5, user.getEmail());
+                statement.setString(6, user.getPhone());
+                statement.setString(7, user.getCreatedDate());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+
+        statement = null;
+        try {
+            for (Customer customer : customers) {
+                CheckingAccount account = customer.checking;
+                if (account == null) continue;
+                if (statement == null) statement = connection.prepareStatement(INSERT_CHECKING);
+                statement.setString(1, account.getCheckingAccountNumber());
+                statement.setString(2, customer.user.getFullName());
+                Money.bind(statement, 3, account.getBalance());
+                statement.setString(4, account.getCustomerID());
+                statement.addBatch();
+                if (account.getBalance() > 0) {
+                    deposits.add(new Transaction(account.getBalance(), "Initial Deposit", null,
+                            account.getCheckingAccountNumber(), account.getCustomerID()));
+                }
+            }
+            if (statement != null) statement.executeBatch();
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+
+        statement = null;
+        try {
+            for (Customer customer : customers) {
+                SavingsAccount account = customer.savings;
+                if (account == null) continue;
+                if (statement == null) statement = connection.prepareStatement(INSERT_SAVINGS);
+                statement.setString(1, account.getSavingsAccountNumber());
+                statement.setString(2, customer.user.getFullName());
+                Money.bind(statement, 3, account.getBalance());
+                statement.setFloat(4, account.getInterestRate());
+                statement.setString(5, account.getCustomerID());
+                statement.addBatch();
+                if (account.getBalance() > 0) {
+                    deposits.add(new Transaction(account.getBalance(), "Initial Deposit", null,
+                            account.getSavingsAccountNumber(), account.getCustomerID()));
+                }
+            }
+            if (statement != null) statement.executeBatch();
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+
+        if (deposits.isEmpty()) return;
+        statement = connection.prepareStatement(Transaction.INSERT_SQL);
+        try {
+            for (Transaction deposit : deposits) {
+                deposit.bindInsert(statement, 1);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+        DailyRollup.record(connection, deposits);
+    }
+
+    private static void insertRejects(Connection connection, String importID, List<Reject> rejects) throws SQLException {
+        if (rejects.isEmpty()) return;
+        PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO ImportReject (ImportID, LineNo, Reason, RawLine) VALUES (?, ?, ?, ?)");
+        try {
+            for (Reject reject : rejects) {
+                statement.setString(1, importID);
+                statement.setLong(2, reject.line);
+                statement.setString(3, truncate(reject.reason, 200));
+                statement.setString(4, reject.raw);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+    }
+
+    private static void markCompleted(String importID) throws SQLException {
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) throw new SQLException("No database connection available");
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement("UPDATE ImportRun SET Status = ?, CompletedAt = NOW() WHERE ImportID = ?");
+            statement.setString(1, COMPLETED);
+            statement.setString(2, importID);
+            statement.executeUpdate();
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+    }
+
+    /**
+     * Writes every rejected row of an import to a CSV file: line number, reason and the original
+     * line with its password masked
+     * @return Number of rows written
+     */
+    public static long writeRejectsReport(String importID, Path report) throws SQLException, IOException {
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) throw new SQLException("No database connection available");
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        long count = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+            statement = connection.prepareStatement("SELECT LineNo, Reason, RawLine FROM ImportReject " +
+                    "WHERE ImportID = ? ORDER BY LineNo", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setString(1, importID);
+            statement.setFetchSize(1000);
+            resultSet = statement.executeQuery();
+            writer.write("Line,Reason,Record");
+            writer.newLine();
+            while (resultSet.next()) {
+                writer.write(resultSet.getLong(1) + "," + csvQuote(resultSet.getString(2)) + "," + csvQuote(resultSet.getString(3)));
+                writer.newLine();
+                count++;
+            }
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+        return count;
+    }
+
+    // --- Parsing and validation ---
+
+    private static void parse(Batch batch, Format format, String[] header, List<Customer> customers, List<Reject> rejects) {
+        // Duplicates inside the batch never reach the database, where they would fail the whole INSERT
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < batch.lines.size(); i++) {
+            String raw = batch.lines.get(i);
+            long line = batch.firstLine + i;
+            if (raw.isBlank()) continue;
+            try {
+                Map<String, String> record = format == Format.CSV ? csvRecord(header, raw) : jsonRecord(raw);
+                Customer customer = toCustomer(line, record);
+                if (!seen.add(UsernameFilter.fold(customer.user.getUsername()))) {
+                    throw new IllegalArgumentException("Username appears more than once in the feed");
+                }
+                customers.add(customer);
+            } catch (IllegalArgumentException e) {
+                rejects.add(new Reject(line, e.getMessage(), redact(format, header, raw)));
+            }
+        }
+    }
+
+    // Throws IllegalArgumentException (including NumberFormatException) with the reason for rejecting the row
+    private static Customer toCustomer(long line, Map<String, String> record) {
+        String username = required(record, "username", 50);
+        String password = required(record, "password", 255);
+        String fullName = required(record, "fullName", 100);
+        String email = optional(record, "email", 100);
+        String phone = optional(record, "phone", 20);
+        if (email != null && email.indexOf('@') < 1) {
+            throw new IllegalArgumentException("email is not a valid address");
+        }
+
+        Long checkingDeposit = amount(record, "checkingDeposit");
+        Long savingsDeposit = amount(record, "savingsDeposit");
+        float rate = DEFAULT_RATE;
+        String rateText = optional(record, "savingsRate", 20);
+        if (rateText != null) {
+            try {
+                rate = Float.parseFloat(rateText);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("savingsRate is not a number");
+            }
+            if (!(rate >= 0 && rate <= 100)) throw new IllegalArgumentException("savingsRate must be between 0 and 100");
+        }
+        if ((checkingDeposit != null || savingsDeposit != null) && fullName.length() > 50) {
+            throw new IllegalArgumentException("fullName is longer than 50 characters, the account name limit");
+        }
+
+        String passwordHash = PasswordHasher.isHash(password) ? password : PasswordHasher.hash(password);
+        User user = new User(username, null, fullName, email, phone);
+        CheckingAccount checking = checkingDeposit == null ? null
+                : new CheckingAccount(fullName, checkingDeposit, user.getUserID());
+        SavingsAccount savings = savingsDeposit == null ? null
+                : new SavingsAccount(fullName, savingsDeposit, rate, user.getUserID());
+        return new Customer(line, user, passwordHash, checking, savings);
+    }
+
+    private static String required(Map<String, String> record, String field, int maxLength) {
+        String value = optional(record, field, maxLength);
+        if (value == null) throw new IllegalArgumentException(field + " is missing");
+        return value;
+    }
+
+    private static String optional(Map<String, String> record, String field, int maxLength) {
+        String value = record.get(field);
+        if (value == null || value.isBlank()) return null;
+        value = value.trim();
+        if (value.length() > maxLength) {
+            throw new IllegalArgumentException(field + " is longer than " + maxLength + " characters");
+        }
+        return value;
+    }
+
+    private static Long amount(Map<String, String> record, String field) {
+        String text = optional(record, field, 30);
+        if (text == null) return null;
+        long amount;
+        try {
+            amount = Money.parse(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + " is not a valid amount");
+        }
+        if (amount < 0) throw new IllegalArgumentException(field + " is negative");
+        return amount;
+    }
+
+    // The feed line as kept with a reject, with every password value replaced by MASK so
+    // plain-text passwords never reach ImportReject or the rejects report
+    private static String redact(Format format, String[] header, String raw) {
+        try {
+            return format == Format.CSV ? redactCsv(header, raw) : redactJson(raw);
+        } catch (IllegalArgumentException e) {
+            return WITHHELD;
+        }
+    }
+
+    private static String redactCsv(String[] header, String raw) {
+        List<String> values = csvFields(raw);
+        // With the wrong number of fields there is no telling which one is the password
+        if (values.size() != header.length) return WITHHELD;
+        StringBuilder line = new StringBuilder(raw.length());
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) line.append(',');
+            String value = header[i].equals("password") ? MASK : values.get(i);
+            line.append(value.indexOf(',') >= 0 || value.indexOf('"') >= 0 ? csvQuote(value) : value);
+        }
+        return line.toString();
+    }
+
+    // Walks the object as jsonRecord does and splices MASK over each "password" value
+    private static String redactJson(String raw) {
+        StringBuilder line = new StringBuilder(raw.length());
+        int copied = 0;
+        int[] pos = { skipSpace(raw, 0) };
+        expect(raw, pos, '{');
+        if (peek(raw, pos) != '}') {
+            while (true) {
+                String key = jsonString(raw, pos);
+                expect(raw, pos, ':');
+                peek(raw, pos);
+                int start = pos[0];
+                jsonValue(raw, pos);
+                if (key.equalsIgnoreCase("password")) {
+                    line.append(raw, copied, start).append('"').append(MASK).append('"');
+                    copied = pos[0];
+                }
+                char next = peek(raw, pos);
+                pos[0]++;
+                if (next == '}') break;
+                if (next != ',') throw new IllegalArgumentException("Malformed JSON at column " + pos[0]);
+            }
+        }
+        return line.append(raw, copied, raw.length()).toString();
+    }
+
+    private static Format formatOf(Path feed) {
+        String name = feed.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jsonl") || name.endsWith(".json") ? Format.JSONL : Format.CSV;
+    }
+
+    // Maps the header names to the canonical field names, ignoring case; unknown columns are kept but unused
+    private static String[] parseHeader(String line) {
+        List<String> names = csvFields(line);
+        String[] header = new String[names.size()];
+        for (int i = 0; i < header.length; i++) {
+            String name = names.get(i).trim();
+            header[i] = name;
+            for (String field : FIELDS) {
+                if (field.equalsIgnoreCase(name)) header[i] = field;
+            }
+        }
+        if (!Arrays.asList(header).containsAll(List.of("username", "password", "fullName"))) {
+            throw new IllegalArgumentException("CSV header must name at least username, password and fullName");
+        }
+        return header;
+    }
+
+    private static Map<String, String> csvRecord(String[] header, String line) {
+        List<String> values = csvFields(line);
+        if (values.size() != header.length) {
+            throw new IllegalArgumentException("Expected " + header.length + " fields but found " + values.size());
+        }
+        Map<String, String> record = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            record.put(header[i], values.get(i));
+        }
+        return record;
+    }
+
+    // RFC 4180 fields on one line: quoted fields may contain commas and doubled quotes
+    private static List<String> csvFields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("Unterminated quoted field");
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // A flat JSON object whose values are strings, numbers, booleans or null. Numbers are
+    // kept as their literal text so amounts are parsed exactly.
+    private static Map<String, String> jsonRecord(String line) {
+        Map<String, String> record = new HashMap<>();
+        int[] pos = { skipSpace(line, 0) };
+        expect(line, pos, '{');
+        if (peek(line, pos) == '}') {
+            pos[0]++;
+        } else {
+            while (true) {
+                String key = jsonString(line, pos);
+                expect(line, pos, ':');
+                record.put(key, jsonValue(line, pos));
+                char next = peek(line, pos);
+                pos[0]++;
+                if (next == '}') break;
+                if (next != ',') throw new IllegalArgumentException("Malformed JSON at column " + pos[0]);
+            }
+        }
+        if (skipSpace(line, pos[0]) != line.length()) {
+            throw new IllegalArgumentException("Unexpected text after the JSON object");
+        }
+        return record;
+    }
+
+    private static String jsonValue(String line, int[] pos) {
+        char c = peek(line, pos);
+        if (c == '"') return jsonString(line, pos);
+        if (c == '{' || c == '[') throw new IllegalArgumentException("Nested JSON values are not supported");
+        int start = pos[0];
+        while (pos[0] < line.length() && ",} \t".indexOf(line.charAt(pos[0])) < 0) pos[0]++;
+        String literal = line.substring(start, pos[0]);
+        if (literal.isEmpty()) throw new IllegalArgumentException("Malformed JSON at column " + (start + 1));
+        return literal.equals("null") ? null : literal;
+    }
+
+    private static String jsonString(String line, int[] pos) {
+        expect(line, pos, '"');
+        StringBuilder value = new StringBuilder();
+        while (pos[0] < line.length()) {
+            char c = line.charAt(pos[0]++);
+            if (c == '"') return value.toString();
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (pos[0] >= line.length()) break;
+            char escaped = line.charAt(pos[0]++);
+            switch (escaped) {
+                case 'n' -> value.append('\n');
+                case 't' -> value.append('\t');
+                case 'r' -> value.append('\r');
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'u' -> {
+                    if (pos[0] + 4 > line.length()) throw new IllegalArgumentException("Malformed JSON escape");
+                    try {
+                        value.append((char) Integer.parseInt(line.substring(pos[0], pos[0] + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Malformed JSON escape");
+                    }
+                    pos[0] += 4;
+                }
+                default -> value.append(escaped);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated JSON string");
+    }
+
+    private static void expect(String line, int[] pos, char c) {
+        if (peek(line, pos) != c) {
+            throw new IllegalArgumentException("Expected '" + c + "' at column " + (pos[0] + 1));
+        }
+        pos[0]++;
+    }
+
+    // Skips whitespace and returns the next character, or 0 at the end of the line
+    private static char peek(String line, int[] pos) {
+        pos[0] = skipSpace(line, pos[0]);
+        return pos[0] < line.length() ? line.charAt(pos[0]) : 0;
+    }
+
+    private static int skipSpace(String line, int pos) {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) pos++;
+        return pos;
+    }
+
+    private static String stripBom(String line) {
+        return line.startsWith("\uFEFF") ? line.substring(1) : line;
+    }
+
+    private static String csvQuote(String value) {
+        if (value == null) return "";
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() <= maxLength ? value : value.substring(0, maxLength);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java BulkOnboardingImporter <importID> <file> [--threads N] [--batch N] [--rejects file]");
+            System.exit(1);
+        }
+        // Each worker holds a connection for a batch's whole transaction, so more workers than
+        // pooled connections would only time out waiting for one
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), DatabaseConnection.getPoolMaxSize());
+        int batchSize = 2000;
+        Path feed = Paths.get(args[1]);
+        Path rejects = Paths.get(args[1] + ".rejects.csv");
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--batch") && i + 1 < args.length) batchSize = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--rejects") && i + 1 < args.length) rejects = Paths.get(args[++i]);
+        }
+        if (threads <= 0 || threads > DatabaseConnection.getPoolMaxSize()) {
+            System.err.println("--threads must be between 1 and " + DatabaseConnection.getPoolMaxSize()
+                    + " (banking.pool.maxSize)");
+            System.exit(1);
+        }
+        DatabaseConnection.initializeDatabase();
+        UsernameFilter.startWarmUp();
+        Summary summary = new BulkOnboardingImporter(threads, batchSize).run(args[0], feed, rejects);
+        System.out.println(summary);
+        DatabaseConnection.shutdownPool();
+    }
+}
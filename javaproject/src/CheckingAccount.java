@@ -1,14 +1,21 @@
 import java.sql.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class CheckingAccount {
+    private static final Log LOG = Log.get(CheckingAccount.class);
+
+    private static final Metrics.Timer CREATE_ACCOUNT = Metrics.timer("createAccount");
+    private static final Metrics.Timer DEPOSIT = Metrics.timer("deposit");
+    private static final Metrics.Timer WITHDRAW = Metrics.timer("withdraw");
+
     private String checkingAccountNumber;
     private String customerName;
-    private float balance;
+    private long balance; // minor units, see Money
     private String customerID;
 
     public CheckingAccount() {}
 
-    public CheckingAccount(String customerName, float initialDeposit, String customerID) {
+    public CheckingAccount(String customerName, long initialDeposit, String customerID) {
         this.checkingAccountNumber = generateAccountNumber();
         this.customerName = customerName;
         this.balance = initialDeposit;
@@ -16,84 +23,126 @@ public class CheckingAccount {
     }
 
     public String getCheckingAccountNumber() { return checkingAccountNumber; }
-    public float getBalance() { return balance; }
+    public long getBalance() { return balance; }
     public String getCustomerID() { return customerID; }
 
     public void setCheckingAccountNumber(String number) { this.checkingAccountNumber = number; }
     public void setCustomerName(String name) { this.customerName = name; }
-    public void setBalance(float balance) { this.balance = balance; }
+    public void setBalance(long balance) { this.balance = balance; }
     public void setCustomerID(String id) { this.customerID = id; }
 
     private String generateAccountNumber() {
-        return "CHK" + System.currentTimeMillis();
+        return IdGenerators.get().nextId("CHK");
+    }
+
+    CheckingAccount copy() {
+        CheckingAccount acc = new CheckingAccount();
+        acc.checkingAccountNumber = checkingAccountNumber;
+        acc.customerName = customerName;
+        acc.balance = balance;
+        acc.customerID = customerID;
+        return acc;
     }
 
     public boolean createAccount() {
-        Connection con = DatabaseConnection.getConnection();
-        PreparedStatement ps = null;
-        try {
-            ps = con.prepareStatement("INSERT INTO CheckingAccount (CheckingAccountNumber, CustomerName, Balance, CustomerID) VALUES (?, ?, ?, ?)");
-            ps.setString(1, checkingAccountNumber);
-            ps.setString(2, customerName);
-            ps.setFloat(3, balance);
-            ps.setString(4, customerID);
+        return CREATE_ACCOUNT.time(this::insertAccount);
+    }
 
-            int rows = ps.executeUpdate();
-            if (rows > 0 && balance > 0) {
-                new Transaction(balance, "Initial Deposit", null, checkingAccountNumber, customerID).recordTransaction();
-                return true;
+    private boolean insertAccount() {
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            PreparedStatement ps = null;
+            try {
+                ps = uow.getConnection().prepareStatement("INSERT INTO CheckingAccount (CheckingAccountNumber, CustomerName, Balance, CustomerID) VALUES (?, ?, ?, ?)");
+                ps.setString(1, checkingAccountNumber);
+                ps.setString(2, customerName);
+                Money.bind(ps, 3, balance);
+                ps.setString(4, customerID);
+                if (ps.executeUpdate() == 0) return false;
+            } finally {
+                DatabaseConnection.closeStatement(ps);
+            }
+            if (balance > 0) {
+                new Transaction(balance, "Initial Deposit", null, checkingAccountNumber, customerID).recordTransaction(uow.getConnection());
             }
+            uow.commit();
+            AccountCache.accountChanged(customerID);
+            return true;
         } catch (SQLException e) {
-            System.err.println("Create Checking Account Error: " + e.getMessage());
-        } finally {
-            DatabaseConnection.closeStatement(ps);
-            DatabaseConnection.closeConnection(con);
+            LOG.error("Create Checking Account Error", e);
         }
         return false;
     }
 
-    public boolean deposit(float amount) {
+    public boolean deposit(long amount) {
+        return DEPOSIT.time(() -> postDeposit(amount));
+    }
+
+    private boolean postDeposit(long amount) {
         if (amount <= 0) return false;
-        Connection con = DatabaseConnection.getConnection();
-        PreparedStatement ps = null;
-        try {
-            ps = con.prepareStatement("UPDATE CheckingAccount SET Balance = Balance + ? WHERE CheckingAccountNumber = ?");
-            ps.setFloat(1, amount);
-            ps.setString(2, checkingAccountNumber);
-            if (ps.executeUpdate() > 0) {
-                balance += amount;
-                new Transaction(amount, "Deposit", null, checkingAccountNumber, customerID).recordTransaction();
+        if (LedgerEngine.handles(checkingAccountNumber)) {
+            LedgerEngine.Result result = LedgerEngine.deposit(AccountTransfer.AccountType.CHECKING, checkingAccountNumber, customerID, amount);
+            if (result.status() != WithdrawalResult.SUCCESS) return false;
+            balance = result.balance();
+            AccountCache.accountChanged(customerID);
+            return true;
+        }
+        Transaction txn = new Transaction(amount, "Deposit", null, checkingAccountNumber, customerID);
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            if (uow.postBalanceChange("UPDATE CheckingAccount SET Balance = Balance + ? WHERE CheckingAccountNumber = ?",
+                    txn, Money.toDecimal(amount), checkingAccountNumber) > 0) {
+                uow.commit();
+                balance = Money.add(balance, amount);
+                AccountCache.accountChanged(customerID);
                 return true;
             }
         } catch (SQLException e) {
-            System.err.println("Deposit Error: " + e.getMessage());
-        } finally {
-            DatabaseConnection.closeStatement(ps);
-            DatabaseConnection.closeConnection(con);
+            LOG.error("Deposit Error", e);
         }
         return false;
     }
 
-    public boolean withdraw(float amount) {
-        if (amount <= 0 || amount > balance) return false;
-        Connection con = DatabaseConnection.getConnection();
-        PreparedStatement ps = null;
-        try {
-            ps = con.prepareStatement("UPDATE CheckingAccount SET Balance = Balance - ? WHERE CheckingAccountNumber = ?");
-            ps.setFloat(1, amount);
-            ps.setString(2, checkingAccountNumber);
-            if (ps.executeUpdate() > 0) {
-                balance -= amount;
-                new Transaction(amount, "Withdrawal", checkingAccountNumber, null, customerID).recordTransaction();
-                return true;
+    public boolean withdraw(long amount) {
+        return withdrawChecked(amount) == WithdrawalResult.SUCCESS;
+    }
+
+    /**
+     * Withdraws with the balance check done by MySQL: the UPDATE only matches while
+     * Balance >= amount, so concurrent withdrawals from any session or node cannot
+     * overdraw the account. A zero row count means insufficient funds, or
+     * ACCOUNT_NOT_FOUND if a lookup finds the account gone.
+     */
+    public WithdrawalResult withdrawChecked(long amount) {
+        return WITHDRAW.time(() -> postWithdrawal(amount), result -> result == WithdrawalResult.SUCCESS);
+    }
+
+    private WithdrawalResult postWithdrawal(long amount) {
+        if (amount <= 0) return WithdrawalResult.INVALID_AMOUNT;
+        if (LedgerEngine.handles(checkingAccountNumber)) {
+            LedgerEngine.Result result = LedgerEngine.withdraw(AccountTransfer.AccountType.CHECKING, checkingAccountNumber, customerID, amount);
+            if (result.status() == WithdrawalResult.SUCCESS) {
+                balance = result.balance();
+                AccountCache.accountChanged(customerID);
             }
+            return result.status();
+        }
+        Transaction txn = new Transaction(amount, "Withdrawal", checkingAccountNumber, null, customerID);
+        ReentrantLock lock = AccountLocks.lockFor(checkingAccountNumber);
+        lock.lock();
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            if (uow.postBalanceChange("UPDATE CheckingAccount SET Balance = Balance - ? WHERE CheckingAccountNumber = ? AND Balance >= ?",
+                    txn, Money.toDecimal(amount), checkingAccountNumber, Money.toDecimal(amount)) > 0) {
+                uow.commit();
+                balance = Money.subtract(balance, amount);
+                AccountCache.accountChanged(customerID);
+                return WithdrawalResult.SUCCESS;
+            }
+            return AccountTransfer.AccountType.CHECKING.declined(uow.getConnection(), checkingAccountNumber);
         } catch (SQLException e) {
-            System.err.println("Withdraw Error: " + e.getMessage());
+            LOG.error("Withdraw Error", e);
+            return WithdrawalResult.ERROR;
         } finally {
-            DatabaseConnection.closeStatement(ps);
-            DatabaseConnection.closeConnection(con);
+            lock.unlock();
         }
-        return false;
     }
 
     public void refreshBalance() {
@@ -105,10 +154,11 @@ public class CheckingAccount {
             ps.setString(1, checkingAccountNumber);
             rs = ps.executeQuery();
             if (rs.next()) {
-                balance = rs.getFloat("Balance");
+                balance = LedgerEngine.balanceOf(AccountTransfer.AccountType.CHECKING, checkingAccountNumber, customerID,
+                        Money.read(rs, "Balance"));
             }
         } catch (SQLException e) {
-            System.err.println("Balance Refresh Error: " + e.getMessage());
+            LOG.error("Balance Refresh Error", e);
         } finally {
             DatabaseConnection.closeResultSet(rs);
             DatabaseConnection.closeStatement(ps);
@@ -128,12 +178,14 @@ public class CheckingAccount {
                 CheckingAccount acc = new CheckingAccount();
                 acc.setCheckingAccountNumber(rs.getString("CheckingAccountNumber"));
                 acc.setCustomerName(rs.getString("CustomerName"));
-                acc.setBalance(rs.getFloat("Balance"));
                 acc.setCustomerID(rs.getString("CustomerID"));
+                // MySQL trails the ledger engine, when it runs
+                acc.setBalance(LedgerEngine.balanceOf(AccountTransfer.AccountType.CHECKING, acc.getCheckingAccountNumber(),
+                        acc.getCustomerID(), Money.read(rs, "Balance")));
                 return acc;
             }
         } catch (SQLException e) {
-            System.err.println("Fetch Checking Account Error: " + e.getMessage());
+            LOG.error("Fetch Checking Account Error", e);
         } finally {
             DatabaseConnection.closeResultSet(rs);
             DatabaseConnection.closeStatement(ps);
@@ -147,7 +199,7 @@ public class CheckingAccount {
         return "CheckingAccount{" +
                 "accountNumber='" + checkingAccountNumber + '\'' +
                 ", customerName='" + customerName + '\'' +
-                ", balance=" + balance +
+                ", balance=" + Money.format(balance) +
                 ", customerID='" + customerID + '\'' +
                 '}';
     }
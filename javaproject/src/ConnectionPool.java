@@ -0,0 +1,510 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ConnectionPool keeps a bounded set of physical MySQL connections open and hands out
+ * proxies whose close() returns the connection to the pool instead of closing it.
+ * A daemon housekeeper evicts idle connections, tops the pool up to its minimum size
+ * and reports connections that have been borrowed for too long.
+ *
+ * Each physical connection also keeps a bounded LRU cache of its prepared statements, keyed
+ * by SQL text. prepareStatement() on a handle takes the statement from the cache when it can,
+ * and closing the statement puts it back, so the same SQL is parsed (and, with server-side
+ * prepares, planned) once per connection instead of once per call. Statements a borrower
+ * left open are put back (or closed) when the connection is returned.
+ */
+public class ConnectionPool {
+    private static final Log LOG = Log.get(ConnectionPool.class);
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final long validationIntervalMillis;
+    private final int statementCacheSize;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed = false;
+
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    private static final Metrics.Timer ACQUIRE = Metrics.timer("connection.acquire");
+    private static final Metrics.Timer EXECUTE = Metrics.timer("statement.execute");
+    private static final Metrics.Timer COMMIT = Metrics.timer("commit");
+
+    /**
+     * Creates a pool and opens minSize connections up front
+     * @param url JDBC URL
+     * @param username Database user
+     * @param password Database password
+     * @param minSize Connections kept open even when idle
+     * @param maxSize Upper bound on open connections
+     * @param acquireTimeoutMillis How long getConnection() waits for a free connection
+     * @param idleTimeoutMillis Idle time after which surplus connections are closed
+     * @param leakThresholdMillis Borrow time after which a leak warning is printed (0 disables)
+     * @param statementCacheSize Prepared statements cached per connection (0 disables)
+     */
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+                          long acquireTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis,
+                          int statementCacheSize) {
+        if (minSize < 0 || maxSize <= 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.validationIntervalMillis = 500;
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMillis, 30_000) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+        fillToMinimum();
+    }
+
+    /**
+     * Borrows a connection, waiting up to the acquire timeout for one to become free
+     * @return Connection whose close() returns it to the pool
+     * @throws SQLException if the pool is exhausted or a new connection cannot be opened
+     */
+    public Connection getConnection() throws SQLException {
+        long start = Metrics.start();
+        boolean ok = false;
+        try {
+            Connection connection = acquire();
+            ok = true;
+            return connection;
+        } finally {
+            ACQUIRE.record(start, ok);
+        }
+    }
+
+    private Connection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool has been shut down");
+        }
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("Timed out after " + acquireTimeoutMillis
+                        + "ms waiting for a connection (active=" + borrowed.size() + ", max=" + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) break;
+                closeQuietly(pooled.physical);
+            }
+            if (pooled == null) {
+                pooled = new PooledConnection(openPhysical());
+            }
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowSite = leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowed.add(pooled);
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getActiveCount() { return borrowed.size(); }
+    public int getIdleCount() { return idle.size(); }
+    public int getMaxSize() { return maxSize; }
+    public long getStatementCacheHits() { return statementCacheHits.sum(); }
+    public long getStatementCacheMisses() { return statementCacheMisses.sum(); }
+
+    /**
+     * Closes every idle connection and stops the housekeeper. Borrowed connections
+     * are closed when their borrowers return them.
+     */
+    public void shutdown() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            closeQuietly(pooled.physical);
+        }
+    }
+
+    private Connection openPhysical() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, username, password);
+        LOG.debug("Database connection established successfully!");
+        return connection;
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        // Skip the validation round-trip for connections that were in use a moment ago
+        if (System.currentTimeMillis() - pooled.lastReturnedAt < validationIntervalMillis) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled, boolean broken) {
+        pooled.reclaimStatements();
+        borrowed.remove(pooled);
+        try {
+            if (broken || closed || pooled.physical.isClosed()) {
+                closeQuietly(pooled.physical);
+                return;
+            }
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastReturnedAt = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            closeQuietly(pooled.physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        for (PooledConnection pooled : idle) {
+            if (idle.size() + borrowed.size() <= minSize) break;
+            if (now - pooled.lastReturnedAt > idleTimeoutMillis && idle.remove(pooled)) {
+                closeQuietly(pooled.physical);
+            }
+        }
+
+        if (leakThresholdMillis > 0) {
+            for (PooledConnection pooled : borrowed) {
+                if (!pooled.leakReported && now - pooled.borrowedAt > leakThresholdMillis) {
+                    pooled.leakReported = true;
+                    LOG.warn("Possible connection leak: connection held for {}ms", now - pooled.borrowedAt, pooled.borrowSite);
+                }
+            }
+        }
+
+        fillToMinimum();
+    }
+
+    private void fillToMinimum() {
+        while (!closed && idle.size() + borrowed.size() < minSize) {
+            try {
+                PooledConnection pooled = new PooledConnection(openPhysical());
+                pooled.lastReturnedAt = System.currentTimeMillis();
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                LOG.warn("Failed to open pooled connection: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        try {
+            resource.close();
+        } catch (Exception e) {
+            // Resource is being discarded anyway
+        }
+    }
+
+    // Only plain forward-only, read-only statements are cached; other variants are rare here
+    private boolean isCacheable(Object[] args) {
+        if (statementCacheSize == 0) return false;
+        if (args.length == 1) return true;
+        return args.length == 3
+                && Integer.valueOf(ResultSet.TYPE_FORWARD_ONLY).equals(args[1])
+                && Integer.valueOf(ResultSet.CONCUR_READ_ONLY).equals(args[2]);
+    }
+
+    /**
+     * One physical connection plus its bookkeeping. Each borrow gets a fresh proxy handle
+     * so a stale reference kept by a caller cannot touch the connection after returning it.
+     */
+    private final class PooledConnection {
+        final Connection physical;
+        volatile long borrowedAt;
+        volatile long lastReturnedAt;
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+
+        // Idle statements only: a statement in use is removed until its close() puts it back
+        private final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+        // Statements handed out during the current borrow and not closed yet
+        private final Set<CachedStatement> checkedOut = ConcurrentHashMap.newKeySet();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        PreparedStatement prepareCached(String sql, Connection handle) throws SQLException {
+            PreparedStatement statement;
+            synchronized (statements) {
+                statement = statements.remove(sql);
+            }
+            if (statement != null) {
+                statementCacheHits.increment();
+            } else {
+                statementCacheMisses.increment();
+                statement = physical.prepareStatement(sql);
+            }
+            CachedStatement cached = new CachedStatement(this, sql, statement, handle);
+            checkedOut.add(cached);
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, cached);
+        }
+
+        // Closes, on the borrower's behalf, every statement it did not close itself, so none
+        // stays out of the cache for good or is still usable through a stale reference
+        void reclaimStatements() {
+            for (CachedStatement cached : checkedOut) {
+                cached.close();
+            }
+        }
+
+        void giveBack(String sql, PreparedStatement statement) {
+            PreparedStatement evicted = null;
+            synchronized (statements) {
+                if (statements.containsKey(sql)) {
+                    // The same SQL was open twice at once; keep one copy
+                    evicted = statement;
+                } else {
+                    statements.put(sql, statement);
+                    if (statements.size() > statementCacheSize) {
+                        Iterator<PreparedStatement> eldest = statements.values().iterator();
+                        evicted = eldest.next();
+                        eldest.remove();
+                    }
+                }
+            }
+            if (evicted != null) closeQuietly(evicted);
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Handle(this));
+        }
+    }
+
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean returned = false;
+        // A lock rather than synchronized, so a virtual thread waiting on the database does not pin its carrier
+        private final ReentrantLock lock = new ReentrantLock();
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            lock.lock();
+            try {
+                return dispatch(proxy, method, args);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Object dispatch(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close" -> {
+                    if (!returned) {
+                        returned = true;
+                        release(pooled, false);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return returned || pooled.physical.isClosed();
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "PooledConnection[" + pooled.physical + (returned ? ", returned" : "") + "]";
+                }
+                case "prepareStatement" -> {
+                    if (!returned && isCacheable(args)) {
+                        return pooled.prepareCached((String) args[0], (Connection) proxy);
+                    }
+                }
+                default -> { }
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            long start = name.equals("commit") ? Metrics.start() : 0;
+            boolean ok = false;
+            try {
+                Object result = method.invoke(pooled.physical, args);
+                ok = true;
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLNonTransientConnectionException) {
+                    // The physical link is gone; do not hand it out again
+                    returned = true;
+                    release(pooled, true);
+                }
+                throw cause;
+            } finally {
+                COMMIT.record(start, ok);
+            }
+        }
+    }
+
+    /**
+     * Handle for a cached statement. close() clears parameters, batch and any open result
+     * set and returns the physical statement to its connection's cache. Statement-level
+     * settings a caller changed are reset first; settings that cannot be reset cheaply
+     * make the statement uncacheable, and it is really closed instead.
+     */
+    private final class CachedStatement implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final String sql;
+        private final PreparedStatement physical;
+        private final Connection handle;
+        private boolean closed = false;
+        private boolean resetNeeded = false;
+        private boolean discard = false;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        CachedStatement(PooledConnection pooled, String sql, PreparedStatement physical, Connection handle) {
+            this.pooled = pooled;
+            this.sql = sql;
+            this.physical = physical;
+            this.handle = handle;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            lock.lock();
+            try {
+                return dispatch(proxy, method, args);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Object dispatch(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close" -> {
+                    closeOnce();
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed || physical.isClosed();
+                }
+                case "getConnection" -> {
+                    return handle;
+                }
+                case "equals" -> {
+                    return proxy == args[0];
+                }
+                case "hashCode" -> {
+                    return System.identityHashCode(proxy);
+                }
+                case "toString" -> {
+                    return "CachedStatement[" + sql + "]";
+                }
+                case "setFetchSize", "setMaxRows", "setLargeMaxRows", "setQueryTimeout" -> resetNeeded = true;
+                case "setFetchDirection", "setCursorName", "setEscapeProcessing", "setMaxFieldSize",
+                     "setPoolable", "closeOnCompletion" -> discard = true;
+                default -> { }
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            long start = name.startsWith("execute") ? Metrics.start() : 0;
+            boolean ok = false;
+            try {
+                Object result = method.invoke(physical, args);
+                ok = true;
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                EXECUTE.record(start, ok);
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                closeOnce();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void closeOnce() {
+            if (!closed) {
+                closed = true;
+                pooled.checkedOut.remove(this);
+                recycle();
+            }
+        }
+
+        private void recycle() {
+            try {
+                if (discard || physical.isClosed() || pooled.physical.isClosed()) {
+                    closeQuietly(physical);
+                    return;
+                }
+                ResultSet open = physical.getResultSet();
+                if (open != null) open.close();
+                physical.clearParameters();
+                physical.clearBatch();
+                physical.clearWarnings();
+                if (resetNeeded) {
+                    physical.setFetchSize(0);
+                    physical.setMaxRows(0);
+                    physical.setQueryTimeout(0);
+                }
+                pooled.giveBack(sql, physical);
+            } catch (SQLException e) {
+                closeQuietly(physical);
+            }
+        }
+    }
+}
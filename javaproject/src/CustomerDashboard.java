@@ -0,0 +1,215 @@
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * CustomerDashboard is an immutable snapshot of everything the main screens show for a
+ * customer: profile, every checking and savings account, and the most recent transactions.
+ * load() fetches all of it with one UNION ALL query, i.e. one round-trip on one connection.
+ */
+public final class CustomerDashboard {
+    private static final Log LOG = Log.get(CustomerDashboard.class);
+
+    /** One checking or savings account as of the snapshot. */
+    public static final class AccountSummary {
+        private final String type;
+        private final String accountNumber;
+        private final String customerName;
+        private final long balance;
+        private final float interestRate;
+
+        AccountSummary(String type, String accountNumber, String customerName, long balance, float interestRate) {
+            this.type = type;
+            this.accountNumber = accountNumber;
+            this.customerName = customerName;
+            this.balance = balance;
+            this.interestRate = interestRate;
+        }
+
+        public String getType() { return type; }
+        public String getAccountNumber() { return accountNumber; }
+        public String getCustomerName() { return customerName; }
+        public long getBalance() { return balance; }
+        public float getInterestRate() { return interestRate; }
+        public boolean isChecking() { return "Checking".equals(type); }
+        public boolean isSavings() { return "Savings".equals(type); }
+    }
+
+    /** One ledger row as of the snapshot. */
+    public static final class Activity {
+        private final String transactionNumber;
+        private final String transactionType;
+        private final long amount;
+        private final String fromAccount;
+        private final String toAccount;
+        private final LocalDateTime timestamp;
+
+        Activity(String transactionNumber, String transactionType, long amount,
+                 String fromAccount, String toAccount, LocalDateTime timestamp) {
+            this.transactionNumber = transactionNumber;
+            this.transactionType = transactionType;
+            this.amount = amount;
+            this.fromAccount = fromAccount;
+            this.toAccount = toAccount;
+            this.timestamp = timestamp;
+        }
+
+        public String getTransactionNumber() { return transactionNumber; }
+        public String getTransactionType() { return transactionType; }
+        public long getAmount() { return amount; }
+        public String getFromAccount() { return fromAccount; }
+        public String getToAccount() { return toAccount; }
+        public LocalDateTime getTimestamp() { return timestamp; }
+    }
+
+    // Every branch returns the same ten columns: Kind, six text columns, Amount, Rate, Ts
+    private static final String QUERY = """
+        SELECT 'U' AS Kind, UserID AS C1, Username AS C2, FullName AS C3, Email AS C4, Phone AS C5, CreatedDate AS C6,
+               NULL AS Amount, NULL AS Rate, NULL AS Ts
+          FROM Users WHERE UserID = ?
+        UNION ALL
+        SELECT 'C', CheckingAccountNumber, CustomerName, NULL, NULL, NULL, NULL, Balance, NULL, NULL
+          FROM CheckingAccount WHERE CustomerID = ?
+        UNION ALL
+        SELECT 'S', SavingsAccountNumber, CustomerName, NULL, NULL, NULL, NULL, Balance, InterestRate, NULL
+          FROM SavingsAccount WHERE CustomerID = ?
+        UNION ALL
+        (SELECT 'T', TransactionNumber, TransactionType, FromAccount, ToAccount, NULL, NULL, TransactionAmount, NULL, TransactionTimestamp
+           FROM Transactions WHERE CustomerID = ?
+          ORDER BY TransactionTimestamp DESC, TransactionNumber DESC LIMIT ?)
+        """;
+
+    private final String userID;
+    private final String username;
+    private final String fullName;
+    private final String email;
+    private final String phone;
+    private final String createdDate;
+    private final List<AccountSummary> accounts;
+    private final List<Activity> recentActivity;
+
+    private CustomerDashboard(String userID, String username, String fullName, String email, String phone,
+                              String createdDate, List<AccountSummary> accounts, List<Activity> recentActivity) {
+        this.userID = userID;
+        this.username = username;
+        this.fullName = fullName;
+        this.email = email;
+        this.phone = phone;
+        this.createdDate = createdDate;
+        this.accounts = Collections.unmodifiableList(accounts);
+        this.recentActivity = Collections.unmodifiableList(recentActivity);
+    }
+
+    public String getUserID() { return userID; }
+    public String getUsername() { return username; }
+    public String getFullName() { return fullName; }
+    public String getEmail() { return email; }
+    public String getPhone() { return phone; }
+    public String getCreatedDate() { return createdDate; }
+    public List<AccountSummary> getAccounts() { return accounts; }
+    public List<Activity> getRecentActivity() { return recentActivity; }
+
+    /**
+     * Loads a customer's dashboard in a single query
+     * @param customerID Customer to load
+     * @param recentLimit Number of most recent transactions to include
+     * @return Snapshot, or null if the customer does not exist or the query failed
+     */
+    public static CustomerDashboard load(String customerID, int recentLimit) {
+        Connection connection = DatabaseConnection.getConnection();
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        long writeStamp = AccountCache.writeStamp();
+
+        try {
+            statement = connection.prepareStatement(QUERY);
+            statement.setString(1, customerID);
+            statement.setString(2, customerID);
+            statement.setString(3, customerID);
+            statement.setString(4, customerID);
+            statement.setInt(5, recentLimit);
+            resultSet = statement.executeQuery();
+
+            String[] profile = null;
+            List<AccountSummary> accounts = new ArrayList<>();
+            List<Activity> activity = new ArrayList<>();
+            while (resultSet.next()) {
+                switch (resultSet.getString("Kind")) {
+                    case "U" -> profile = new String[] {
+                            resultSet.getString("C1"), resultSet.getString("C2"), resultSet.getString("C3"),
+                            resultSet.getString("C4"), resultSet.getString("C5"), resultSet.getString("C6") };
+                    // MySQL trails the ledger engine, when it runs
+                    case "C" -> accounts.add(new AccountSummary("Checking", resultSet.getString("C1"), resultSet.getString("C2"),
+                            LedgerEngine.balanceOf(AccountTransfer.AccountType.CHECKING, resultSet.getString("C1"), customerID,
+                                    Money.read(resultSet, "Amount")), 0f));
+                    case "S" -> accounts.add(new AccountSummary("Savings", resultSet.getString("C1"), resultSet.getString("C2"),
+                            LedgerEngine.balanceOf(AccountTransfer.AccountType.SAVINGS, resultSet.getString("C1"), customerID,
+                                    Money.read(resultSet, "Amount")), toFloat(resultSet.getBigDecimal("Rate"))));
+                    case "T" -> activity.add(new Activity(resultSet.getString("C1"), resultSet.getString("C2"),
+                            Money.read(resultSet, "Amount"), resultSet.getString("C3"), resultSet.getString("C4"),
+                            resultSet.getObject("Ts", LocalDateTime.class)));
+                    default -> { }
+                }
+            }
+            // UNION ALL gives no ordering guarantee across branches
+            activity.sort(Comparator.comparing(Activity::getTimestamp, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+                    .thenComparing(Activity::getTransactionNumber).reversed());
+
+            if (profile == null) {
+                return null;
+            }
+            CustomerDashboard dashboard = new CustomerDashboard(profile[0], profile[1], profile[2], profile[3],
+                    profile[4], profile[5], accounts, activity);
+            AccountCache.prime(customerID, dashboard.toCheckingAccount(), dashboard.toSavingsAccount(), writeStamp);
+            return dashboard;
+
+        } catch (SQLException e) {
+            LOG.error("Error loading dashboard", e);
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+
+        return null;
+    }
+
+    /** First checking account in the snapshot, in the form AccountCache and the console use. */
+    public CheckingAccount toCheckingAccount() {
+        for (AccountSummary summary : accounts) {
+            if (summary.isChecking()) {
+                CheckingAccount acc = new CheckingAccount();
+                acc.setCheckingAccountNumber(summary.getAccountNumber());
+                acc.setCustomerName(summary.getCustomerName());
+                acc.setBalance(summary.getBalance());
+                acc.setCustomerID(userID);
+                return acc;
+            }
+        }
+        return null;
+    }
+
+    /** First savings account in the snapshot, in the form AccountCache and the console use. */
+    public SavingsAccount toSavingsAccount() {
+        for (AccountSummary summary : accounts) {
+            if (summary.isSavings()) {
+                SavingsAccount acc = new SavingsAccount();
+                acc.setSavingsAccountNumber(summary.getAccountNumber());
+                acc.setCustomerName(summary.getCustomerName());
+                acc.setBalance(summary.getBalance());
+                acc.setInterestRate(summary.getInterestRate());
+                acc.setCustomerID(userID);
+                return acc;
+            }
+        }
+        return null;
+    }
+
+    private static float toFloat(BigDecimal value) {
+        return value == null ? 0f : value.floatValue();
+    }
+}
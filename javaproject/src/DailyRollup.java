@@ -0,0 +1,604 @@
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DailyRollup keeps one DailyAccountRollup row per account and day with activity: the
+ * opening and closing balance and the deposit, withdrawal, interest and transfer totals and
+ * counts. "Balance on the 3rd" or "deposits this month" then reads one row per day instead
+ * of every transaction in the period.
+ *
+ * Rows are maintained incrementally: every path that inserts Transactions rows calls
+ * record() on the same connection, so a rollup commits or rolls back together with its
+ * ledger rows. Postings made today update today's row. A posting dated earlier (e.g. one
+ * LedgerSink writes just after midnight) also moves the balances of the later days.
+ * -Dbanking.rollup.enabled=false turns maintenance off; run the backfill afterwards to catch up.
+ *
+ * The backfill rebuilds the rollups of every customer from Transactions, one customer per
+ * database transaction with their accounts locked, so it can run while the system is live.
+ * Run it once after upgrading, so existing history is covered too.
+ *
+ * Command line: java DailyRollup [--threads N]
+ */
+public class DailyRollup {
+    private static final Log LOG = Log.get(DailyRollup.class);
+
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("banking.rollup.enabled"));
+    private static final int LOOKUP_CHUNK = 100;
+    private static final int USERS_PER_TASK = 500;
+    private static final int FETCH_SIZE = 1000;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final Metrics.Timer SUMMARY = Metrics.timer("rollupSummary");
+
+    private static final String COLUMNS = "AccountNumber, RollupDate, CustomerID, OpeningBalance, ClosingBalance, " +
+            "DepositTotal, DepositCount, WithdrawalTotal, WithdrawalCount, InterestTotal, InterestCount, " +
+            "TransferInTotal, TransferInCount, TransferOutTotal, TransferOutCount";
+    private static final String ADD_CHANGE = "ClosingBalance = ClosingBalance + ?, " +
+            "DepositTotal = DepositTotal + ?, DepositCount = DepositCount + ?, " +
+            "WithdrawalTotal = WithdrawalTotal + ?, WithdrawalCount = WithdrawalCount + ?, " +
+            "InterestTotal = InterestTotal + ?, InterestCount = InterestCount + ?, " +
+            "TransferInTotal = TransferInTotal + ?, TransferInCount = TransferInCount + ?, " +
+            "TransferOutTotal = TransferOutTotal + ?, TransferOutCount = TransferOutCount + ?";
+    private static final String UPDATE_SQL = "UPDATE DailyAccountRollup SET " + ADD_CHANGE +
+            " WHERE AccountNumber = ? AND RollupDate = ?";
+    // The row may appear between our lookup and the INSERT; then the change is added to it instead
+    private static final String UPSERT_SQL = "INSERT INTO DailyAccountRollup (" + COLUMNS + ") VALUES " +
+            "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " + ADD_CHANGE;
+    private static final String SHIFT_SQL = "UPDATE DailyAccountRollup SET OpeningBalance = OpeningBalance + ?, " +
+            "ClosingBalance = ClosingBalance + ? WHERE AccountNumber = ? AND RollupDate > ?";
+    private static final String PREVIOUS_SQL = "SELECT ClosingBalance FROM DailyAccountRollup " +
+            "WHERE AccountNumber = ? AND RollupDate < ? ORDER BY RollupDate DESC LIMIT 1";
+    private static final String RANGE_SQL = "SELECT " + COLUMNS + " FROM DailyAccountRollup " +
+            "WHERE AccountNumber = ? AND RollupDate >= ? AND RollupDate <= ? ORDER BY RollupDate";
+
+    /**
+     * Activity of one account over a period of whole days
+     * @param openingBalance Balance at the start of the first day
+     * @param closingBalance Balance at the end of the last day
+     */
+    public record Summary(String accountNumber, LocalDate from, LocalDate to, long openingBalance, long closingBalance,
+                          long depositTotal, int depositCount, long withdrawalTotal, int withdrawalCount,
+                          long interestTotal, int interestCount, long transferInTotal, int transferInCount,
+                          long transferOutTotal, int transferOutCount) {}
+
+    private record Key(String accountNumber, LocalDate date) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other) {
+            int c = accountNumber.compareTo(other.accountNumber);
+            return c != 0 ? c : date.compareTo(other.date);
+        }
+    }
+
+    // Activity of one account on one day, or summed over several
+    private static final class Totals {
+        String customerID;
+        long openingBalance;
+        long closingBalance;
+        long depositTotal;
+        int depositCount;
+        long withdrawalTotal;
+        int withdrawalCount;
+        long interestTotal;
+        int interestCount;
+        long transferInTotal;
+        int transferInCount;
+        long transferOutTotal;
+        int transferOutCount;
+
+        // Transfers are kept apart; any other credit that is not interest counts as a deposit, any other debit as a withdrawal
+        void add(String type, long amount, boolean credit) {
+            if ("Transfer".equals(type)) {
+                if (credit) {
+                    transferInTotal = Money.add(transferInTotal, amount);
+                    transferInCount++;
+                } else {
+                    transferOutTotal = Money.add(transferOutTotal, amount);
+                    transferOutCount++;
+                }
+            } else if (!credit) {
+                withdrawalTotal = Money.add(withdrawalTotal, amount);
+                withdrawalCount++;
+            } else if ("Interest Credit".equals(type)) {
+                interestTotal = Money.add(interestTotal, amount);
+                interestCount++;
+            } else {
+                depositTotal = Money.add(depositTotal, amount);
+                depositCount++;
+            }
+        }
+
+        void addAll(Totals other) {
+            depositTotal = Money.add(depositTotal, other.depositTotal);
+            depositCount += other.depositCount;
+            withdrawalTotal = Money.add(withdrawalTotal, other.withdrawalTotal);
+            withdrawalCount += other.withdrawalCount;
+            interestTotal = Money.add(interestTotal, other.interestTotal);
+            interestCount += other.interestCount;
+            transferInTotal = Money.add(transferInTotal, other.transferInTotal);
+            transferInCount += other.transferInCount;
+            transferOutTotal = Money.add(transferOutTotal, other.transferOutTotal);
+            transferOutCount += other.transferOutCount;
+        }
+
+        long net() {
+            long credits = Money.add(Money.add(depositTotal, interestTotal), transferInTotal);
+            return Money.subtract(credits, Money.add(withdrawalTotal, transferOutTotal));
+        }
+
+        Summary toSummary(String accountNumber, LocalDate from, LocalDate to) {
+            return new Summary(accountNumber, from, to, openingBalance, closingBalance, depositTotal, depositCount,
+                    withdrawalTotal, withdrawalCount, interestTotal, interestCount, transferInTotal, transferInCount,
+                    transferOutTotal, transferOutCount);
+        }
+    }
+
+    private DailyRollup() {}
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Adds ledger rows to the rollups, using the caller's connection so they commit together.
+     * Call it right after the rows are inserted.
+     * @param transactions Rows just written to Transactions
+     */
+    static void record(Connection connection, Collection<Transaction> transactions) throws SQLException {
+        if (!ENABLED || transactions.isEmpty()) return;
+        // Sorted by account number, the order AccountTransfer locks accounts in
+        TreeMap<Key, Totals> days = new TreeMap<>();
+        for (Transaction transaction : transactions) {
+            LocalDate date = transaction.getTransactionTimestamp().toLocalDate();
+            if (transaction.getFromAccount() != null) {
+                totalsFor(days, transaction.getFromAccount(), date, transaction.getCustomerID())
+                        .add(transaction.getTransactionType(), transaction.getTransactionAmount(), false);
+            }
+            if (transaction.getToAccount() != null) {
+                totalsFor(days, transaction.getToAccount(), date, transaction.getCustomerID())
+                        .add(transaction.getTransactionType(), transaction.getTransactionAmount(), true);
+            }
+        }
+
+        // Rows that name no account, such as a bare ledger entry, have nothing to roll up
+        if (days.isEmpty()) return;
+
+        LocalDate today = LocalDate.now();
+        LocalDate date = days.firstKey().date();
+        boolean oneDay = !date.isBefore(today);
+        for (Key key : days.keySet()) {
+            if (!key.date().equals(date)) oneDay = false;
+        }
+        if (days.size() > 1 && oneDay) {
+            recordBatch(connection, days, date);
+        } else {
+            for (Map.Entry<Key, Totals> day : days.entrySet()) {
+                recordDay(connection, day.getKey(), day.getValue(), day.getKey().date().isBefore(today));
+            }
+        }
+    }
+
+    private static Totals totalsFor(Map<Key, Totals> days, String accountNumber, LocalDate date, String customerID) {
+        Totals totals = days.computeIfAbsent(new Key(accountNumber, date), key -> new Totals());
+        totals.customerID = customerID;
+        return totals;
+    }
+
+    // One account and day: add to its row, or start the row from the previous day's closing balance
+    private static void recordDay(Connection connection, Key key, Totals change, boolean later) throws SQLException {
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement(UPDATE_SQL);
+            int index = bindChange(statement, 1, change);
+            statement.setString(index, key.accountNumber());
+            statement.setObject(index + 1, key.date());
+            if (statement.executeUpdate() == 0) {
+                DatabaseConnection.closeStatement(statement);
+                statement = connection.prepareStatement(UPSERT_SQL);
+                bindUpsert(statement, key, change, previousClosing(connection, key));
+                statement.executeUpdate();
+            }
+            if (later && change.net() != 0) {
+                // The day is in the past: every later day starts and ends with this change included
+                DatabaseConnection.closeStatement(statement);
+                statement = connection.prepareStatement(SHIFT_SQL);
+                Money.bind(statement, 1, change.net());
+                Money.bind(statement, 2, change.net());
+                statement.setString(3, key.accountNumber());
+                statement.setObject(4, key.date());
+                statement.executeUpdate();
+            }
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+    }
+
+    // Many accounts on the same day, with no later rows to move: one lookup per chunk and one batched upsert
+    private static void recordBatch(Connection connection, TreeMap<Key, Totals> days, LocalDate date) throws SQLException {
+        List<String> accounts = new ArrayList<>(days.size());
+        for (Key key : days.keySet()) accounts.add(key.accountNumber());
+        Map<String, Long> latest = new HashMap<>();
+        for (int start = 0; start < accounts.size(); start += LOOKUP_CHUNK) {
+            latestClosing(connection, accounts.subList(start, Math.min(accounts.size(), start + LOOKUP_CHUNK)), date, latest);
+        }
+
+        PreparedStatement statement = connection.prepareStatement(UPSERT_SQL);
+        try {
+            for (Map.Entry<Key, Totals> day : days.entrySet()) {
+                // If the day's row already exists the opening balance is ignored
+                bindUpsert(statement, day.getKey(), day.getValue(), latest.getOrDefault(day.getKey().accountNumber(), 0L));
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+    }
+
+    private static long previousClosing(Connection connection, Key key) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(PREVIOUS_SQL);
+        ResultSet resultSet = null;
+        try {
+            statement.setString(1, key.accountNumber());
+            statement.setObject(2, key.date());
+            resultSet = statement.executeQuery();
+            return resultSet.next() ? Money.read(resultSet, 1) : 0;
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+        }
+    }
+
+    // Closing balance of each account's most recent row on or before the date
+    private static void latestClosing(Connection connection, List<String> accounts, LocalDate date, Map<String, Long> latest)
+            throws SQLException {
+        String placeholders = String.join(", ", Collections.nCopies(accounts.size(), "?"));
+        PreparedStatement statement = connection.prepareStatement("SELECT r.AccountNumber, r.ClosingBalance " +
+                "FROM DailyAccountRollup r WHERE r.AccountNumber IN (" + placeholders + ") AND r.RollupDate = " +
+                "(SELECT MAX(p.RollupDate) FROM DailyAccountRollup p WHERE p.AccountNumber = r.AccountNumber AND p.RollupDate <= ?)");
+        ResultSet resultSet = null;
+        try {
+            int index = 1;
+            for (String account : accounts) statement.setString(index++, account);
+            statement.setObject(index, date);
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                latest.put(resultSet.getString(1), Money.read(resultSet, 2));
+            }
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+        }
+    }
+
+    // Binds the eleven ADD_CHANGE parameters; returns the next index
+    private static int bindChange(PreparedStatement statement, int index, Totals change) throws SQLException {
+        Money.bind(statement, index, change.net());
+        return bindTotals(statement, index + 1, change);
+    }
+
+    private static int bindTotals(PreparedStatement statement, int index, Totals totals) throws SQLException {
+        Money.bind(statement, index, totals.depositTotal);
+        statement.setInt(index + 1, totals.depositCount);
+        Money.bind(statement, index + 2, totals.withdrawalTotal);
+        statement.setInt(index + 3, totals.withdrawalCount);
+        Money.bind(statement, index + 4, totals.interestTotal);
+        statement.setInt(index + 5, totals.interestCount);
+        Money.bind(statement, index + 6, totals.transferInTotal);
+        statement.setInt(index + 7, totals.transferInCount);
+        Money.bind(statement, index + 8, totals.transferOutTotal);
+        statement.setInt(index + 9, totals.transferOutCount);
+        return index + 10;
+    }
+
+    private static void bindUpsert(PreparedStatement statement, Key key, Totals change, long openingBalance) throws SQLException {
+        statement.setString(1, key.accountNumber());
+        statement.setObject(2, key.date());
+        statement.setString(3, change.customerID);
+        Money.bind(statement, 4, openingBalance);
+        Money.bind(statement, 5, Money.add(openingBalance, change.net()));
+        bindChange(statement, bindTotals(statement, 6, change), change);
+    }
+
+    // --- Queries ---
+
+    /**
+     * Sums an account's activity between two dates, inclusive. The balance at the end of a
+     * day is summarize(account, day, day).closingBalance().
+     * @return The summary, or null if it could not be read
+     */
+    public static Summary summarize(String accountNumber, LocalDate from, LocalDate to) {
+        long start = Metrics.start();
+        List<Summary> days = readDays(accountNumber, from, to);
+        Summary summary = null;
+        if (days != null) {
+            Totals totals = new Totals();
+            for (Summary day : days) {
+                totals.addAll(totalsOf(day));
+            }
+            if (days.isEmpty()) {
+                Long balance = balanceBefore(accountNumber, from);
+                if (balance != null) {
+                    totals.openingBalance = balance;
+                    totals.closingBalance = balance;
+                    summary = totals.toSummary(accountNumber, from, to);
+                }
+            } else {
+                // No activity between the start of the period and its first row, or after its last one
+                totals.openingBalance = days.get(0).openingBalance();
+                totals.closingBalance = days.get(days.size() - 1).closingBalance();
+                summary = totals.toSummary(accountNumber, from, to);
+            }
+        }
+        SUMMARY.record(start, summary != null);
+        return summary;
+    }
+
+    /**
+     * An account's rollup for each day with activity between two dates, inclusive, oldest first
+     * @return One summary per day; empty if there was no activity or the rows could not be read
+     */
+    public static List<Summary> getDays(String accountNumber, LocalDate from, LocalDate to) {
+        List<Summary> days = readDays(accountNumber, from, to);
+        return days == null ? new ArrayList<>() : days;
+    }
+
+    private static List<Summary> readDays(String accountNumber, LocalDate from, LocalDate to) {
+        List<Summary> days = new ArrayList<>();
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) return null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = connection.prepareStatement(RANGE_SQL);
+            statement.setString(1, accountNumber);
+            statement.setObject(2, from);
+            statement.setObject(3, to);
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                LocalDate date = resultSet.getObject("RollupDate", LocalDate.class);
+                days.add(new Summary(accountNumber, date, date, Money.read(resultSet, "OpeningBalance"),
+                        Money.read(resultSet, "ClosingBalance"), Money.read(resultSet, "DepositTotal"),
+                        resultSet.getInt("DepositCount"), Money.read(resultSet, "WithdrawalTotal"),
+                        resultSet.getInt("WithdrawalCount"), Money.read(resultSet, "InterestTotal"),
+                        resultSet.getInt("InterestCount"), Money.read(resultSet, "TransferInTotal"),
+                        resultSet.getInt("TransferInCount"), Money.read(resultSet, "TransferOutTotal"),
+                        resultSet.getInt("TransferOutCount")));
+            }
+            return days;
+        } catch (SQLException e) {
+            LOG.error("Error reading daily rollups of {}", accountNumber, e);
+            return null;
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+    }
+
+    // Closing balance of the last day with activity before the date; 0 if there is none, null on error
+    private static Long balanceBefore(String accountNumber, LocalDate date) {
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) return null;
+        try {
+            return previousClosing(connection, new Key(accountNumber, date));
+        } catch (SQLException e) {
+            LOG.error("Error reading daily rollups of {}", accountNumber, e);
+            return null;
+        } finally {
+            DatabaseConnection.closeConnection(connection);
+        }
+    }
+
+    private static Totals totalsOf(Summary day) {
+        Totals totals = new Totals();
+        totals.depositTotal = day.depositTotal();
+        totals.depositCount = day.depositCount();
+        totals.withdrawalTotal = day.withdrawalTotal();
+        totals.withdrawalCount = day.withdrawalCount();
+        totals.interestTotal = day.interestTotal();
+        totals.interestCount = day.interestCount();
+        totals.transferInTotal = day.transferInTotal();
+        totals.transferInCount = day.transferInCount();
+        totals.transferOutTotal = day.transferOutTotal();
+        totals.transferOutCount = day.transferOutCount();
+        return totals;
+    }
+
+    // --- Backfill ---
+
+    /**
+     * Rebuilds the rollups of every customer from Transactions
+     * @param threads Customers rebuilt in parallel, at most the pool's maximum size
+     * @return Number of customers rebuilt
+     * @throws SQLException if a customer could not be rebuilt; running again is safe
+     */
+    public static int backfill(int threads) throws SQLException, InterruptedException {
+        if (threads <= 0) throw new IllegalArgumentException("threads must be positive");
+        if (threads > DatabaseConnection.getPoolMaxSize()) {
+            throw new IllegalArgumentException("threads must not exceed the connection pool size ("
+                    + DatabaseConnection.getPoolMaxSize() + ")");
+        }
+        AtomicInteger rebuilt = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        SQLException failure = null;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            String after = "";
+            for (List<String> users; !(users = nextUsers(after)).isEmpty(); after = users.get(users.size() - 1)) {
+                List<String> page = users;
+                futures.add(workers.submit(() -> {
+                    for (String userID : page) {
+                        rebuildWithRetry(userID);
+                        rebuilt.incrementAndGet();
+                    }
+                    LOG.info("Rebuilt daily rollups up to customer {}", page.get(page.size() - 1));
+                    return null;
+                }));
+            }
+            // Keep going past a failed page so one bad customer does not hold up the rest
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    LOG.error("Daily rollup backfill failed", cause);
+                    if (failure == null) {
+                        failure = cause instanceof SQLException ? (SQLException) cause : new SQLException(cause);
+                    }
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        if (failure != null) throw failure;
+        return rebuilt.get();
+    }
+
+    private static List<String> nextUsers(String after) throws SQLException {
+        List<String> users = new ArrayList<>(USERS_PER_TASK);
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) throw new SQLException("No database connection available");
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = connection.prepareStatement("SELECT UserID FROM Users WHERE UserID > ? ORDER BY UserID LIMIT ?");
+            statement.setString(1, after);
+            statement.setInt(2, USERS_PER_TASK);
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                users.add(resultSet.getString(1));
+            }
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+        return users;
+    }
+
+    // Deadlocks with customer activity on the same accounts are retried; other errors fail the page
+    private static void rebuildWithRetry(String customerID) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                rebuildCustomer(customerID);
+                return;
+            } catch (SQLTransactionRollbackException e) {
+                if (attempt == MAX_ATTEMPTS) throw e;
+            }
+        }
+    }
+
+    private static void rebuildCustomer(String customerID) throws SQLException {
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            Connection connection = uow.getConnection();
+            // Locking the accounts holds off postings to them until the rebuilt rows commit
+            Map<String, Long> balances = new HashMap<>();
+            for (AccountTransfer.AccountType type : AccountTransfer.AccountType.values()) {
+                lockAccounts(connection, type, customerID, balances);
+            }
+
+            PreparedStatement statement = connection.prepareStatement("DELETE FROM DailyAccountRollup WHERE CustomerID = ?");
+            try {
+                statement.setString(1, customerID);
+                statement.executeUpdate();
+            } finally {
+                DatabaseConnection.closeStatement(statement);
+            }
+
+            TreeMap<Key, Totals> days = new TreeMap<>();
+            statement = connection.prepareStatement("SELECT * FROM Transactions WHERE CustomerID = ?",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ResultSet resultSet = null;
+            try {
+                statement.setFetchSize(FETCH_SIZE);
+                statement.setString(1, customerID);
+                resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    Transaction transaction = Transaction.fromResultSet(resultSet);
+                    LocalDate date = transaction.getTransactionTimestamp().toLocalDate();
+                    // Rows of accounts that no longer exist are skipped
+                    if (balances.containsKey(transaction.getFromAccount())) {
+                        totalsFor(days, transaction.getFromAccount(), date, customerID)
+                                .add(transaction.getTransactionType(), transaction.getTransactionAmount(), false);
+                    }
+                    if (balances.containsKey(transaction.getToAccount())) {
+                        totalsFor(days, transaction.getToAccount(), date, customerID)
+                                .add(transaction.getTransactionType(), transaction.getTransactionAmount(), true);
+                    }
+                }
+            } finally {
+                DatabaseConnection.closeResultSet(resultSet);
+                DatabaseConnection.closeStatement(statement);
+            }
+
+            // Anchored on the current balance, so balance changes that predate the ledger show up as the first opening balance
+            Map<String, Long> running = new HashMap<>(balances);
+            for (Map.Entry<Key, Totals> day : days.entrySet()) {
+                running.merge(day.getKey().accountNumber(), Money.negate(day.getValue().net()), Money::add);
+            }
+            LocalDate today = LocalDate.now();
+            for (Map.Entry<String, Long> opening : running.entrySet()) {
+                if (opening.getValue() == 0) continue;
+                LOG.warn("History of {} does not add up to its balance; its rollups start from {}",
+                        opening.getKey(), Money.format(opening.getValue()));
+                // An account with no ledger rows at all still needs a row carrying its balance
+                days.computeIfAbsent(new Key(opening.getKey(), today), key -> new Totals()).customerID = customerID;
+            }
+
+            if (!days.isEmpty()) {
+                statement = connection.prepareStatement(UPSERT_SQL);
+                try {
+                    for (Map.Entry<Key, Totals> day : days.entrySet()) {
+                        String account = day.getKey().accountNumber();
+                        long opening = running.get(account);
+                        bindUpsert(statement, day.getKey(), day.getValue(), opening);
+                        statement.addBatch();
+                        running.put(account, Money.add(opening, day.getValue().net()));
+                    }
+                    statement.executeBatch();
+                } finally {
+                    DatabaseConnection.closeStatement(statement);
+                }
+            }
+            uow.commit();
+        }
+    }
+
+    private static void lockAccounts(Connection connection, AccountTransfer.AccountType type, String customerID,
+                                     Map<String, Long> balances) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement("SELECT " + type.keyColumn + ", Balance FROM " + type.table
+                + " WHERE CustomerID = ? ORDER BY " + type.keyColumn + " FOR UPDATE");
+        ResultSet resultSet = null;
+        try {
+            statement.setString(1, customerID);
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                balances.put(resultSet.getString(1), Money.read(resultSet, 2));
+            }
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Each worker holds a connection while it rebuilds a customer, so more workers than
+        // pooled connections would only time out waiting for one
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), DatabaseConnection.getPoolMaxSize());
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) threads = Integer.parseInt(args[++i]);
+        }
+        if (threads <= 0 || threads > DatabaseConnection.getPoolMaxSize()) {
+            System.err.println("--threads must be between 1 and " + DatabaseConnection.getPoolMaxSize()
+                    + " (banking.pool.maxSize)");
+            System.exit(1);
+        }
+        DatabaseConnection.initializeDatabase();
+        long start = System.currentTimeMillis();
+        int customers = backfill(threads);
+        System.out.println("Rebuilt daily rollups of " + customers + " customers in " + (System.currentTimeMillis() - start) + " ms");
+        DatabaseConnection.shutdownPool();
+    }
+}
@@ -1,36 +1,107 @@
 import java.sql.*;
 
 public class DatabaseConnection {
+    private static final Log LOG = Log.get(DatabaseConnection.class);
 
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/banking_system";
-    private static final String DB_USERNAME = "root";
-    private static final String DB_PASSWORD = "mullapudi123";
-    private static final String DB_DRIVER = "com.mysql.cj.jdbc.Driver";
+    // Defaults for the local MySQL install; -Dbanking.db.url etc. point the app (or the benchmarks) elsewhere
+    private static final String DB_URL = System.getProperty("banking.db.url", "jdbc:mysql://localhost:3306/banking_system");
+    private static final String DB_USERNAME = System.getProperty("banking.db.user", "root");
+    private static final String DB_PASSWORD = System.getProperty("banking.db.password", "mullapudi123");
+    private static final String DB_DRIVER = System.getProperty("banking.db.driver", "com.mysql.cj.jdbc.Driver");
+
+    // Pool sizing and timeouts; override with -Dbanking.pool.<name>=<value>
+    private static final int POOL_MIN_SIZE = Integer.getInteger("banking.pool.minSize", 2);
+    private static final int POOL_MAX_SIZE = Integer.getInteger("banking.pool.maxSize", 10);
+    private static final long POOL_ACQUIRE_TIMEOUT_MS = Long.getLong("banking.pool.acquireTimeoutMs", 5_000L);
+    private static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("banking.pool.idleTimeoutMs", 600_000L);
+    private static final long POOL_LEAK_THRESHOLD_MS = Long.getLong("banking.pool.leakThresholdMs", 60_000L);
+    private static final int POOL_STATEMENT_CACHE_SIZE = Integer.getInteger("banking.pool.statementCacheSize", 64);
+
+    // Lets UnitOfWork send a balance UPDATE and its ledger INSERT in one round-trip
+    private static final boolean MULTI_STATEMENT = Boolean.getBoolean("banking.db.multiStatement");
+
+    private static volatile ConnectionPool pool;
+
+    public static boolean isMultiStatementEnabled() {
+        return MULTI_STATEMENT;
+    }
+
+    /** Upper bound on pooled connections; tools that hold one connection per worker size their workers by it. */
+    public static int getPoolMaxSize() {
+        return POOL_MAX_SIZE;
+    }
+
+    private static ConnectionPool getPool() throws ClassNotFoundException {
+        ConnectionPool current = pool;
+        if (current == null) {
+            synchronized (DatabaseConnection.class) {
+                current = pool;
+                if (current == null) {
+                    Class.forName(DB_DRIVER);
+                    current = new ConnectionPool(connectionUrl(), DB_USERNAME, DB_PASSWORD, POOL_MIN_SIZE, POOL_MAX_SIZE,
+                            POOL_ACQUIRE_TIMEOUT_MS, POOL_IDLE_TIMEOUT_MS, POOL_LEAK_THRESHOLD_MS, POOL_STATEMENT_CACHE_SIZE);
+                    Runtime.getRuntime().addShutdownHook(new Thread(DatabaseConnection::shutdownPool, "connection-pool-shutdown"));
+                    pool = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static String connectionUrl() {
+        if (!DB_URL.startsWith("jdbc:mysql:")) {
+            return DB_URL;
+        }
+        // rewriteBatchedStatements turns executeBatch() into multi-row INSERTs;
+        // useCursorFetch lets statements with a fetch size read through a server cursor;
+        // server-side prepares pay off once the pool caches statements per connection
+        return DB_URL + (DB_URL.contains("?") ? "&" : "?") + "rewriteBatchedStatements=true&useCursorFetch=true"
+                + (POOL_STATEMENT_CACHE_SIZE > 0 ? "&useServerPrepStmts=true" : "")
+                + (MULTI_STATEMENT ? "&allowMultiQueries=true" : "");
+    }
 
     public static Connection getConnection() {
         Connection connection = null;
         try {
-            Class.forName(DB_DRIVER);
-            connection = DriverManager.getConnection(DB_URL, DB_USERNAME, DB_PASSWORD);
-            System.out.println("Database connection established successfully!");
+            connection = getPool().getConnection();
+            if (StatementProfiler.isEnabled()) {
+                connection = StatementProfiler.wrap(connection);
+            }
         } catch (ClassNotFoundException e) {
-            System.err.println("MySQL JDBC Driver not found!");
-            e.printStackTrace();
+            LOG.error("MySQL JDBC Driver not found!", e);
         } catch (SQLException e) {
-            System.err.println("Failed to establish database connection!");
-            e.printStackTrace();
+            LOG.error("Failed to establish database connection!", e);
         }
         return connection;
     }
 
+    /** True if the error is a unique or primary key violation (MySQL 1062, SQLState 23505 elsewhere). */
+    public static boolean isDuplicateKey(SQLException e) {
+        return e.getErrorCode() == 1062 || "23505".equals(e.getSQLState());
+    }
+
+    /** The shared pool, for reading its statistics; null until the first connection is requested. */
+    public static ConnectionPool getPoolIfStarted() {
+        return pool;
+    }
+
+    public static void shutdownPool() {
+        // Queued ledger rows still need a connection, so flush them first
+        LedgerEngine.shutdownIfStarted();
+        ConnectionPool current = pool;
+        if (current != null) {
+            current.shutdown();
+        }
+    }
+
     public static void closeConnection(Connection connection) {
         if (connection != null) {
             try {
+                // Returns the connection to the pool rather than closing the socket
                 connection.close();
-                System.out.println("Database connection closed successfully!");
+                LOG.debug("Database connection returned to pool");
             } catch (SQLException e) {
-                System.err.println("Error closing database connection!");
-                e.printStackTrace();
+                LOG.warn("Error returning database connection to pool", e);
             }
         }
     }
@@ -40,8 +111,7 @@ public class DatabaseConnection {
             try {
                 statement.close();
             } catch (SQLException e) {
-                System.err.println("Error closing PreparedStatement!");
-                e.printStackTrace();
+                LOG.warn("Error closing PreparedStatement!", e);
             }
         }
     }
@@ -51,85 +121,98 @@ public class DatabaseConnection {
             try {
                 resultSet.close();
             } catch (SQLException e) {
-                System.err.println("Error closing ResultSet!");
-                e.printStackTrace();
+                LOG.warn("Error closing ResultSet!", e);
             }
         }
     }
 
     public static void initializeDatabase() {
         Connection connection = getConnection();
-        Statement statement = null;
 
         if (connection != null) {
             try {
-                statement = connection.createStatement();
-
-                String createUsersTable = """
-                    CREATE TABLE IF NOT EXISTS Users (
-                        UserID VARCHAR(50) PRIMARY KEY,
-                        Username VARCHAR(50) UNIQUE NOT NULL,
-                        Password VARCHAR(100) NOT NULL,
-                        FullName VARCHAR(100) NOT NULL,
-                        Email VARCHAR(100),
-                        Phone VARCHAR(20),
-                        CreatedDate VARCHAR(50) NOT NULL
-                    )
-                """;
-
-                String createCheckingTable = """
-                    CREATE TABLE IF NOT EXISTS CheckingAccount (
-                        CheckingAccountNumber VARCHAR(50) PRIMARY KEY,
-                        CustomerName VARCHAR(50) NOT NULL,
-                        Balance FLOAT DEFAULT 0.0,
-                        CustomerID VARCHAR(50) NOT NULL,
-                        FOREIGN KEY (CustomerID) REFERENCES Users(UserID)
-                    )
-                """;
-
-                String createSavingsTable = """
-                    CREATE TABLE IF NOT EXISTS SavingsAccount (
-                        SavingsAccountNumber VARCHAR(50) PRIMARY KEY,
-                        CustomerName VARCHAR(50) NOT NULL,
-                        Balance FLOAT DEFAULT 0.0,
-                        InterestRate FLOAT DEFAULT 2.5,
-                        CustomerID VARCHAR(50) NOT NULL,
-                        FOREIGN KEY (CustomerID) REFERENCES Users(UserID)
-                    )
-                """;
-
-                String createTransactionsTable = """
-                    CREATE TABLE IF NOT EXISTS Transactions (
-                        TransactionNumber VARCHAR(50) PRIMARY KEY,
-                        TransactionAmount FLOAT NOT NULL,
-                        TransactionType VARCHAR(50) NOT NULL,
-                        TransactionTime VARCHAR(50) NOT NULL,
-                        TransactionDate VARCHAR(50) NOT NULL,
-                        FromAccount VARCHAR(50),
-                        ToAccount VARCHAR(50),
-                        CustomerID VARCHAR(50) NOT NULL,
-                        FOREIGN KEY (CustomerID) REFERENCES Users(UserID)
-                    )
-                """;
-
-                statement.executeUpdate(createUsersTable);
-                statement.executeUpdate(createCheckingTable);
-                statement.executeUpdate(createSavingsTable);
-                statement.executeUpdate(createTransactionsTable);
-
-                System.out.println("✅ All required database tables initialized successfully!");
-
+                int applied = SchemaMigrator.migrate(connection);
+                if (applied > 0) {
+                    LOG.info("All required database tables initialized successfully!");
+                } else {
+                    LOG.info("Database schema is up to date (version {})", SchemaMigrator.LATEST_VERSION);
+                }
             } catch (SQLException e) {
-                System.err.println("❌ Error initializing database tables!");
-                e.printStackTrace();
+                LOG.error("Error initializing database tables!", e);
             } finally {
-                try {
-                    if (statement != null) statement.close();
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
                 closeConnection(connection);
             }
         }
     }
+
+    /**
+     * Creates the original four tables. Used as schema version 1 by SchemaMigrator;
+     * later changes are applied as migrations on top of it.
+     */
+    static void createBaselineTables(Connection connection) throws SQLException {
+        Statement statement = null;
+
+        try {
+            statement = connection.createStatement();
+
+            String createUsersTable = """
+                CREATE TABLE IF NOT EXISTS Users (
+                    UserID VARCHAR(50) PRIMARY KEY,
+                    Username VARCHAR(50) UNIQUE NOT NULL,
+                    Password VARCHAR(100) NOT NULL,
+                    FullName VARCHAR(100) NOT NULL,
+                    Email VARCHAR(100),
+                    Phone VARCHAR(20),
+                    CreatedDate VARCHAR(50) NOT NULL
+                )
+            """;
+
+            String createCheckingTable = """
+                CREATE TABLE IF NOT EXISTS CheckingAccount (
+                    CheckingAccountNumber VARCHAR(50) PRIMARY KEY,
+                    CustomerName VARCHAR(50) NOT NULL,
+                    Balance FLOAT DEFAULT 0.0,
+                    CustomerID VARCHAR(50) NOT NULL,
+                    FOREIGN KEY (CustomerID) REFERENCES Users(UserID)
+                )
+            """;
+
+            String createSavingsTable = """
+                CREATE TABLE IF NOT EXISTS SavingsAccount (
+                    SavingsAccountNumber VARCHAR(50) PRIMARY KEY,
+                    CustomerName VARCHAR(50) NOT NULL,
+                    Balance FLOAT DEFAULT 0.0,
+                    InterestRate FLOAT DEFAULT 2.5,
+                    CustomerID VARCHAR(50) NOT NULL,
+                    FOREIGN KEY (CustomerID) REFERENCES Users(UserID)
+                )
+            """;
+
+            String createTransactionsTable = """
+                CREATE TABLE IF NOT EXISTS Transactions (
+                    TransactionNumber VARCHAR(50) PRIMARY KEY,
+                    TransactionAmount FLOAT NOT NULL,
+                    TransactionType VARCHAR(50) NOT NULL,
+                    TransactionTime VARCHAR(50) NOT NULL,
+                    TransactionDate VARCHAR(50) NOT NULL,
+                    FromAccount VARCHAR(50),
+                    ToAccount VARCHAR(50),
+                    CustomerID VARCHAR(50) NOT NULL,
+                    FOREIGN KEY (CustomerID) REFERENCES Users(UserID)
+                )
+            """;
+
+            statement.executeUpdate(createUsersTable);
+            statement.executeUpdate(createCheckingTable);
+            statement.executeUpdate(createSavingsTable);
+            statement.executeUpdate(createTransactionsTable);
+
+        } finally {
+            try {
+                if (statement != null) statement.close();
+            } catch (SQLException e) {
+                LOG.warn("Error closing statement!", e);
+            }
+        }
+    }
 }
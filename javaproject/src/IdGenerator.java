@@ -0,0 +1,17 @@
+/**
+ * Source of unique, increasing numeric IDs for users, accounts and transactions.
+ * The generator in use is held by IdGenerators and can be swapped, e.g. in tests.
+ */
+public interface IdGenerator {
+
+    long nextId();
+
+    /**
+     * Returns a prefixed ID such as "TXN" followed by the next numeric ID
+     * @param prefix Short type prefix ("USER", "CHK", "SAV", "TXN")
+     * @return Prefixed ID string
+     */
+    default String nextId(String prefix) {
+        return prefix + nextId();
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * Holds the IdGenerator used by User, CheckingAccount, SavingsAccount and Transaction.
+ */
+public class IdGenerators {
+
+    private static volatile IdGenerator current = SnowflakeIdGenerator.fromSystemProperties();
+
+    private IdGenerators() {}
+
+    public static IdGenerator get() {
+        return current;
+    }
+
+    public static void set(IdGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("IdGenerator must not be null");
+        }
+        current = generator;
+    }
+}
@@ -0,0 +1,419 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * InterestPostingEngine posts month-end interest to every savings account in one run.
+ *
+ * A run is identified by a caller-chosen ID (e.g. "2025-06"). When a run starts, the savings
+ * account keys are cut into chunks of chunkSize consecutive account numbers, and the chunk
+ * plan is stored in InterestRunChunk. Workers then take chunks in parallel. Each chunk is one
+ * database transaction: claim the chunk row, lock its accounts, batch-UPDATE the balances,
+ * batch-INSERT the "Interest Credit" ledger rows and mark the chunk DONE. Because the DONE
+ * mark commits together with the credits, a crashed run started again with the same ID
+ * skips every finished chunk and credits no account twice.
+ *
+ * Balances and rates are read as whole cents and ten-thousandths of a percent, so the
+ * interest itself is computed by Money with long arithmetic and banker's rounding.
+ *
+ * Command line: java InterestPostingEngine <runID> <months> [--threads N] [--chunk N]
+ */
+public class InterestPostingEngine {
+    private static final Log LOG = Log.get(InterestPostingEngine.class);
+
+    private static final String RUNNING = "RUNNING";
+    private static final String COMPLETED = "COMPLETED";
+    private static final String PENDING = "PENDING";
+    private static final String DONE = "DONE";
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final String SELECT_CHUNK = "SELECT SavingsAccountNumber, CustomerID, " +
+            "CAST(ROUND(Balance * 100) AS SIGNED), CAST(ROUND(InterestRate * 10000) AS SIGNED) " +
+            "FROM SavingsAccount WHERE SavingsAccountNumber > ? AND SavingsAccountNumber <= ? " +
+            "ORDER BY SavingsAccountNumber FOR UPDATE";
+    private static final String CREDIT_SQL = "UPDATE SavingsAccount SET Balance = Balance + ? WHERE SavingsAccountNumber = ?";
+
+    private final int threads;
+    private final int chunkSize;
+
+    public InterestPostingEngine(int threads, int chunkSize) {
+        if (threads <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("threads and chunkSize must be positive");
+        }
+        if (threads > DatabaseConnection.getPoolMaxSize()) {
+            throw new IllegalArgumentException("threads must not exceed the connection pool size ("
+                    + DatabaseConnection.getPoolMaxSize() + ")");
+        }
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /** Totals for the chunks posted by one call to run(). */
+    public static final class Summary {
+        private final int chunks;
+        private final long accounts;
+        private final long interestCents;
+        private final long elapsedMillis;
+
+        Summary(int chunks, long accounts, long interestCents, long elapsedMillis) {
+            this.chunks = chunks;
+            this.accounts = accounts;
+            this.interestCents = interestCents;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getChunks() { return chunks; }
+        public long getAccounts() { return accounts; }
+        public long getInterestCents() { return interestCents; }
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        @Override
+        public String toString() {
+            return "Posted interest to " + accounts + " accounts in " + chunks + " chunks, total "
+                    + Money.format(interestCents) + ", in " + elapsedMillis + " ms";
+        }
+    }
+
+    private static final class Chunk {
+        final int number;
+        final String startAfter;
+        final String endAt;
+
+        Chunk(int number, String startAfter, String endAt) {
+            this.number = number;
+            this.startAfter = startAfter;
+            this.endAt = endAt;
+        }
+    }
+
+    /**
+     * Starts the run, or resumes it if it was started before and did not finish
+     * @param runID Unique ID of the posting period
+     * @param months Months of interest to credit
+     * @return Totals for the chunks posted by this call; chunks finished earlier are not counted
+     * @throws SQLException if a chunk could not be posted; run again with the same ID to resume
+     * @throws IllegalStateException if banking.ledger.enabled is set
+     */
+    public Summary run(String runID, int months) throws SQLException, InterruptedException {
+        if (months <= 0) {
+            throw new IllegalArgumentException("months must be positive");
+        }
+        // Credits go straight to MySQL; the ledger engine would never see them, and its next
+        // snapshot restart would drop them from the balances it serves
+        if (LedgerEngine.isEnabled()) {
+            throw new IllegalStateException("InterestPostingEngine cannot run while the ledger engine "
+                    + "(banking.ledger.enabled) owns the balances; post interest with SavingsAccount.applyInterest instead");
+        }
+        long start = System.currentTimeMillis();
+        if (!planIfNew(runID, months)) {
+            return new Summary(0, 0, 0, System.currentTimeMillis() - start);
+        }
+
+        List<Chunk> chunks = pendingChunks(runID);
+        AtomicInteger posted = new AtomicInteger();
+        AtomicLong accounts = new AtomicLong();
+        AtomicLong cents = new AtomicLong();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        SQLException failure = null;
+        try {
+            List<Future<?>> futures = new ArrayList<>(chunks.size());
+            for (Chunk chunk : chunks) {
+                futures.add(workers.submit(() -> {
+                    long[] totals = postChunkWithRetry(runID, months, chunk);
+                    if (totals != null) {
+                        posted.incrementAndGet();
+                        accounts.addAndGet(totals[0]);
+                        cents.addAndGet(totals[1]);
+                    }
+                    return null;
+                }));
+            }
+            // Keep going past a failed chunk so one bad range does not hold up the rest
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    LOG.error("Interest chunk failed", cause);
+                    if (failure == null) {
+                        failure = cause instanceof SQLException ? (SQLException) cause : new SQLException(cause);
+                    }
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        markCompleted(runID);
+        return new Summary(posted.get(), accounts.get(), cents.get(), System.currentTimeMillis() - start);
+    }
+
+    // Records the run and its chunk plan in one transaction. Returns false if the run already completed.
+    private boolean planIfNew(String runID, int months) throws SQLException {
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            Connection connection = uow.getConnection();
+            PreparedStatement statement = connection.prepareStatement(
+                    "SELECT Months, Status FROM InterestRun WHERE RunID = ? FOR UPDATE");
+            try {
+                statement.setString(1, runID);
+                ResultSet resultSet = statement.executeQuery();
+                if (resultSet.next()) {
+                    if (resultSet.getInt(1) != months) {
+                        throw new SQLException("Interest run " + runID + " was started for " + resultSet.getInt(1) + " months");
+                    }
+                    return !COMPLETED.equals(resultSet.getString(2));
+                }
+            } finally {
+                DatabaseConnection.closeStatement(statement);
+            }
+
+            List<String> boundaries = chunkBoundaries(connection);
+            statement = connection.prepareStatement(
+                    "INSERT INTO InterestRun (RunID, Months, Status, CreatedAt) VALUES (?, ?, ?, NOW())");
+            try {
+                statement.setString(1, runID);
+                statement.setInt(2, months);
+                statement.setString(3, RUNNING);
+                statement.executeUpdate();
+            } finally {
+                DatabaseConnection.closeStatement(statement);
+            }
+
+            statement = connection.prepareStatement(
+                    "INSERT INTO InterestRunChunk (RunID, ChunkNo, StartAfter, EndAt, Status) VALUES (?, ?, ?, ?, ?)");
+            try {
+                String startAfter = "";
+                for (int i = 0; i < boundaries.size(); i++) {
+                    statement.setString(1, runID);
+                    statement.setInt(2, i);
+                    statement.setString(3, startAfter);
+                    statement.setString(4, boundaries.get(i));
+                    statement.setString(5, PENDING);
+                    statement.addBatch();
+                    startAfter = boundaries.get(i);
+                }
+                statement.executeBatch();
+            } finally {
+                DatabaseConnection.closeStatement(statement);
+            }
+            uow.commit();
+            LOG.info("Planned interest run {} with {} chunks", runID, boundaries.size());
+            return true;
+        }
+    }
+
+    // Last account number of every chunkSize accounts, plus the final account number
+    private List<String> chunkBoundaries(Connection connection) throws SQLException {
+        List<String> boundaries = new ArrayList<>();
+        PreparedStatement statement = connection.prepareStatement(
+                "SELECT SavingsAccountNumber FROM SavingsAccount ORDER BY SavingsAccountNumber",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ResultSet resultSet = null;
+        try {
+            statement.setFetchSize(FETCH_SIZE);
+            resultSet = statement.executeQuery();
+            String last = null;
+            int count = 0;
+            while (resultSet.next()) {
+                last = resultSet.getString(1);
+                if (++count == chunkSize) {
+                    boundaries.add(last);
+                    count = 0;
+                }
+            }
+            if (count > 0) boundaries.add(last);
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+        }
+        return boundaries;
+    }
+
+    private static List<Chunk> pendingChunks(String runID) throws SQLException {
+        List<Chunk> chunks = new ArrayList<>();
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) throw new SQLException("No database connection available");
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = connection.prepareStatement("SELECT ChunkNo, StartAfter, EndAt FROM InterestRunChunk " +
+                    "WHERE RunID = ? AND Status = ? ORDER BY ChunkNo");
+            statement.setString(1, runID);
+            statement.setString(2, PENDING);
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                chunks.add(new Chunk(resultSet.getInt(1), resultSet.getString(2), resultSet.getString(3)));
+            }
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+        return chunks;
+    }
+
+    // Deadlocks with customer activity on the same accounts are retried; other errors fail the chunk
+    private static long[] postChunkWithRetry(String runID, int months, Chunk chunk) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return postChunk(runID, months, chunk);
+            } catch (SQLTransactionRollbackException e) {
+                if (attempt == MAX_ATTEMPTS) throw e;
+            }
+        }
+    }
+
+    // Returns {accounts, interestCents}, or null if another engine already posted the chunk
+    private static long[] postChunk(String runID, int months, Chunk chunk) throws SQLException {
+        List<String> accountNumbers = new ArrayList<>();
+        List<String> customerIDs = new ArrayList<>();
+        long[] credits = new long[64];
+        long total = 0;
+
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            Connection connection = uow.getConnection();
+            // Locking the chunk row first serializes engines resuming the same run at once
+            if (!claim(connection, runID, chunk)) {
+                return null;
+            }
+
+            PreparedStatement statement = connection.prepareStatement(SELECT_CHUNK);
+            ResultSet resultSet = null;
+            try {
+                statement.setString(1, chunk.startAfter);
+                statement.setString(2, chunk.endAt);
+                resultSet = statement.executeQuery();
+                while (resultSet.next()) {
+                    long credit = Money.interest(resultSet.getLong(3), resultSet.getLong(4), months);
+                    if (credit <= 0) continue;
+                    if (accountNumbers.size() == credits.length) {
+                        credits = Arrays.copyOf(credits, credits.length * 2);
+                    }
+                    credits[accountNumbers.size()] = credit;
+                    accountNumbers.add(resultSet.getString(1));
+                    customerIDs.add(resultSet.getString(2));
+                    total += credit;
+                }
+            } finally {
+                DatabaseConnection.closeResultSet(resultSet);
+                DatabaseConnection.closeStatement(statement);
+            }
+
+            if (!accountNumbers.isEmpty()) {
+                statement = connection.prepareStatement(CREDIT_SQL);
+                try {
+                    for (int i = 0; i < accountNumbers.size(); i++) {
+                        Money.bind(statement, 1, credits[i]);
+                        statement.setString(2, accountNumbers.get(i));
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                } finally {
+                    DatabaseConnection.closeStatement(statement);
+                }
+
+                List<Transaction> ledger = new ArrayList<>(accountNumbers.size());
+                statement = connection.prepareStatement(Transaction.INSERT_SQL);
+                try {
+                    for (int i = 0; i < accountNumbers.size(); i++) {
+                        Transaction credit = new Transaction(credits[i], "Interest Credit", null, accountNumbers.get(i), customerIDs.get(i));
+                        credit.bindInsert(statement, 1);
+                        statement.addBatch();
+                        ledger.add(credit);
+                    }
+                    statement.executeBatch();
+                } finally {
+                    DatabaseConnection.closeStatement(statement);
+                }
+                DailyRollup.record(connection, ledger);
+            }
+
+            statement = connection.prepareStatement("UPDATE InterestRunChunk SET Status = ?, Accounts = ?, " +
+                    "InterestCents = ?, CompletedAt = NOW() WHERE RunID = ? AND ChunkNo = ?");
+            try {
+                statement.setString(1, DONE);
+                statement.setInt(2, accountNumbers.size());
+                statement.setLong(3, total);
+                statement.setString(4, runID);
+                statement.setInt(5, chunk.number);
+                statement.executeUpdate();
+            } finally {
+                DatabaseConnection.closeStatement(statement);
+            }
+            uow.commit();
+        }
+
+        for (int i = 0; i < accountNumbers.size(); i++) {
+            AccountCache.accountChanged(customerIDs.get(i));
+        }
+        return new long[] { accountNumbers.size(), total };
+    }
+
+    private static boolean claim(Connection connection, String runID, Chunk chunk) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(
+                "SELECT Status FROM InterestRunChunk WHERE RunID = ? AND ChunkNo = ? FOR UPDATE");
+        try {
+            statement.setString(1, runID);
+            statement.setInt(2, chunk.number);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() && PENDING.equals(resultSet.getString(1));
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+    }
+
+    private static void markCompleted(String runID) throws SQLException {
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) throw new SQLException("No database connection available");
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement("UPDATE InterestRun SET Status = ?, CompletedAt = NOW() " +
+                    "WHERE RunID = ? AND NOT EXISTS (SELECT 1 FROM InterestRunChunk WHERE RunID = ? AND Status = ?)");
+            statement.setString(1, COMPLETED);
+            statement.setString(2, runID);
+            statement.setString(3, runID);
+            statement.setString(4, PENDING);
+            statement.executeUpdate();
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: java InterestPostingEngine <runID> <months> [--threads N] [--chunk N]");
+            System.exit(1);
+        }
+        // Each worker holds a connection while it posts a chunk, so more workers than pooled
+        // connections would only time out waiting for one
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), DatabaseConnection.getPoolMaxSize());
+        int chunkSize = 1000;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--chunk") && i + 1 < args.length) chunkSize = Integer.parseInt(args[++i]);
+        }
+        if (threads <= 0 || threads > DatabaseConnection.getPoolMaxSize()) {
+            System.err.println("--threads must be between 1 and " + DatabaseConnection.getPoolMaxSize()
+                    + " (banking.pool.maxSize)");
+            System.exit(1);
+        }
+        if (LedgerEngine.isEnabled()) {
+            System.err.println("InterestPostingEngine cannot run with banking.ledger.enabled; the ledger engine owns the balances");
+            System.exit(1);
+        }
+        DatabaseConnection.initializeDatabase();
+        Summary summary = new InterestPostingEngine(threads, chunkSize).run(args[0], Integer.parseInt(args[1]));
+        System.out.println(summary);
+        DatabaseConnection.shutdownPool();
+    }
+}
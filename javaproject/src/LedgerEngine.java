@@ -0,0 +1,691 @@
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * LedgerEngine keeps checking and savings balances in memory and makes them the authority,
+ * so a deposit, withdrawal, transfer or interest credit costs a queue hand-off and a share of
+ * one fsync instead of a MySQL round-trip and row lock. It is off by default;
+ * -Dbanking.ledger.enabled=true turns it on, and CheckingAccount, SavingsAccount and
+ * AccountTransfer then post through it.
+ *
+ * Accounts are split into banking.ledger.partitions partitions by customer, so both of a
+ * customer's accounts, and any transfer between them, live in one partition. Each partition
+ * is a single thread that owns its balances outright: primitive arrays, found through a
+ * LongIntMap keyed by the numeric part of the account number. It works through its queue in
+ * batches of up to banking.ledger.maxBatch commands: apply each one, append its posting to
+ * the partition's LedgerWal, force the log once for the whole batch, and only then answer
+ * the callers. LedgerSink copies the postings to the MySQL tables afterwards.
+ *
+ * The first start reads the balances from CheckingAccount and SavingsAccount and writes them
+ * as each partition's snapshot under banking.ledger.dir (ledger). Later starts load the
+ * snapshot and replay the log after it. A new snapshot is written every
+ * banking.ledger.snapshotEvery postings and at shutdown, and log segments both the snapshot
+ * and MySQL have are deleted. Accounts opened after startup are taken over from MySQL the
+ * first time they are used. If the log cannot be written, the partition stops and answers
+ * ERROR until the application is restarted and recovers from the log.
+ *
+ * The engine must be the only writer of the balances: one application instance, and no
+ * InterestPostingEngine run against the same database while it is up (InterestPostingEngine
+ * refuses to start when banking.ledger.enabled is set). The Transactions
+ * table and the balance columns trail the engine by the sink's delay.
+ */
+public final class LedgerEngine {
+    private static final Log LOG = Log.get(LedgerEngine.class);
+
+    private static final boolean ENABLED = Boolean.getBoolean("banking.ledger.enabled");
+    private static final int SNAPSHOT_MAGIC = 0x4C444753; // "LDGS"
+    private static final String LAYOUT_FILE = "engine.properties";
+    private static final long POLL_MILLIS = 100;
+
+    private static final int DEPOSIT = 1;
+    private static final int WITHDRAW = 2;
+    private static final int INTEREST = 3;
+    private static final int TRANSFER = 4;
+    private static final int OPEN = 5;
+    private static final int BALANCE = 6;
+
+    /**
+     * Outcome of a command
+     * @param status SUCCESS, INSUFFICIENT_FUNDS, INVALID_AMOUNT or ERROR; never ACCOUNT_NOT_FOUND,
+     *               because accounts the engine does not hold are posted through MySQL
+     * @param amount Amount posted, e.g. the interest credited
+     * @param balance Balance afterwards of the account debited, or of the one credited if none was
+     */
+    public record Result(WithdrawalResult status, long amount, long balance) {}
+
+    private static final Result FAILED = new Result(WithdrawalResult.ERROR, 0, 0);
+    // Answered for accounts the engine has not taken over yet; never returned to callers
+    private static final Result UNKNOWN_ACCOUNT = new Result(WithdrawalResult.ERROR, 0, 0);
+
+    private static volatile LedgerEngine instance;
+    private static volatile boolean shutDown = false;
+
+    private final Path directory;
+    private final Partition[] partitions;
+    private final LedgerSink sink;
+    private final int maxBatchSize;
+    private final long enqueueTimeoutMillis;
+    private final long snapshotEvery;
+
+    private LedgerEngine(Path directory, int partitionCount) {
+        this.directory = directory;
+        this.maxBatchSize = Integer.getInteger("banking.ledger.maxBatch", 512);
+        this.enqueueTimeoutMillis = Long.getLong("banking.ledger.enqueueTimeoutMs", 1_000L);
+        this.snapshotEvery = Long.getLong("banking.ledger.snapshotEvery", 100_000L);
+        this.sink = new LedgerSink(partitionCount, Integer.getInteger("banking.ledger.sinkQueue", 100_000),
+                Integer.getInteger("banking.ledger.sinkBatch", 1_000));
+        this.partitions = new Partition[partitionCount];
+        long segmentBytes = Long.getLong("banking.ledger.segmentBytes", 64L * 1024 * 1024);
+        boolean fsync = !"false".equalsIgnoreCase(System.getProperty("banking.ledger.fsync"));
+        int capacity = Integer.getInteger("banking.ledger.queueCapacity", 10_000);
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(i, new LedgerWal(directory, i, segmentBytes, fsync), capacity);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * True if the account's balance is kept by the engine: the engine is enabled and the
+     * account number has the usual prefix-plus-number form. Other accounts stay in MySQL.
+     */
+    public static boolean handles(String accountNumber) {
+        return ENABLED && keyOf(accountNumber) >= 0;
+    }
+
+    /**
+     * Credits an account
+     * @param amount Amount in minor units
+     */
+    public static Result deposit(AccountTransfer.AccountType type, String accountNumber, String customerID, long amount) {
+        if (amount <= 0) return new Result(WithdrawalResult.INVALID_AMOUNT, 0, 0);
+        return post(() -> new Command(DEPOSIT, null, null, type, accountNumber, customerID, amount, 0));
+    }
+
+    /**
+     * Debits an account if its balance covers the amount
+     * @param amount Amount in minor units
+     */
+    public static Result withdraw(AccountTransfer.AccountType type, String accountNumber, String customerID, long amount) {
+        if (amount <= 0) return new Result(WithdrawalResult.INVALID_AMOUNT, 0, 0);
+        return post(() -> new Command(WITHDRAW, type, accountNumber, null, null, customerID, amount, 0));
+    }
+
+    /**
+     * Credits simple interest on the savings account's balance at the time it is applied
+     * @param rateE4 Annual rate, see Money.rateE4()
+     * @return INVALID_AMOUNT if the interest would be zero
+     */
+    public static Result applyInterest(String savingsAccountNumber, String customerID, int months, long rateE4) {
+        if (months <= 0) return new Result(WithdrawalResult.INVALID_AMOUNT, 0, 0);
+        return post(() -> new Command(INTEREST, null, null, AccountTransfer.AccountType.SAVINGS, savingsAccountNumber,
+                customerID, rateE4, months));
+    }
+
+    /** Moves money between two accounts of the same customer. */
+    public static Result transfer(AccountTransfer.AccountType fromType, String fromAccount, AccountTransfer.AccountType toType,
+                                  String toAccount, String customerID, long amount) {
+        if (amount <= 0 || fromAccount.equals(toAccount)) return new Result(WithdrawalResult.INVALID_AMOUNT, 0, 0);
+        return post(() -> new Command(TRANSFER, fromType, fromAccount, toType, toAccount, customerID, amount, 0));
+    }
+
+    /**
+     * The engine's balance for an account
+     * @param fallback Returned when the engine does not hold the account, e.g. the balance read from MySQL
+     */
+    public static long balanceOf(AccountTransfer.AccountType type, String accountNumber, String customerID, long fallback) {
+        if (!handles(accountNumber)) return fallback;
+        LedgerEngine engine = getInstance();
+        if (engine == null) return fallback;
+        Result result = engine.call(new Command(BALANCE, null, null, type, accountNumber, customerID, 0, 0));
+        return result.status() == WithdrawalResult.SUCCESS ? result.balance() : fallback;
+    }
+
+    /** Stops the partitions, writes their snapshots and lets the sink catch up, if the engine was started. */
+    public static void shutdownIfStarted() {
+        LedgerEngine current;
+        synchronized (LedgerEngine.class) {
+            current = instance;
+            instance = null;
+            shutDown = true;
+        }
+        if (current != null) {
+            current.shutdown();
+        }
+    }
+
+    // The running engine, started on first use; null if it could not start
+    private static LedgerEngine getInstance() {
+        LedgerEngine current = instance;
+        if (current == null) {
+            synchronized (LedgerEngine.class) {
+                current = instance;
+                if (current == null) {
+                    if (shutDown) return null;
+                    try {
+                        current = start();
+                        instance = current;
+                    } catch (IOException | SQLException | RuntimeException e) {
+                        LOG.error("Ledger engine could not start", e);
+                        return null;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    private static LedgerEngine start() throws IOException, SQLException {
+        Path directory = Paths.get(System.getProperty("banking.ledger.dir", "ledger"));
+        Files.createDirectories(directory);
+        Path layout = directory.resolve(LAYOUT_FILE);
+        int partitionCount = Integer.getInteger("banking.ledger.partitions", Runtime.getRuntime().availableProcessors());
+        boolean initialized = Files.exists(layout);
+        if (initialized) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(layout)) {
+                properties.load(reader);
+            }
+            int stored = Integer.parseInt(properties.getProperty("partitions"));
+            if (stored != partitionCount && System.getProperty("banking.ledger.partitions") != null) {
+                throw new IllegalStateException("Ledger in " + directory + " has " + stored + " partitions, not " + partitionCount);
+            }
+            partitionCount = stored;
+        }
+
+        LedgerEngine engine = new LedgerEngine(directory, Math.max(1, partitionCount));
+        try {
+            long[] replicated = engine.sink.loadPositions();
+            if (initialized) {
+                for (Partition partition : engine.partitions) {
+                    if (!partition.loadSnapshot()) {
+                        throw new IllegalStateException("Snapshot of ledger partition " + partition.number + " is missing in " + directory);
+                    }
+                }
+            } else {
+                // Leftovers of a first start that did not finish; no posting was accepted yet
+                deleteLedgerFiles(directory);
+                engine.sink.resetPositions();
+                Arrays.fill(replicated, 0);
+                engine.loadFromDatabase();
+            }
+            engine.sink.start();
+            for (Partition partition : engine.partitions) {
+                partition.recover(replicated[partition.number]);
+            }
+            if (!initialized) {
+                for (Partition partition : engine.partitions) {
+                    partition.writeSnapshot();
+                }
+                Properties properties = new Properties();
+                properties.setProperty("partitions", Integer.toString(engine.partitions.length));
+                try (Writer writer = Files.newBufferedWriter(layout)) {
+                    properties.store(writer, "Ledger engine layout; do not change while the directory holds data");
+                }
+            }
+        } catch (IOException | SQLException | RuntimeException e) {
+            engine.closeQuietly();
+            throw e;
+        }
+
+        for (Partition partition : engine.partitions) {
+            partition.thread.start();
+        }
+        Metrics.gauge("ledger.sink.queued", engine.sink::getQueuedCount);
+        Metrics.gauge("ledger.sink.lag", engine::getSinkLag);
+        int accounts = 0;
+        for (Partition partition : engine.partitions) accounts += partition.count;
+        LOG.info("Ledger engine started with {} accounts in {} partitions", accounts, engine.partitions.length);
+        return engine;
+    }
+
+    // --- Commands ---
+
+    private Result call(Command command) {
+        Partition partition = partitions[partitionOf(command.customerID)];
+        try {
+            if (!partition.queue.offer(command, enqueueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Ledger partition {} is full ({} commands waiting)", partition.number, partition.queue.size());
+                return FAILED;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FAILED;
+        }
+        // The partition may have stopped after its last look at the queue
+        if (!partition.running && partition.queue.remove(command)) return FAILED;
+        return command.result.join();
+    }
+
+    // Runs the command, taking over from MySQL any account the engine does not hold yet
+    private static Result post(Supplier<Command> command) {
+        LedgerEngine engine = getInstance();
+        if (engine == null) return FAILED;
+        Command first = command.get();
+        Result result = engine.call(first);
+        if (result != UNKNOWN_ACCOUNT) return result;
+        if (first.fromAccount != null && !engine.adopt(first.fromType, first.fromAccount, first.customerID)) return FAILED;
+        if (first.toAccount != null && !engine.adopt(first.toType, first.toAccount, first.customerID)) return FAILED;
+        result = engine.call(command.get());
+        return result == UNKNOWN_ACCOUNT ? FAILED : result;
+    }
+
+    // Hands an account's MySQL balance to the engine; false if it does not exist or belongs to someone else
+    private boolean adopt(AccountTransfer.AccountType type, String accountNumber, String customerID) {
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) return false;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        long balance;
+        try {
+            statement = connection.prepareStatement("SELECT Balance, CustomerID FROM " + type.table + " WHERE " + type.keyColumn + " = ?");
+            statement.setString(1, accountNumber);
+            resultSet = statement.executeQuery();
+            if (!resultSet.next() || !customerID.equals(resultSet.getString("CustomerID"))) return false;
+            balance = Money.read(resultSet, "Balance");
+        } catch (SQLException e) {
+            LOG.error("Error reading account {} for the ledger engine", accountNumber, e);
+            return false;
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+        return call(new Command(OPEN, null, null, type, accountNumber, customerID, balance, 0)).status() == WithdrawalResult.SUCCESS;
+    }
+
+    private static final class Command {
+        final int kind;
+        // The debited account for WITHDRAW and TRANSFER; the credited or read one otherwise
+        final AccountTransfer.AccountType fromType;
+        final String fromAccount;
+        final AccountTransfer.AccountType toType;
+        final String toAccount;
+        final String customerID;
+        // The amount; the opening balance for OPEN; the rate (see Money.rateE4) for INTEREST
+        final long amount;
+        final int months;
+        final CompletableFuture<Result> result = new CompletableFuture<>();
+
+        Command(int kind, AccountTransfer.AccountType fromType, String fromAccount, AccountTransfer.AccountType toType,
+                String toAccount, String customerID, long amount, int months) {
+            this.kind = kind;
+            this.fromType = fromType;
+            this.fromAccount = fromAccount;
+            this.toType = toType;
+            this.toAccount = toAccount;
+            this.customerID = customerID;
+            this.amount = amount;
+            this.months = months;
+        }
+    }
+
+    // --- Startup and shutdown ---
+
+    private void loadFromDatabase() throws SQLException {
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) throw new SQLException("No database connection available");
+        try {
+            for (AccountTransfer.AccountType type : AccountTransfer.AccountType.values()) {
+                PreparedStatement statement = connection.prepareStatement(
+                        "SELECT " + type.keyColumn + ", CustomerID, Balance FROM " + type.table);
+                ResultSet resultSet = null;
+                try {
+                    statement.setFetchSize(1_000);
+                    resultSet = statement.executeQuery();
+                    while (resultSet.next()) {
+                        String accountNumber = resultSet.getString(1);
+                        String customerID = resultSet.getString(2);
+                        if (keyOf(accountNumber) < 0) continue;
+                        partitions[partitionOf(customerID)].addAccount(type, accountNumber, customerID, Money.read(resultSet, 3));
+                    }
+                } finally {
+                    DatabaseConnection.closeResultSet(resultSet);
+                    DatabaseConnection.closeStatement(statement);
+                }
+            }
+        } finally {
+            DatabaseConnection.closeConnection(connection);
+        }
+    }
+
+    private static void deleteLedgerFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.startsWith("p") && (name.endsWith(".wal") || name.contains(".snapshot"))) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private void shutdown() {
+        // Not interrupted: an interrupt would close the snapshot's FileChannel and fail the sink hand-off
+        for (Partition partition : partitions) {
+            partition.running = false;
+        }
+        for (Partition partition : partitions) {
+            try {
+                partition.thread.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sink.shutdown(10_000);
+    }
+
+    private void closeQuietly() {
+        for (Partition partition : partitions) {
+            try {
+                partition.wal.close();
+            } catch (IOException | RuntimeException e) {
+                // Startup already failed; the next start recovers from whatever is on disk
+            }
+        }
+        sink.shutdown(1_000);
+    }
+
+    // Postings logged but not yet in MySQL, over all partitions
+    private long getSinkLag() {
+        long lag = 0;
+        for (Partition partition : partitions) {
+            lag += Math.max(0, partition.durableSequence - sink.getReplicated(partition.number));
+        }
+        return lag;
+    }
+
+    private int partitionOf(String customerID) {
+        int h = customerID.hashCode();
+        h ^= (h >>> 16);
+        return Math.floorMod(h, partitions.length);
+    }
+
+    // Numeric part of "CHK123..."/"SAV123...", or -1 if the number has another form
+    static long keyOf(String accountNumber) {
+        if (accountNumber == null || accountNumber.length() < 4 || accountNumber.length() > 22) return -1;
+        char first = accountNumber.charAt(3);
+        if (first < '1' || first > '9') return -1;
+        try {
+            return Long.parseLong(accountNumber, 3, accountNumber.length(), 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // --- Partitions ---
+
+    private final class Partition implements Runnable {
+        final int number;
+        final LedgerWal wal;
+        final BlockingQueue<Command> queue;
+        final Thread thread;
+        volatile boolean running = true;
+        // Last sequence forced to disk, for the lag gauge
+        volatile long durableSequence;
+
+        // Owned by the partition thread once it runs
+        final LongIntMap checkingIndex = new LongIntMap(1024);
+        final LongIntMap savingsIndex = new LongIntMap(1024);
+        long[] balances = new long[1024];
+        String[] accountNumbers = new String[1024];
+        String[] customerIDs = new String[1024];
+        boolean[] savings = new boolean[1024];
+        int count;
+        long snapshotSequence;
+        long sinceSnapshot;
+        boolean failed;
+
+        Partition(int number, LedgerWal wal, int capacity) {
+            this.number = number;
+            this.wal = wal;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this, "ledger-partition-" + number);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Command> batch = new ArrayList<>(maxBatchSize);
+            while (running || !queue.isEmpty()) {
+                try {
+                    Command first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    queue.drainTo(batch, maxBatchSize - 1);
+                } catch (InterruptedException e) {
+                    running = false;
+                    continue;
+                }
+                process(batch);
+                batch.clear();
+            }
+            for (Command command; (command = queue.poll()) != null; ) {
+                command.result.complete(FAILED);
+            }
+            if (!failed) {
+                try {
+                    writeSnapshot();
+                } catch (IOException | RuntimeException e) {
+                    LOG.warn("Could not write the snapshot of ledger partition {}; the next start replays more of the log", number, e);
+                }
+            }
+            try {
+                wal.close();
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Error closing the write-ahead log of ledger partition {}", number, e);
+            }
+        }
+
+        private void process(List<Command> batch) {
+            Result[] results = new Result[batch.size()];
+            List<LedgerWal.Entry> logged = new ArrayList<>();
+            try {
+                if (failed) throw new IOException("Ledger partition " + number + " stopped after a log failure");
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = apply(batch.get(i), logged);
+                }
+                wal.sync();
+            } catch (IOException | RuntimeException e) {
+                if (!failed) LOG.error("Ledger partition {} stopped: the write-ahead log could not be written", number, e);
+                failed = true;
+                for (Command command : batch) command.result.complete(FAILED);
+                return;
+            }
+            durableSequence = wal.getLastSequence();
+            for (int i = 0; i < results.length; i++) {
+                batch.get(i).result.complete(results[i]);
+            }
+
+            try {
+                for (LedgerWal.Entry entry : logged) sink.submit(number, entry);
+            } catch (InterruptedException e) {
+                // Shutting down; the log still has them and the next start resends them
+                Thread.currentThread().interrupt();
+            }
+            sinceSnapshot += logged.size();
+            if (sinceSnapshot >= snapshotEvery) {
+                try {
+                    writeSnapshot();
+                } catch (IOException | RuntimeException e) {
+                    LOG.warn("Could not write the snapshot of ledger partition {}", number, e);
+                }
+            }
+        }
+
+        // Applies one command to the balances and logs its posting; answers without logging when nothing changes
+        private Result apply(Command command, List<LedgerWal.Entry> logged) throws IOException {
+            int from = command.fromAccount == null ? -1 : indexOf(command.fromType, command.fromAccount);
+            int to = command.toAccount == null ? -1 : indexOf(command.toType, command.toAccount);
+            if (command.kind == OPEN) {
+                if (to >= 0) return new Result(WithdrawalResult.SUCCESS, 0, balances[to]);
+                if (!canAdd(command.toType, command.toAccount)) return FAILED;
+                logged.add(wal.appendOpen(command.toType, command.toAccount, command.customerID, command.amount));
+                to = addAccount(command.toType, command.toAccount, command.customerID, command.amount);
+                return new Result(WithdrawalResult.SUCCESS, 0, balances[to]);
+            }
+            if ((command.fromAccount != null && from < 0) || (command.toAccount != null && to < 0)) return UNKNOWN_ACCOUNT;
+            if ((from >= 0 && !command.customerID.equals(customerIDs[from])) || (to >= 0 && !command.customerID.equals(customerIDs[to]))) {
+                return FAILED;
+            }
+
+            long amount = command.amount;
+            String type;
+            switch (command.kind) {
+                case BALANCE -> {
+                    return new Result(WithdrawalResult.SUCCESS, 0, balances[to]);
+                }
+                case DEPOSIT -> type = "Deposit";
+                case WITHDRAW -> type = "Withdrawal";
+                case TRANSFER -> type = "Transfer";
+                case INTEREST -> {
+                    type = "Interest Credit";
+                    amount = Money.interest(balances[to], command.amount, command.months);
+                    if (amount <= 0) return new Result(WithdrawalResult.INVALID_AMOUNT, 0, balances[to]);
+                }
+                default -> throw new IllegalArgumentException("Unknown ledger command " + command.kind);
+            }
+            if (from >= 0 && balances[from] < amount) {
+                return new Result(WithdrawalResult.INSUFFICIENT_FUNDS, 0, balances[from]);
+            }
+            // Checked before anything is logged, so an overflow rejects the command cleanly
+            long fromBalance = from >= 0 ? Money.subtract(balances[from], amount) : 0;
+            long toBalance = to >= 0 ? Money.add(balances[to], amount) : 0;
+
+            Transaction posting = new Transaction(amount, type, command.fromAccount, command.toAccount, command.customerID);
+            byte flags = 0;
+            if (from >= 0 && savings[from]) flags |= LedgerWal.FROM_SAVINGS;
+            if (to >= 0 && savings[to]) flags |= LedgerWal.TO_SAVINGS;
+            logged.add(wal.appendPosting(posting, flags));
+            if (from >= 0) balances[from] = fromBalance;
+            if (to >= 0) balances[to] = toBalance;
+            return new Result(WithdrawalResult.SUCCESS, amount, from >= 0 ? fromBalance : toBalance);
+        }
+
+        // Replays the log over the snapshot and passes on whatever MySQL is missing
+        void recover(long replicated) throws IOException {
+            long last = wal.recover(snapshotSequence, Math.min(snapshotSequence, replicated) + 1, entry -> {
+                if (entry.sequence() > snapshotSequence) replay(entry);
+                if (entry.sequence() > replicated) {
+                    try {
+                        sink.submit(number, entry);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while recovering the ledger", e);
+                    }
+                }
+            });
+            if (replicated > last) {
+                throw new IllegalStateException("MySQL has postings up to " + replicated + " for ledger partition " + number
+                        + " but the log ends at " + last);
+            }
+            durableSequence = last;
+            sinceSnapshot = last - snapshotSequence;
+        }
+
+        private void replay(LedgerWal.Entry entry) {
+            if (entry.kind() == LedgerWal.OPEN) {
+                if (indexOf(entry.toType(), entry.toAccount()) < 0) {
+                    addAccount(entry.toType(), entry.toAccount(), entry.customerID(), entry.amount());
+                }
+                return;
+            }
+            if (entry.fromAccount() != null) {
+                int from = indexOf(entry.fromType(), entry.fromAccount());
+                if (from >= 0) balances[from] = Money.subtract(balances[from], entry.amount());
+            }
+            if (entry.toAccount() != null) {
+                int to = indexOf(entry.toType(), entry.toAccount());
+                if (to >= 0) balances[to] = Money.add(balances[to], entry.amount());
+            }
+        }
+
+        private int indexOf(AccountTransfer.AccountType type, String accountNumber) {
+            int index = (type == AccountTransfer.AccountType.SAVINGS ? savingsIndex : checkingIndex).get(keyOf(accountNumber));
+            return index >= 0 && accountNumbers[index].equals(accountNumber) ? index : -1;
+        }
+
+        // False if another account number of this type maps to the same key
+        private boolean canAdd(AccountTransfer.AccountType type, String accountNumber) {
+            long key = keyOf(accountNumber);
+            return key >= 0 && (type == AccountTransfer.AccountType.SAVINGS ? savingsIndex : checkingIndex).get(key) < 0;
+        }
+
+        int addAccount(AccountTransfer.AccountType type, String accountNumber, String customerID, long balance) {
+            if (count == balances.length) {
+                int capacity = count * 2;
+                balances = Arrays.copyOf(balances, capacity);
+                accountNumbers = Arrays.copyOf(accountNumbers, capacity);
+                customerIDs = Arrays.copyOf(customerIDs, capacity);
+                savings = Arrays.copyOf(savings, capacity);
+            }
+            int index = count++;
+            balances[index] = balance;
+            accountNumbers[index] = accountNumber;
+            customerIDs[index] = customerID;
+            savings[index] = type == AccountTransfer.AccountType.SAVINGS;
+            (savings[index] ? savingsIndex : checkingIndex).put(keyOf(accountNumber), index);
+            return index;
+        }
+
+        boolean loadSnapshot() throws IOException {
+            Path path = snapshotPath();
+            if (!Files.exists(path)) return false;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) throw new IOException("Not a ledger snapshot: " + path);
+                snapshotSequence = in.readLong();
+                int accounts = in.readInt();
+                for (int i = 0; i < accounts; i++) {
+                    AccountTransfer.AccountType type = in.readBoolean() ? AccountTransfer.AccountType.SAVINGS : AccountTransfer.AccountType.CHECKING;
+                    addAccount(type, in.readUTF(), in.readUTF(), in.readLong());
+                }
+            }
+            return true;
+        }
+
+        // Written to a temporary file and renamed, so a crash leaves the previous snapshot intact
+        void writeSnapshot() throws IOException {
+            Path path = snapshotPath();
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            long sequence = wal.getLastSequence();
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeLong(sequence);
+                out.writeInt(count);
+                for (int i = 0; i < count; i++) {
+                    out.writeBoolean(savings[i]);
+                    out.writeUTF(accountNumbers[i]);
+                    out.writeUTF(customerIDs[i]);
+                    out.writeLong(balances[i]);
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshotSequence = sequence;
+            sinceSnapshot = 0;
+            wal.deleteThrough(Math.min(snapshotSequence, sink.getReplicated(number)));
+        }
+
+        private Path snapshotPath() {
+            return directory.resolve("p" + number + ".snapshot");
+        }
+    }
+}
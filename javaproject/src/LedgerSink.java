@@ -0,0 +1,254 @@
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LedgerSink copies LedgerEngine postings into MySQL on a background thread, so the
+ * CheckingAccount, SavingsAccount and Transactions tables follow the engine a few
+ * milliseconds behind. Each flush writes up to banking.ledger.sinkBatch postings in one
+ * JDBC transaction: one UPDATE per account carrying the net change of all its postings,
+ * the Transactions rows as a batched INSERT with their DailyRollup changes, and the highest
+ * sequence written for each partition in LedgerSinkPosition. The position commits together
+ * with the rows, so after a restart the engine resends exactly the postings MySQL does not have yet.
+ *
+ * If MySQL is unavailable the flush is retried until it succeeds. Postings wait in a queue
+ * of banking.ledger.sinkQueue entries; when it is full the engine's partitions wait for
+ * room, so a long outage slows posting down instead of filling the heap. Nothing is lost
+ * meanwhile: the write-ahead log keeps every posting until MySQL has it.
+ */
+final class LedgerSink {
+    private static final Log LOG = Log.get(LedgerSink.class);
+
+    private static final long RETRY_MILLIS = 1_000;
+    private static final long POLL_MILLIS = 100;
+
+    private final BlockingQueue<Item> queue;
+    private final int maxBatchSize;
+    private final AtomicLongArray replicated;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private record Item(int partition, LedgerWal.Entry entry) {}
+
+    // Net change of one account within a flush
+    private static final class Change {
+        final AccountTransfer.AccountType type;
+        long delta;
+
+        Change(AccountTransfer.AccountType type) {
+            this.type = type;
+        }
+    }
+
+    LedgerSink(int partitions, int capacity, int maxBatchSize) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.replicated = new AtomicLongArray(partitions);
+        this.writer = new Thread(this::run, "ledger-sink");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Reads how far MySQL is for every partition, creating the rows on first use
+     * @return Last sequence in MySQL per partition; 0 for a new partition
+     */
+    long[] loadPositions() throws SQLException {
+        long[] positions = new long[replicated.length()];
+        boolean[] present = new boolean[positions.length];
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) throw new SQLException("No database connection available");
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = connection.prepareStatement("SELECT PartitionNo, LastSequence FROM LedgerSinkPosition");
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                int partition = resultSet.getInt("PartitionNo");
+                if (partition >= 0 && partition < positions.length) {
+                    positions[partition] = resultSet.getLong("LastSequence");
+                    present[partition] = true;
+                }
+            }
+            DatabaseConnection.closeStatement(statement);
+            statement = connection.prepareStatement("INSERT INTO LedgerSinkPosition (PartitionNo, LastSequence, UpdatedAt) VALUES (?, 0, NOW())");
+            for (int partition = 0; partition < positions.length; partition++) {
+                if (present[partition]) continue;
+                statement.setInt(1, partition);
+                statement.executeUpdate();
+            }
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+        for (int partition = 0; partition < positions.length; partition++) {
+            replicated.set(partition, positions[partition]);
+        }
+        return positions;
+    }
+
+    /** Starts the positions over at 0, for a ledger directory that is being set up from scratch. */
+    void resetPositions() throws SQLException {
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) throw new SQLException("No database connection available");
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement("UPDATE LedgerSinkPosition SET LastSequence = 0, UpdatedAt = NOW()");
+            statement.executeUpdate();
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+        for (int partition = 0; partition < replicated.length(); partition++) {
+            replicated.set(partition, 0);
+        }
+    }
+
+    void start() {
+        writer.start();
+    }
+
+    /** Queues a logged entry, waiting while the queue is full. Entries of one partition must come in order. */
+    void submit(int partition, LedgerWal.Entry entry) throws InterruptedException {
+        queue.put(new Item(partition, entry));
+    }
+
+    /** Highest sequence of the partition that MySQL has committed. */
+    long getReplicated(int partition) {
+        return replicated.get(partition);
+    }
+
+    int getQueuedCount() {
+        return queue.size();
+    }
+
+    /** Writes what is queued, giving up after the timeout if MySQL does not take it. */
+    void shutdown(long timeoutMillis) {
+        // Not interrupted, so a JDBC call in progress is not cut off
+        running = false;
+        try {
+            writer.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Item> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Item first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+            } catch (InterruptedException e) {
+                running = false;
+                continue;
+            }
+            while (!flush(batch)) {
+                if (!running) {
+                    LOG.warn("Stopping with {} postings not yet in the database; they are resent from the write-ahead log on the next start",
+                            batch.size() + queue.size());
+                    return;
+                }
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException e) {
+                    running = false;
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private boolean flush(List<Item> batch) {
+        // Sorted by account number: the order AccountTransfer locks rows in
+        TreeMap<String, Change> changes = new TreeMap<>();
+        Map<Integer, Long> positions = new TreeMap<>();
+        List<Transaction> rows = new ArrayList<>(batch.size());
+        for (Item item : batch) {
+            LedgerWal.Entry entry = item.entry();
+            positions.put(item.partition(), entry.sequence());
+            // OPEN entries change nothing here: their balance came from MySQL
+            if (entry.kind() != LedgerWal.POSTING) continue;
+            if (entry.fromAccount() != null) {
+                Change change = changes.computeIfAbsent(entry.fromAccount(), account -> new Change(entry.fromType()));
+                change.delta = Money.subtract(change.delta, entry.amount());
+            }
+            if (entry.toAccount() != null) {
+                Change change = changes.computeIfAbsent(entry.toAccount(), account -> new Change(entry.toType()));
+                change.delta = Money.add(change.delta, entry.amount());
+            }
+            rows.add(entry.toTransaction());
+        }
+
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) return false;
+        PreparedStatement checking = null;
+        PreparedStatement savings = null;
+        PreparedStatement ledger = null;
+        PreparedStatement position = null;
+        try {
+            connection.setAutoCommit(false);
+            checking = connection.prepareStatement(balanceSql(AccountTransfer.AccountType.CHECKING));
+            savings = connection.prepareStatement(balanceSql(AccountTransfer.AccountType.SAVINGS));
+            boolean anyChecking = false;
+            boolean anySavings = false;
+            for (Map.Entry<String, Change> e : changes.entrySet()) {
+                Change change = e.getValue();
+                if (change.delta == 0) continue;
+                PreparedStatement statement = change.type == AccountTransfer.AccountType.CHECKING ? checking : savings;
+                Money.bind(statement, 1, change.delta);
+                statement.setString(2, e.getKey());
+                statement.addBatch();
+                if (statement == checking) anyChecking = true; else anySavings = true;
+            }
+            if (anyChecking) checking.executeBatch();
+            if (anySavings) savings.executeBatch();
+            if (!rows.isEmpty()) {
+                ledger = connection.prepareStatement(Transaction.INSERT_SQL);
+                for (Transaction row : rows) {
+                    row.bindInsert(ledger, 1);
+                    ledger.addBatch();
+                }
+                ledger.executeBatch();
+                DailyRollup.record(connection, rows);
+            }
+            position = connection.prepareStatement("UPDATE LedgerSinkPosition SET LastSequence = ?, UpdatedAt = NOW() WHERE PartitionNo = ?");
+            for (Map.Entry<Integer, Long> e : positions.entrySet()) {
+                position.setLong(1, e.getValue());
+                position.setInt(2, e.getKey());
+                position.addBatch();
+            }
+            position.executeBatch();
+            connection.commit();
+            positions.forEach(replicated::set);
+            return true;
+        } catch (SQLException e) {
+            rollbackQuietly(connection);
+            LOG.error("Ledger sink could not write {} postings, retrying", batch.size(), e);
+            return false;
+        } finally {
+            DatabaseConnection.closeStatement(checking);
+            DatabaseConnection.closeStatement(savings);
+            DatabaseConnection.closeStatement(ledger);
+            DatabaseConnection.closeStatement(position);
+            DatabaseConnection.closeConnection(connection);
+        }
+    }
+
+    private static String balanceSql(AccountTransfer.AccountType type) {
+        return "UPDATE " + type.table + " SET Balance = Balance + ? WHERE " + type.keyColumn + " = ?";
+    }
+
+    private static void rollbackQuietly(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            LOG.error("Rollback Error", e);
+        }
+    }
+}
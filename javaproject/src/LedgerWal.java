@@ -0,0 +1,287 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * LedgerWal is the write-ahead log of one LedgerEngine partition. Entries are appended to
+ * memory-mapped segment files named p<partition>-<first sequence>.wal, each
+ * banking.ledger.segmentBytes long. append() only copies bytes into the mapping; sync()
+ * forces everything appended since the previous sync to disk in one call, so a whole batch
+ * of postings shares one fsync.
+ *
+ * Every entry carries its length, a CRC32C and a sequence number one higher than the entry
+ * before it. recover() replays the segments in order and stops at the first entry that is
+ * missing, torn or out of sequence. Only the last segment can end that way, because a
+ * segment is forced completely before the next one is started; a gap anywhere else means
+ * acknowledged postings are gone, and recovery refuses to continue.
+ *
+ * Not thread-safe: only the partition's own thread uses it.
+ */
+final class LedgerWal implements Closeable {
+
+    /** A posting: FromAccount is debited and ToAccount credited, as on a Transactions row. */
+    static final byte POSTING = 1;
+    /** An account taken over from the database, with its balance at that moment. */
+    static final byte OPEN = 2;
+
+    static final byte FROM_SAVINGS = 1;
+    static final byte TO_SAVINGS = 2;
+
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_PAYLOAD = 2048;
+    private static final int MAX_STRING = 200;
+
+    /**
+     * One logged event. For OPEN the account is in toAccount, its type in the flags and the
+     * opening balance in amount.
+     */
+    record Entry(long sequence, byte kind, byte flags, long amount, LocalDateTime timestamp, String transactionNumber,
+                 String transactionType, String fromAccount, String toAccount, String customerID) {
+
+        AccountTransfer.AccountType fromType() {
+            return (flags & FROM_SAVINGS) != 0 ? AccountTransfer.AccountType.SAVINGS : AccountTransfer.AccountType.CHECKING;
+        }
+
+        AccountTransfer.AccountType toType() {
+            return (flags & TO_SAVINGS) != 0 ? AccountTransfer.AccountType.SAVINGS : AccountTransfer.AccountType.CHECKING;
+        }
+
+        /** The Transactions row this posting writes. */
+        Transaction toTransaction() {
+            return Transaction.restore(transactionNumber, amount, transactionType, fromAccount, toAccount, customerID, timestamp);
+        }
+    }
+
+    private final Path directory;
+    private final int partition;
+    private final int segmentBytes;
+    private final boolean fsync;
+    private final ByteBuffer scratch = ByteBuffer.allocate(MAX_PAYLOAD);
+    private final CRC32C crc = new CRC32C();
+    // First sequence of every segment on disk, oldest first; the last one is being written
+    private final List<Long> segmentStarts = new ArrayList<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int syncedPosition;
+    private long lastSequence;
+
+    LedgerWal(Path directory, int partition, long segmentBytes, boolean fsync) {
+        this.directory = directory;
+        this.partition = partition;
+        this.segmentBytes = (int) Math.max(64 * 1024, Math.min(segmentBytes, Integer.MAX_VALUE));
+        this.fsync = fsync;
+    }
+
+    /**
+     * Replays the log and positions it for appending after the last intact entry
+     * @param snapshotSequence Sequence the partition's snapshot covers; numbering continues after it at least
+     * @param neededFrom Oldest sequence the caller still needs; the log must reach back to it
+     * @param consumer Receives every intact entry, in order, including those the snapshot covers
+     * @return Sequence of the last entry, or snapshotSequence if the log holds nothing newer
+     * @throws IOException if the segments cannot be read or an acknowledged entry is missing
+     */
+    long recover(long snapshotSequence, long neededFrom, Consumer<Entry> consumer) throws IOException {
+        Files.createDirectories(directory);
+        segmentStarts.clear();
+        segmentStarts.addAll(listSegments());
+        if (segmentStarts.isEmpty()) {
+            lastSequence = snapshotSequence;
+            openSegment(snapshotSequence + 1);
+            return lastSequence;
+        }
+        if (segmentStarts.get(0) > neededFrom) {
+            throw new IOException("Write-ahead log of partition " + partition + " starts at " + segmentStarts.get(0)
+                    + " but entries from " + neededFrom + " are still needed");
+        }
+
+        long expected = segmentStarts.get(0);
+        for (int i = 0; i < segmentStarts.size(); i++) {
+            boolean last = i == segmentStarts.size() - 1;
+            if (segmentStarts.get(i) != expected) {
+                throw new IOException("Write-ahead log of partition " + partition + " is missing entries "
+                        + expected + " to " + (segmentStarts.get(i) - 1));
+            }
+            FileChannel readChannel = FileChannel.open(segmentPath(segmentStarts.get(i)), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_WRITE, 0, readChannel.size());
+            while (true) {
+                Entry entry = read(buffer, expected);
+                if (entry == null) break;
+                consumer.accept(entry);
+                expected++;
+            }
+            if (last) {
+                // Clear whatever a torn write left behind, so it is not mistaken for an entry later
+                for (int p = buffer.position(), end = Math.min(buffer.limit(), p + HEADER_BYTES + MAX_PAYLOAD); p < end; p++) {
+                    buffer.put(p, (byte) 0);
+                }
+                channel = readChannel;
+                segment = buffer;
+                syncedPosition = buffer.position();
+            } else {
+                readChannel.close();
+            }
+        }
+        lastSequence = expected - 1;
+        if (lastSequence < snapshotSequence) {
+            // The snapshot is newer than the log (e.g. the log was removed); continue numbering after it
+            lastSequence = snapshotSequence;
+            rollTo(snapshotSequence + 1);
+            deleteThrough(snapshotSequence);
+        }
+        return lastSequence;
+    }
+
+    long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Appends a posting with the next sequence number. It is durable only after sync().
+     * @param flags FROM_SAVINGS and/or TO_SAVINGS
+     * @return The entry as logged
+     */
+    Entry appendPosting(Transaction transaction, byte flags) throws IOException {
+        return append(POSTING, flags, transaction.getTransactionAmount(), transaction.getTransactionTimestamp(),
+                transaction.getTransactionNumber(), transaction.getTransactionType(), transaction.getFromAccount(),
+                transaction.getToAccount(), transaction.getCustomerID());
+    }
+
+    /** Appends the takeover of an account with its current balance; durable only after sync(). */
+    Entry appendOpen(AccountTransfer.AccountType type, String accountNumber, String customerID, long balance) throws IOException {
+        byte flags = type == AccountTransfer.AccountType.SAVINGS ? TO_SAVINGS : 0;
+        return append(OPEN, flags, balance, null, null, null, null, accountNumber, customerID);
+    }
+
+    private Entry append(byte kind, byte flags, long amount, LocalDateTime timestamp, String transactionNumber,
+                 String transactionType, String fromAccount, String toAccount, String customerID) throws IOException {
+        Entry entry = new Entry(lastSequence + 1, kind, flags, amount, timestamp, transactionNumber, transactionType,
+                fromAccount, toAccount, customerID);
+        scratch.clear();
+        scratch.putLong(entry.sequence()).put(kind).put(flags).putLong(amount)
+                .putLong(timestamp == null ? Long.MIN_VALUE : timestamp.toEpochSecond(ZoneOffset.UTC));
+        putString(transactionNumber);
+        putString(transactionType);
+        putString(fromAccount);
+        putString(toAccount);
+        putString(customerID);
+        int length = scratch.position();
+        crc.reset();
+        crc.update(scratch.array(), 0, length);
+        if (segment.remaining() < HEADER_BYTES + length) {
+            rollTo(entry.sequence());
+        }
+        segment.putInt(length).putInt((int) crc.getValue()).put(scratch.array(), 0, length);
+        lastSequence = entry.sequence();
+        return entry;
+    }
+
+    /** Forces every entry appended since the last sync to disk. */
+    void sync() {
+        int position = segment.position();
+        if (fsync && position > syncedPosition) {
+            segment.force(syncedPosition, position - syncedPosition);
+        }
+        syncedPosition = position;
+    }
+
+    /**
+     * Deletes segments whose entries are all at or below the sequence. The segment being
+     * written is always kept.
+     */
+    void deleteThrough(long sequence) throws IOException {
+        while (segmentStarts.size() > 1 && segmentStarts.get(1) - 1 <= sequence) {
+            Files.deleteIfExists(segmentPath(segmentStarts.remove(0)));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            sync();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void rollTo(long firstSequence) throws IOException {
+        sync();
+        channel.close();
+        openSegment(firstSequence);
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        channel = FileChannel.open(segmentPath(firstSequence), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        syncedPosition = 0;
+        segmentStarts.add(firstSequence);
+    }
+
+    // The entry at the buffer's position, advancing past it; null at the end of the intact log
+    private Entry read(MappedByteBuffer buffer, long expectedSequence) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER_BYTES) return null;
+        int length = buffer.getInt(start);
+        int checksum = buffer.getInt(start + 4);
+        if (length <= 0 || length > MAX_PAYLOAD || length > buffer.remaining() - HEADER_BYTES) return null;
+        ByteBuffer payload = buffer.slice(start + HEADER_BYTES, length);
+        crc.reset();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != checksum) return null;
+        long sequence = payload.getLong();
+        if (sequence != expectedSequence) return null;
+        byte kind = payload.get();
+        byte flags = payload.get();
+        long amount = payload.getLong();
+        long epochSecond = payload.getLong();
+        LocalDateTime timestamp = epochSecond == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+        Entry entry = new Entry(sequence, kind, flags, amount, timestamp, getString(payload), getString(payload),
+                getString(payload), getString(payload), getString(payload));
+        buffer.position(start + HEADER_BYTES + length);
+        return entry;
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            scratch.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING) throw new IllegalArgumentException("Value too long for the ledger log: " + value);
+        scratch.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer payload) {
+        int length = payload.getShort();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private List<Long> listSegments() throws IOException {
+        String prefix = "p" + partition + "-";
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(prefix) && name.endsWith(".wal"))
+                    .map(name -> Long.parseLong(name.substring(prefix.length(), name.length() - 4)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(String.format("p%d-%020d.wal", partition, firstSequence));
+    }
+}
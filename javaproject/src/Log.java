@@ -0,0 +1,86 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Log is the application's logger. Each class holds one in a constant:
+ *
+ *   private static final Log LOG = Log.get(CheckingAccount.class);
+ *   LOG.error("Deposit failed for {}", checkingAccountNumber, e);
+ *
+ * A call below the logger's level costs a field read. Enabled events are handed to
+ * AsyncLogWriter, which formats and writes them on its own thread, so the caller never
+ * waits for the console or the disk. "{}" in the message is replaced by the arguments in
+ * order, on the writer thread, so pass values that will not change afterwards. A
+ * Throwable as the last argument is printed with its stack trace.
+ *
+ * Levels come from -Dbanking.log.level (INFO) and can be set per class with
+ * -Dbanking.log.level.<ClassName>, e.g. -Dbanking.log.level.ConnectionPool=DEBUG, or at
+ * run time with setLevel(). See AsyncLogWriter for where the output goes.
+ */
+public final class Log {
+
+    public enum Level { TRACE, DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final Level DEFAULT_LEVEL = parse(System.getProperty("banking.log.level"), Level.INFO);
+    private static final Map<String, Log> LOGGERS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private volatile Level level;
+
+    private Log(String name) {
+        this.name = name;
+        this.level = parse(System.getProperty("banking.log.level." + name), DEFAULT_LEVEL);
+    }
+
+    /** The logger for a class, configured by its simple name. */
+    public static Log get(Class<?> owner) {
+        return LOGGERS.computeIfAbsent(owner.getSimpleName(), Log::new);
+    }
+
+    /** Changes the level of the named class's logger while the application runs. */
+    public static void setLevel(String name, Level level) {
+        LOGGERS.computeIfAbsent(name, Log::new).level = level;
+    }
+
+    static Level parse(String value, Level fallback) {
+        if (value == null || value.isBlank()) return fallback;
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+
+    public String getName() { return name; }
+    public Level getLevel() { return level; }
+
+    public boolean isEnabled(Level candidate) {
+        return candidate.compareTo(level) >= 0 && candidate != Level.OFF;
+    }
+
+    public boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    // Overloads without varargs keep the common calls free of array allocation
+
+    public void trace(String message) { log(Level.TRACE, message, null); }
+    public void trace(String message, Object... args) { log(Level.TRACE, message, args); }
+
+    public void debug(String message) { log(Level.DEBUG, message, null); }
+    public void debug(String message, Object... args) { log(Level.DEBUG, message, args); }
+
+    public void info(String message) { log(Level.INFO, message, null); }
+    public void info(String message, Object... args) { log(Level.INFO, message, args); }
+
+    public void warn(String message) { log(Level.WARN, message, null); }
+    public void warn(String message, Object... args) { log(Level.WARN, message, args); }
+
+    public void error(String message) { log(Level.ERROR, message, null); }
+    public void error(String message, Object... args) { log(Level.ERROR, message, args); }
+
+    private void log(Level eventLevel, String message, Object[] args) {
+        if (!isEnabled(eventLevel)) return;
+        AsyncLogWriter.get().append(eventLevel, name, message, args);
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LoginExecutor runs password hashing and verification on its own small thread pool.
+ * Hashing is deliberately slow, so a burst of logins would otherwise occupy every request
+ * thread; here it can use at most `banking.auth.threads` cores. At most
+ * `banking.auth.queueLimit` requests wait. Beyond that, a login is refused at once
+ * instead of queueing without bound.
+ */
+public final class LoginExecutor {
+
+    private static final int THREADS = Integer.getInteger("banking.auth.threads",
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int QUEUE_LIMIT = Integer.getInteger("banking.auth.queueLimit", 64);
+    private static final long TIMEOUT_MILLIS = Long.getLong("banking.auth.timeoutMs", 5_000L);
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS,
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(QUEUE_LIMIT), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "login-worker-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            }, new ThreadPoolExecutor.AbortPolicy());
+
+    private LoginExecutor() {}
+
+    /**
+     * Runs a hashing task on the login pool and waits for its result
+     * @param task Work to run
+     * @return The task's result
+     * @throws RejectedExecutionException if the queue is full
+     * @throws TimeoutException if the task did not finish within banking.auth.timeoutMs
+     */
+    public static <T> T call(Callable<T> task) throws TimeoutException, InterruptedException {
+        Future<T> future = EXECUTOR.submit(task);
+        try {
+            return future.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    public static int getQueuedCount() {
+        return EXECUTOR.getQueue().size();
+    }
+
+    public static int getActiveCount() {
+        return EXECUTOR.getActiveCount();
+    }
+}
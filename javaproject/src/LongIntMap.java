@@ -0,0 +1,79 @@
+import java.util.Arrays;
+
+/**
+ * LongIntMap maps long keys to int values with open addressing over two primitive arrays,
+ * so lookups neither box the key nor chase an entry object. It is not thread-safe; each
+ * LedgerEngine partition owns one and only touches it from its own thread. Entries cannot
+ * be removed.
+ */
+final class LongIntMap {
+
+    private static final int FREE = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    LongIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, FREE);
+    }
+
+    /** The value stored for the key, or -1 if there is none. */
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (values[i] == FREE) return FREE;
+            if (keys[i] == key) return values[i];
+        }
+    }
+
+    /**
+     * Stores the key with a value
+     * @param value Non-negative value
+     */
+    void put(long key, int value) {
+        if (value < 0) throw new IllegalArgumentException("Value must not be negative: " + value);
+        if ((size + 1) * 2 > keys.length) grow();
+        if (insert(keys, values, key, value)) size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] newKeys = new long[keys.length * 2];
+        int[] newValues = new int[values.length * 2];
+        Arrays.fill(newValues, FREE);
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != FREE) insert(newKeys, newValues, keys[i], values[i]);
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    // True if the key was new
+    private static boolean insert(long[] keys, int[] values, long key, int value) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (values[i] == FREE) {
+                keys[i] = key;
+                values[i] = value;
+                return true;
+            }
+            if (keys[i] == key) {
+                values[i] = value;
+                return false;
+            }
+        }
+    }
+
+    // Snowflake IDs differ mostly in their low bits, but spread them anyway
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,268 @@
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Metrics records how long each banking operation and infrastructure step takes, split by
+ * success and failure, in lock-free LatencyHistograms. It also reads counters and gauges
+ * (pool usage, statement cache, login queue, sessions) from the classes that keep them.
+ *
+ * Everything is exposed two ways: as attributes of the JMX MBean banking:type=Metrics, and
+ * in the Prometheus text format from text(), which BankingHttpServer serves at /metrics.
+ * Percentiles cover everything since startup; use the counts and sums for rates.
+ *
+ * A call site holds its timer in a constant and brackets the work:
+ *
+ *   private static final Metrics.Timer DEPOSIT = Metrics.timer("deposit");
+ *   long start = Metrics.start();
+ *   ...
+ *   DEPOSIT.record(start, ok);
+ *
+ * Recording costs two clock reads and a few atomic adds. -Dbanking.metrics.enabled=false
+ * turns it off; -Dbanking.metrics.jmx=false keeps the MBean unregistered.
+ */
+public final class Metrics {
+    private static final Log LOG = Log.get(Metrics.class);
+
+    private static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("banking.metrics.enabled"));
+    private static final String PREFIX = "banking_";
+
+    private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+
+    static {
+        gauge("pool.active", () -> poolValue(ConnectionPool::getActiveCount));
+        gauge("pool.idle", () -> poolValue(ConnectionPool::getIdleCount));
+        gauge("pool.max", () -> poolValue(ConnectionPool::getMaxSize));
+        counter("statement.cache.hits", () -> poolValue(ConnectionPool::getStatementCacheHits));
+        counter("statement.cache.misses", () -> poolValue(ConnectionPool::getStatementCacheMisses));
+        gauge("login.queued", LoginExecutor::getQueuedCount);
+        gauge("login.active", LoginExecutor::getActiveCount);
+        gauge("sessions.active", SessionManager::size);
+        gauge("account.cache.size", AccountCache::size);
+        if (ENABLED && !"false".equalsIgnoreCase(System.getProperty("banking.metrics.jmx"))) {
+            registerMBean();
+        }
+    }
+
+    private Metrics() {}
+
+    /** Success and failure latencies of one operation. */
+    public static final class Timer {
+        private final String name;
+        private final LatencyHistogram success = new LatencyHistogram();
+        private final LatencyHistogram failure = new LatencyHistogram();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        public String getName() { return name; }
+
+        /**
+         * Records the time since start
+         * @param startNanos Value of Metrics.start(); 0 records nothing
+         * @param succeeded Whether the operation succeeded
+         */
+        public void record(long startNanos, boolean succeeded) {
+            if (startNanos == 0) return;
+            (succeeded ? success : failure).record(System.nanoTime() - startNanos);
+        }
+
+        /** Runs the operation and records it; false or an exception counts as a failure. */
+        public boolean time(BooleanSupplier operation) {
+            long start = start();
+            boolean succeeded = false;
+            try {
+                succeeded = operation.getAsBoolean();
+                return succeeded;
+            } finally {
+                record(start, succeeded);
+            }
+        }
+
+        /** Runs the operation and records it; the result decides success, an exception is a failure. */
+        public <T> T time(Supplier<T> operation, Predicate<T> succeeded) {
+            long start = start();
+            boolean ok = false;
+            try {
+                T result = operation.get();
+                ok = succeeded.test(result);
+                return result;
+            } finally {
+                record(start, ok);
+            }
+        }
+    }
+
+    /** The timer with this name, created on first use. */
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, Timer::new);
+    }
+
+    /** Start of a timed section, for Timer.record(); 0 when metrics are disabled. */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /** Publishes an ever-increasing count kept elsewhere. */
+    public static void counter(String name, LongSupplier value) {
+        COUNTERS.put(name, value);
+    }
+
+    /** Publishes a value that goes up and down, read when the metrics are collected. */
+    public static void gauge(String name, LongSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    private static long poolValue(ToLongFunction<ConnectionPool> getter) {
+        ConnectionPool pool = DatabaseConnection.getPoolIfStarted();
+        return pool == null ? 0 : getter.applyAsLong(pool);
+    }
+
+    /** All metrics in the Prometheus text exposition format (version 0.0.4). */
+    public static String text() {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("# HELP ").append(PREFIX).append("operation_seconds Latency of banking operations and database steps\n");
+        sb.append("# TYPE ").append(PREFIX).append("operation_seconds summary\n");
+        StringBuilder max = new StringBuilder();
+        for (Timer timer : sortedTimers()) {
+            for (boolean succeeded : new boolean[] {true, false}) {
+                LatencyHistogram.Snapshot s = (succeeded ? timer.success : timer.failure).snapshot();
+                String labels = "operation=\"" + timer.name + "\",outcome=\"" + (succeeded ? "success" : "failure") + "\"";
+                for (double q : new double[] {0.5, 0.99, 0.999}) {
+                    sb.append(PREFIX).append("operation_seconds{").append(labels).append(",quantile=\"").append(q).append("\"} ")
+                            .append(seconds(s.getValueAtPercentile(q * 100))).append('\n');
+                }
+                sb.append(PREFIX).append("operation_seconds_sum{").append(labels).append("} ").append(seconds(s.getSum())).append('\n');
+                sb.append(PREFIX).append("operation_seconds_count{").append(labels).append("} ").append(s.getCount()).append('\n');
+                max.append(PREFIX).append("operation_max_seconds{").append(labels).append("} ").append(seconds(s.getMax())).append('\n');
+            }
+        }
+        sb.append("# TYPE ").append(PREFIX).append("operation_max_seconds gauge\n").append(max);
+        for (Map.Entry<String, LongSupplier> e : new TreeMap<>(COUNTERS).entrySet()) {
+            String name = PREFIX + sanitize(e.getKey()) + "_total";
+            sb.append("# TYPE ").append(name).append(" counter\n");
+            sb.append(name).append(' ').append(read(e.getValue())).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> e : new TreeMap<>(GAUGES).entrySet()) {
+            String name = PREFIX + sanitize(e.getKey());
+            sb.append("# TYPE ").append(name).append(" gauge\n");
+            sb.append(name).append(' ').append(read(e.getValue())).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * All metrics as flat name/value pairs, e.g. "deposit.success.p99Ms". These are the
+     * attributes of the JMX MBean.
+     */
+    public static Map<String, Object> values() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Timer timer : sortedTimers()) {
+            for (boolean succeeded : new boolean[] {true, false}) {
+                LatencyHistogram.Snapshot s = (succeeded ? timer.success : timer.failure).snapshot();
+                String prefix = timer.name + (succeeded ? ".success." : ".failure.");
+                values.put(prefix + "count", s.getCount());
+                values.put(prefix + "meanMs", s.getMean() / 1e6);
+                values.put(prefix + "p50Ms", s.getValueAtPercentile(50) / 1e6);
+                values.put(prefix + "p99Ms", s.getValueAtPercentile(99) / 1e6);
+                values.put(prefix + "p999Ms", s.getValueAtPercentile(99.9) / 1e6);
+                values.put(prefix + "maxMs", s.getMax() / 1e6);
+            }
+        }
+        new TreeMap<>(COUNTERS).forEach((name, value) -> values.put(name, read(value)));
+        new TreeMap<>(GAUGES).forEach((name, value) -> values.put(name, read(value)));
+        return values;
+    }
+
+    private static List<Timer> sortedTimers() {
+        List<Timer> timers = new ArrayList<>(TIMERS.values());
+        timers.sort(Comparator.comparing(Timer::getName));
+        return timers;
+    }
+
+    // A failing supplier must not break the whole scrape
+    private static long read(LongSupplier value) {
+        try {
+            return value.getAsLong();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^a-zA-Z0-9_]", "_");
+    }
+
+    private static void registerMBean() {
+        try {
+            ObjectName name = new ObjectName("banking:type=Metrics");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsMBean(), name);
+            }
+        } catch (JMException e) {
+            LOG.warn("Could not register metrics MBean: {}", e.getMessage());
+        }
+    }
+
+    /** Read-only MBean whose attributes are values(); the attribute list follows new timers. */
+    private static final class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Object value = values().get(attribute);
+            if (value == null) throw new AttributeNotFoundException(attribute);
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Object> values = values();
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                Object value = values.get(attribute);
+                if (value != null) list.add(new Attribute(attribute, value));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Object> e : values().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(),
+                        e.getKey(), true, false, false));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Online banking operation metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.*;
+
+/**
+ * Money amounts are plain longs counting minor units (cents), so $10.50 is 1050. This class
+ * holds the arithmetic and conversions for them. Arithmetic is overflow-checked (it throws
+ * ArithmeticException instead of wrapping) and allocates nothing; BigDecimal appears only
+ * when parsing user input and at the JDBC boundary, where the columns are DECIMAL(19,2).
+ *
+ * Interest rates stay in percent (2.5 means 2.5% a year) and are converted to
+ * ten-thousandths of a percent for interest arithmetic.
+ */
+public final class Money {
+
+    public static final int SCALE = 2;
+    private static final long MINOR_PER_MAJOR = 100;
+    private static final long RATE_UNITS_PER_PERCENT = 10_000;
+    // Balance * rate (1/10000 %) * months / (12 months * 100 % * 10000)
+    private static final long INTEREST_DIVISOR = 12L * 100 * RATE_UNITS_PER_PERCENT;
+
+    private Money() {}
+
+    public static long add(long amount, long other) {
+        return Math.addExact(amount, other);
+    }
+
+    public static long subtract(long amount, long other) {
+        return Math.subtractExact(amount, other);
+    }
+
+    public static long negate(long amount) {
+        return Math.negateExact(amount);
+    }
+
+    /** Whole currency units to minor units, e.g. 10 to 1000. */
+    public static long ofMajor(long units) {
+        return Math.multiplyExact(units, MINOR_PER_MAJOR);
+    }
+
+    /**
+     * Parses an amount typed by a user, e.g. "12", "12.5" or "12.50"
+     * @param text Amount in currency units with at most two decimals
+     * @return Amount in minor units
+     * @throws NumberFormatException if the text is not a number, has more than two decimals or is out of range
+     */
+    public static long parse(String text) {
+        try {
+            return new BigDecimal(text.trim()).setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Not a valid amount: " + text);
+        }
+    }
+
+    /** Formats minor units as currency units with two decimals, e.g. 1050 as "10.50". */
+    public static String format(long amount) {
+        StringBuilder sb = new StringBuilder(24);
+        if (amount < 0) {
+            sb.append('-');
+        }
+        long whole = Math.abs(amount / MINOR_PER_MAJOR);
+        int fraction = (int) Math.abs(amount % MINOR_PER_MAJOR);
+        sb.append(whole).append('.');
+        if (fraction < 10) sb.append('0');
+        return sb.append(fraction).toString();
+    }
+
+    /** Converts an annual rate in percent to ten-thousandths of a percent, e.g. 2.5 to 25000. */
+    public static long rateE4(float ratePercent) {
+        return Math.round((double) ratePercent * RATE_UNITS_PER_PERCENT);
+    }
+
+    /**
+     * Simple interest for whole months, rounded to the cent with banker's rounding (half-even)
+     * @param balance Balance in minor units
+     * @param rateE4 Annual rate in ten-thousandths of a percent (see rateE4(float))
+     * @param months Number of months
+     * @return Interest in minor units
+     */
+    public static long interest(long balance, long rateE4, int months) {
+        long numerator = Math.multiplyExact(Math.multiplyExact(balance, rateE4), (long) months);
+        return divideHalfEven(numerator, INTEREST_DIVISOR);
+    }
+
+    // Integer division rounding ties to the even quotient; divisor must be positive
+    static long divideHalfEven(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long twiceRemainder = Math.abs(dividend % divisor) * 2;
+        if (twiceRemainder > divisor || (twiceRemainder == divisor && (quotient & 1) != 0)) {
+            quotient += dividend < 0 ? -1 : 1;
+        }
+        return quotient;
+    }
+
+    // --- JDBC mapping ---
+
+    public static BigDecimal toDecimal(long amount) {
+        return BigDecimal.valueOf(amount, SCALE);
+    }
+
+    public static long fromDecimal(BigDecimal value) {
+        return value.setScale(SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    /** Binds an amount to a DECIMAL parameter. */
+    public static void bind(PreparedStatement statement, int index, long amount) throws SQLException {
+        statement.setBigDecimal(index, toDecimal(amount));
+    }
+
+    /** Reads a DECIMAL column as minor units; SQL NULL reads as 0. */
+    public static long read(ResultSet resultSet, String column) throws SQLException {
+        BigDecimal value = resultSet.getBigDecimal(column);
+        return value == null ? 0 : fromDecimal(value);
+    }
+
+    public static long read(ResultSet resultSet, int column) throws SQLException {
+        BigDecimal value = resultSet.getBigDecimal(column);
+        return value == null ? 0 : fromDecimal(value);
+    }
+}
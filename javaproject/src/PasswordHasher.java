@@ -0,0 +1,103 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * PasswordHasher stores passwords as salted PBKDF2-HMAC-SHA256 hashes in the form
+ * pbkdf2-sha256$<iterations>$<salt>$<hash> (Base64). The iteration count is the cost knob
+ * (-Dbanking.auth.pbkdf2Iterations); it is stored with each hash, so raising it only
+ * affects new hashes, and needsRehash() tells the login path which old ones to upgrade.
+ *
+ * Rows written before hashing was introduced hold the plain password. verify() still
+ * accepts them, and needsRehash() reports them so the first successful login replaces
+ * them with a hash.
+ */
+public final class PasswordHasher {
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BYTES = 32;
+    private static final int ITERATIONS = Integer.getInteger("banking.auth.pbkdf2Iterations", 600_000);
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private PasswordHasher() {}
+
+    /**
+     * Hashes a password with a fresh salt and the configured cost
+     * @param password Plain password
+     * @return Encoded hash for the Users.Password column
+     */
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] hash = derive(password, salt, ITERATIONS, HASH_BYTES);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + ITERATIONS + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(hash);
+    }
+
+    /**
+     * Checks a password against a stored value, in time independent of where they differ
+     * @param password Plain password to check
+     * @param stored Value of the Users.Password column
+     * @return true if the password matches
+     */
+    public static boolean verify(String password, String stored) {
+        if (password == null || stored == null) return false;
+        if (!stored.startsWith(PREFIX)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) return false;
+        try {
+            byte[] salt = Base64.getDecoder().decode(parts[1]);
+            byte[] expected = Base64.getDecoder().decode(parts[2]);
+            return MessageDigest.isEqual(expected, derive(password, salt, Integer.parseInt(parts[0]), expected.length));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /** True if the value is a hash produced by this class rather than a plain-text password. */
+    public static boolean isHash(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /** True for plain-text rows and for hashes made with fewer iterations than configured. */
+    public static boolean needsRehash(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) return true;
+        int end = stored.indexOf('$', PREFIX.length());
+        try {
+            return end < 0 || Integer.parseInt(stored.substring(PREFIX.length(), end)) < ITERATIONS;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Spends the same time as verifying a real hash. Used for unknown usernames, so a
+     * caller cannot tell from the response time whether the username exists.
+     */
+    public static void verifyAgainstDummy(String password) {
+        verify(password == null ? "" : password, DummyHash.VALUE);
+    }
+
+    private static final class DummyHash {
+        static final String VALUE = hash("no such user");
+    }
+
+    private static byte[] derive(String password, byte[] salt, int iterations, int bytes) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, bytes * 8);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -2,17 +2,25 @@
 // === SavingsAccount.java ===
 
 import java.sql.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class SavingsAccount {
+    private static final Log LOG = Log.get(SavingsAccount.class);
+
+    private static final Metrics.Timer CREATE_ACCOUNT = Metrics.timer("createAccount");
+    private static final Metrics.Timer DEPOSIT = Metrics.timer("deposit");
+    private static final Metrics.Timer WITHDRAW = Metrics.timer("withdraw");
+    private static final Metrics.Timer APPLY_INTEREST = Metrics.timer("applyInterest");
+
     private String savingsAccountNumber;
     private String customerName;
-    private float balance;
+    private long balance; // minor units, see Money
     private float interestRate;
     private String customerID;
 
     public SavingsAccount() { this.interestRate = 2.5f; }
 
-    public SavingsAccount(String customerName, float deposit, float rate, String customerID) {
+    public SavingsAccount(String customerName, long deposit, float rate, String customerID) {
         this.savingsAccountNumber = generateAccountNumber();
         this.customerName = customerName;
         this.balance = deposit;
@@ -20,104 +28,161 @@ public class SavingsAccount {
         this.customerID = customerID;
     }
 
-    private String generateAccountNumber() { return "SAV" + System.currentTimeMillis(); }
+    private String generateAccountNumber() { return IdGenerators.get().nextId("SAV"); }
 
     public String getSavingsAccountNumber() { return savingsAccountNumber; }
-    public float getBalance() { return balance; }
+    public long getBalance() { return balance; }
     public float getInterestRate() { return interestRate; }
     public String getCustomerID() { return customerID; }
 
+    SavingsAccount copy() {
+        SavingsAccount acc = new SavingsAccount();
+        acc.savingsAccountNumber = savingsAccountNumber;
+        acc.customerName = customerName;
+        acc.balance = balance;
+        acc.interestRate = interestRate;
+        acc.customerID = customerID;
+        return acc;
+    }
+
     public boolean createAccount() {
-        Connection con = DatabaseConnection.getConnection();
-        PreparedStatement ps = null;
-        try {
-            ps = con.prepareStatement("INSERT INTO SavingsAccount (SavingsAccountNumber, CustomerName, Balance, InterestRate, CustomerID) VALUES (?, ?, ?, ?, ?)");
-            ps.setString(1, savingsAccountNumber);
-            ps.setString(2, customerName);
-            ps.setFloat(3, balance);
-            ps.setFloat(4, interestRate);
-            ps.setString(5, customerID);
-            if (ps.executeUpdate() > 0 && balance > 0) {
-                new Transaction(balance, "Initial Deposit", null, savingsAccountNumber, customerID).recordTransaction();
-                return true;
+        return CREATE_ACCOUNT.time(this::insertAccount);
+    }
+
+    private boolean insertAccount() {
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            PreparedStatement ps = null;
+            try {
+                ps = uow.getConnection().prepareStatement("INSERT INTO SavingsAccount (SavingsAccountNumber, CustomerName, Balance, InterestRate, CustomerID) VALUES (?, ?, ?, ?, ?)");
+                ps.setString(1, savingsAccountNumber);
+                ps.setString(2, customerName);
+                Money.bind(ps, 3, balance);
+                ps.setFloat(4, interestRate);
+                ps.setString(5, customerID);
+                if (ps.executeUpdate() == 0) return false;
+            } finally {
+                DatabaseConnection.closeStatement(ps);
+            }
+            if (balance > 0) {
+                new Transaction(balance, "Initial Deposit", null, savingsAccountNumber, customerID).recordTransaction(uow.getConnection());
             }
+            uow.commit();
+            AccountCache.accountChanged(customerID);
+            return true;
         } catch (SQLException e) {
-            System.err.println("Create Savings Account Error: " + e.getMessage());
-        } finally {
-            DatabaseConnection.closeStatement(ps);
-            DatabaseConnection.closeConnection(con);
+            LOG.error("Create Savings Account Error", e);
         }
         return false;
     }
 
-    public boolean deposit(float amount) {
+    public boolean deposit(long amount) {
+        return DEPOSIT.time(() -> postDeposit(amount));
+    }
+
+    private boolean postDeposit(long amount) {
         if (amount <= 0) return false;
-        Connection con = DatabaseConnection.getConnection();
-        PreparedStatement ps = null;
-        try {
-            ps = con.prepareStatement("UPDATE SavingsAccount SET Balance = Balance + ? WHERE SavingsAccountNumber = ?");
-            ps.setFloat(1, amount);
-            ps.setString(2, savingsAccountNumber);
-            if (ps.executeUpdate() > 0) {
-                balance += amount;
-                new Transaction(amount, "Deposit", null, savingsAccountNumber, customerID).recordTransaction();
+        if (LedgerEngine.handles(savingsAccountNumber)) {
+            LedgerEngine.Result result = LedgerEngine.deposit(AccountTransfer.AccountType.SAVINGS, savingsAccountNumber, customerID, amount);
+            if (result.status() != WithdrawalResult.SUCCESS) return false;
+            balance = result.balance();
+            AccountCache.accountChanged(customerID);
+            return true;
+        }
+        Transaction txn = new Transaction(amount, "Deposit", null, savingsAccountNumber, customerID);
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            if (uow.postBalanceChange("UPDATE SavingsAccount SET Balance = Balance + ? WHERE SavingsAccountNumber = ?",
+                    txn, Money.toDecimal(amount), savingsAccountNumber) > 0) {
+                uow.commit();
+                balance = Money.add(balance, amount);
+                AccountCache.accountChanged(customerID);
                 return true;
             }
         } catch (SQLException e) {
-            System.err.println("Deposit Error: " + e.getMessage());
-        } finally {
-            DatabaseConnection.closeStatement(ps);
-            DatabaseConnection.closeConnection(con);
+            LOG.error("Deposit Error", e);
         }
         return false;
     }
 
-    public boolean withdraw(float amount) {
-        if (amount <= 0 || amount > balance) return false;
-        Connection con = DatabaseConnection.getConnection();
-        PreparedStatement ps = null;
-        try {
-            ps = con.prepareStatement("UPDATE SavingsAccount SET Balance = Balance - ? WHERE SavingsAccountNumber = ?");
-            ps.setFloat(1, amount);
-            ps.setString(2, savingsAccountNumber);
-            if (ps.executeUpdate() > 0) {
-                balance -= amount;
-                new Transaction(amount, "Withdrawal", savingsAccountNumber, null, customerID).recordTransaction();
-                return true;
+    public boolean withdraw(long amount) {
+        return withdrawChecked(amount) == WithdrawalResult.SUCCESS;
+    }
+
+    /**
+     * Withdraws with the balance check done by MySQL: the UPDATE only matches while
+     * Balance >= amount, so concurrent withdrawals from any session or node cannot
+     * overdraw the account. A zero row count means insufficient funds, or
+     * ACCOUNT_NOT_FOUND if a lookup finds the account gone.
+     */
+    public WithdrawalResult withdrawChecked(long amount) {
+        return WITHDRAW.time(() -> postWithdrawal(amount), result -> result == WithdrawalResult.SUCCESS);
+    }
+
+    private WithdrawalResult postWithdrawal(long amount) {
+        if (amount <= 0) return WithdrawalResult.INVALID_AMOUNT;
+        if (LedgerEngine.handles(savingsAccountNumber)) {
+            LedgerEngine.Result result = LedgerEngine.withdraw(AccountTransfer.AccountType.SAVINGS, savingsAccountNumber, customerID, amount);
+            if (result.status() == WithdrawalResult.SUCCESS) {
+                balance = result.balance();
+                AccountCache.accountChanged(customerID);
             }
+            return result.status();
+        }
+        Transaction txn = new Transaction(amount, "Withdrawal", savingsAccountNumber, null, customerID);
+        ReentrantLock lock = AccountLocks.lockFor(savingsAccountNumber);
+        lock.lock();
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            if (uow.postBalanceChange("UPDATE SavingsAccount SET Balance = Balance - ? WHERE SavingsAccountNumber = ? AND Balance >= ?",
+                    txn, Money.toDecimal(amount), savingsAccountNumber, Money.toDecimal(amount)) > 0) {
+                uow.commit();
+                balance = Money.subtract(balance, amount);
+                AccountCache.accountChanged(customerID);
+                return WithdrawalResult.SUCCESS;
+            }
+            return AccountTransfer.AccountType.SAVINGS.declined(uow.getConnection(), savingsAccountNumber);
         } catch (SQLException e) {
-            System.err.println("Withdraw Error: " + e.getMessage());
+            LOG.error("Withdraw Error", e);
+            return WithdrawalResult.ERROR;
         } finally {
-            DatabaseConnection.closeStatement(ps);
-            DatabaseConnection.closeConnection(con);
+            lock.unlock();
         }
-        return false;
     }
 
-    public float calculateInterest(int months) {
-        if (months <= 0) return 0.0f;
-        return (balance * interestRate * months) / (12 * 100);
+    /**
+     * Simple interest on the current balance, rounded to the cent with banker's rounding
+     * @param months Number of months
+     * @return Interest in minor units; 0 for a non-positive number of months
+     */
+    public long calculateInterest(int months) {
+        if (months <= 0) return 0;
+        return Money.interest(balance, Money.rateE4(interestRate), months);
     }
 
     public boolean applyInterest(int months) {
-        float interest = calculateInterest(months);
+        return APPLY_INTEREST.time(() -> postInterest(months));
+    }
+
+    private boolean postInterest(int months) {
+        if (LedgerEngine.handles(savingsAccountNumber)) {
+            // Computed by the engine from the balance at the moment it is credited
+            LedgerEngine.Result result = LedgerEngine.applyInterest(savingsAccountNumber, customerID, months, Money.rateE4(interestRate));
+            if (result.status() != WithdrawalResult.SUCCESS) return false;
+            balance = result.balance();
+            AccountCache.accountChanged(customerID);
+            return true;
+        }
+        long interest = calculateInterest(months);
         if (interest <= 0) return false;
-        Connection con = DatabaseConnection.getConnection();
-        PreparedStatement ps = null;
-        try {
-            ps = con.prepareStatement("UPDATE SavingsAccount SET Balance = Balance + ? WHERE SavingsAccountNumber = ?");
-            ps.setFloat(1, interest);
-            ps.setString(2, savingsAccountNumber);
-            if (ps.executeUpdate() > 0) {
-                balance += interest;
-                new Transaction(interest, "Interest Credit", null, savingsAccountNumber, customerID).recordTransaction();
+        Transaction txn = new Transaction(interest, "Interest Credit", null, savingsAccountNumber, customerID);
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            if (uow.postBalanceChange("UPDATE SavingsAccount SET Balance = Balance + ? WHERE SavingsAccountNumber = ?",
+                    txn, Money.toDecimal(interest), savingsAccountNumber) > 0) {
+                uow.commit();
+                balance = Money.add(balance, interest);
+                AccountCache.accountChanged(customerID);
                 return true;
             }
         } catch (SQLException e) {
-            System.err.println("Apply Interest Error: " + e.getMessage());
-        } finally {
-            DatabaseConnection.closeStatement(ps);
-            DatabaseConnection.closeConnection(con);
+            LOG.error("Apply Interest Error", e);
         }
         return false;
     }
@@ -131,10 +196,11 @@ public class SavingsAccount {
             ps.setString(1, savingsAccountNumber);
             rs = ps.executeQuery();
             if (rs.next()) {
-                balance = rs.getFloat("Balance");
+                balance = LedgerEngine.balanceOf(AccountTransfer.AccountType.SAVINGS, savingsAccountNumber, customerID,
+                        Money.read(rs, "Balance"));
             }
         } catch (SQLException e) {
-            System.err.println("Balance Refresh Error: " + e.getMessage());
+            LOG.error("Balance Refresh Error", e);
         } finally {
             DatabaseConnection.closeResultSet(rs);
             DatabaseConnection.closeStatement(ps);
@@ -154,13 +220,15 @@ public class SavingsAccount {
                 SavingsAccount acc = new SavingsAccount();
                 acc.setSavingsAccountNumber(rs.getString("SavingsAccountNumber"));
                 acc.setCustomerName(rs.getString("CustomerName"));
-                acc.setBalance(rs.getFloat("Balance"));
                 acc.setInterestRate(rs.getFloat("InterestRate"));
                 acc.setCustomerID(rs.getString("CustomerID"));
+                // MySQL trails the ledger engine, when it runs
+                acc.setBalance(LedgerEngine.balanceOf(AccountTransfer.AccountType.SAVINGS, acc.getSavingsAccountNumber(),
+                        acc.getCustomerID(), Money.read(rs, "Balance")));
                 return acc;
             }
         } catch (SQLException e) {
-            System.err.println("Fetch Savings Account Error: " + e.getMessage());
+            LOG.error("Fetch Savings Account Error", e);
         } finally {
             DatabaseConnection.closeResultSet(rs);
             DatabaseConnection.closeStatement(ps);
@@ -171,7 +239,7 @@ public class SavingsAccount {
 
     public void setSavingsAccountNumber(String savingsAccountNumber) { this.savingsAccountNumber = savingsAccountNumber; }
     public void setCustomerName(String customerName) { this.customerName = customerName; }
-    public void setBalance(float balance) { this.balance = balance; }
+    public void setBalance(long balance) { this.balance = balance; }
     public void setInterestRate(float interestRate) { this.interestRate = interestRate; }
     public void setCustomerID(String customerID) { this.customerID = customerID; }
 
@@ -180,7 +248,7 @@ public class SavingsAccount {
         return "SavingsAccount{" +
                 "accountNumber='" + savingsAccountNumber + '\'' +
                 ", customerName='" + customerName + '\'' +
-                ", balance=" + balance +
+                ", balance=" + Money.format(balance) +
                 ", interestRate=" + interestRate +
                 ", customerID='" + customerID + '\'' +
                 '}';
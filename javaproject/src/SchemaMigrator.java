@@ -0,0 +1,341 @@
+import java.sql.*;
+import java.util.List;
+
+/**
+ * SchemaMigrator brings the database schema up to LATEST_VERSION. Applied versions are
+ * recorded in the SchemaVersion table, so once a database is current, startup costs a single
+ * SELECT instead of re-running every CREATE TABLE.
+ *
+ * Each migration is written to be safe to re-run: MySQL DDL is not transactional, so a
+ * migration interrupted half way is simply applied again on the next start. Instances
+ * starting at the same time serialize on a MySQL named lock.
+ */
+public class SchemaMigrator {
+    private static final Log LOG = Log.get(SchemaMigrator.class);
+
+    private static final int BACKFILL_CHUNK_SIZE = 5_000;
+    private static final String LOCK_NAME = "banking_system_schema_migration";
+
+    private interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Baseline tables", DatabaseConnection::createBaselineTables),
+            new Migration(2, "DECIMAL money columns", SchemaMigrator::decimalMoneyColumns),
+            new Migration(3, "Transactions.TransactionTimestamp with backfill", SchemaMigrator::transactionTimestamp),
+            new Migration(4, "Customer history indexes", SchemaMigrator::customerIndexes),
+            new Migration(5, "Interest run checkpoint tables", SchemaMigrator::interestRunTables),
+            new Migration(6, "Users.Password sized for password hashes", SchemaMigrator::passwordHashColumn),
+            new Migration(7, "Bulk import checkpoint tables", SchemaMigrator::importTables),
+            new Migration(8, "Ledger engine sink position table", SchemaMigrator::ledgerSinkTable),
+            new Migration(9, "Daily account rollup table", SchemaMigrator::dailyRollupTable)
+    );
+
+    public static final int LATEST_VERSION = MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+
+    private SchemaMigrator() {}
+
+    /**
+     * Applies every migration newer than the database's recorded version
+     * @param connection Connection in autocommit mode
+     * @return Number of migrations applied; 0 when the schema was already current
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        if (currentVersion(connection) >= LATEST_VERSION) {
+            return 0;
+        }
+
+        execute(connection, """
+            CREATE TABLE IF NOT EXISTS SchemaVersion (
+                Version INT PRIMARY KEY,
+                Description VARCHAR(200) NOT NULL,
+                AppliedAt DATETIME NOT NULL
+            )
+        """);
+
+        acquireLock(connection);
+        try {
+            // Another instance may have finished the work while we waited for the lock
+            int current = currentVersion(connection);
+            int applied = 0;
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= current) continue;
+                LOG.info("Applying schema migration {}: {}", migration.version, migration.description);
+                migration.step.apply(connection);
+                recordVersion(connection, migration);
+                applied++;
+            }
+            return applied;
+        } finally {
+            releaseLock(connection);
+        }
+    }
+
+    /** Returns the highest applied version, or 0 if migrations have never run. */
+    public static int currentVersion(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery("SELECT MAX(Version) FROM SchemaVersion");
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        } catch (SQLException e) {
+            if (e.getErrorCode() == 1146) { // ER_NO_SUCH_TABLE
+                return 0;
+            }
+            throw e;
+        } finally {
+            statement.close();
+        }
+    }
+
+    // --- Migrations ---
+
+    private static void decimalMoneyColumns(Connection connection) throws SQLException {
+        execute(connection, "ALTER TABLE CheckingAccount MODIFY Balance DECIMAL(19,2) NOT NULL DEFAULT 0.00");
+        execute(connection, "ALTER TABLE SavingsAccount MODIFY Balance DECIMAL(19,2) NOT NULL DEFAULT 0.00, " +
+                "MODIFY InterestRate DECIMAL(7,4) NOT NULL DEFAULT 2.5000");
+        execute(connection, "ALTER TABLE Transactions MODIFY TransactionAmount DECIMAL(19,2) NOT NULL");
+    }
+
+    private static void transactionTimestamp(Connection connection) throws SQLException {
+        if (!columnExists(connection, "Transactions", "TransactionTimestamp")) {
+            // Nullable so the column can be added in place while old writers are still running
+            execute(connection, "ALTER TABLE Transactions ADD COLUMN TransactionTimestamp DATETIME NULL");
+        }
+
+        // Backfill in primary-key chunks, each its own short autocommit statement,
+        // so the table stays writable and no long transaction builds up undo
+        String fill = "UPDATE Transactions SET TransactionTimestamp = " +
+                "STR_TO_DATE(CONCAT(TransactionDate, ' ', TransactionTime), '%Y-%m-%d %H:%i:%s') " +
+                "WHERE TransactionTimestamp IS NULL AND TransactionNumber > ? AND TransactionNumber <= ?";
+        String lastKey = "";
+        long filled = 0;
+        while (true) {
+            String chunkEnd = chunkEnd(connection, lastKey);
+            if (chunkEnd == null) break;
+            filled += executeUpdate(connection, fill, lastKey, chunkEnd);
+            lastKey = chunkEnd;
+        }
+        // Rows inserted by writers that did not know about the column yet
+        filled += executeUpdate(connection, "UPDATE Transactions SET TransactionTimestamp = " +
+                "STR_TO_DATE(CONCAT(TransactionDate, ' ', TransactionTime), '%Y-%m-%d %H:%i:%s') " +
+                "WHERE TransactionTimestamp IS NULL");
+        LOG.info("Backfilled TransactionTimestamp on {} transactions", filled);
+    }
+
+    private static void customerIndexes(Connection connection) throws SQLException {
+        createIndexIfMissing(connection, "Transactions", "idx_transactions_customer_time",
+                "CustomerID, TransactionTimestamp, TransactionNumber");
+        createIndexIfMissing(connection, "CheckingAccount", "idx_checking_customer", "CustomerID");
+        createIndexIfMissing(connection, "SavingsAccount", "idx_savings_customer", "CustomerID");
+    }
+
+    private static void interestRunTables(Connection connection) throws SQLException {
+        execute(connection, """
+            CREATE TABLE IF NOT EXISTS InterestRun (
+                RunID VARCHAR(50) PRIMARY KEY,
+                Months INT NOT NULL,
+                Status VARCHAR(20) NOT NULL,
+                CreatedAt DATETIME NOT NULL,
+                CompletedAt DATETIME NULL
+            )
+        """);
+        execute(connection, """
+            CREATE TABLE IF NOT EXISTS InterestRunChunk (
+                RunID VARCHAR(50) NOT NULL,
+                ChunkNo INT NOT NULL,
+                StartAfter VARCHAR(50) NOT NULL,
+                EndAt VARCHAR(50) NOT NULL,
+                Status VARCHAR(20) NOT NULL,
+                Accounts INT NULL,
+                InterestCents BIGINT NULL,
+                CompletedAt DATETIME NULL,
+                PRIMARY KEY (RunID, ChunkNo),
+                FOREIGN KEY (RunID) REFERENCES InterestRun(RunID)
+            )
+        """);
+    }
+
+    private static void passwordHashColumn(Connection connection) throws SQLException {
+        // Existing plain-text passwords stay as they are until each user's next login rehashes them
+        execute(connection, "ALTER TABLE Users MODIFY Password VARCHAR(255) NOT NULL");
+    }
+
+    private static void importTables(Connection connection) throws SQLException {
+        execute(connection, """
+            CREATE TABLE IF NOT EXISTS ImportRun (
+                ImportID VARCHAR(50) PRIMARY KEY,
+                Source VARCHAR(255) NOT NULL,
+                BatchSize INT NOT NULL,
+                Status VARCHAR(20) NOT NULL,
+                CreatedAt DATETIME NOT NULL,
+                CompletedAt DATETIME NULL
+            )
+        """);
+        execute(connection, """
+            CREATE TABLE IF NOT EXISTS ImportBatch (
+                ImportID VARCHAR(50) NOT NULL,
+                BatchNo INT NOT NULL,
+                FirstLine BIGINT NOT NULL,
+                LineCount INT NOT NULL,
+                Customers INT NOT NULL,
+                Accounts INT NOT NULL,
+                Rejected INT NOT NULL,
+                CompletedAt DATETIME NOT NULL,
+                PRIMARY KEY (ImportID, BatchNo),
+                FOREIGN KEY (ImportID) REFERENCES ImportRun(ImportID)
+            )
+        """);
+        execute(connection, """
+            CREATE TABLE IF NOT EXISTS ImportReject (
+                ImportID VARCHAR(50) NOT NULL,
+                LineNo BIGINT NOT NULL,
+                Reason VARCHAR(200) NOT NULL,
+                RawLine TEXT NOT NULL,
+                PRIMARY KEY (ImportID, LineNo),
+                FOREIGN KEY (ImportID) REFERENCES ImportRun(ImportID)
+            )
+        """);
+    }
+
+    private static void ledgerSinkTable(Connection connection) throws SQLException {
+        execute(connection, """
+            CREATE TABLE IF NOT EXISTS LedgerSinkPosition (
+                PartitionNo INT PRIMARY KEY,
+                LastSequence BIGINT NOT NULL,
+                UpdatedAt DATETIME NOT NULL
+            )
+        """);
+    }
+
+    // Filled as postings are made; existing history is added by running DailyRollup once
+    private static void dailyRollupTable(Connection connection) throws SQLException {
+        execute(connection, """
+            CREATE TABLE IF NOT EXISTS DailyAccountRollup (
+                AccountNumber VARCHAR(50) NOT NULL,
+                RollupDate DATE NOT NULL,
+                CustomerID VARCHAR(50) NOT NULL,
+                OpeningBalance DECIMAL(19,2) NOT NULL,
+                ClosingBalance DECIMAL(19,2) NOT NULL,
+                DepositTotal DECIMAL(19,2) NOT NULL,
+                DepositCount INT NOT NULL,
+                WithdrawalTotal DECIMAL(19,2) NOT NULL,
+                WithdrawalCount INT NOT NULL,
+                InterestTotal DECIMAL(19,2) NOT NULL,
+                InterestCount INT NOT NULL,
+                TransferInTotal DECIMAL(19,2) NOT NULL,
+                TransferInCount INT NOT NULL,
+                TransferOutTotal DECIMAL(19,2) NOT NULL,
+                TransferOutCount INT NOT NULL,
+                PRIMARY KEY (AccountNumber, RollupDate)
+            )
+        """);
+        createIndexIfMissing(connection, "DailyAccountRollup", "idx_rollup_customer", "CustomerID, RollupDate");
+    }
+
+    // --- Helpers ---
+
+    // Last primary key of the next BACKFILL_CHUNK_SIZE rows after lastKey, or the table's
+    // final key if fewer remain; null once there is nothing after lastKey
+    private static String chunkEnd(Connection connection, String lastKey) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(
+                "SELECT MAX(TransactionNumber) FROM (SELECT TransactionNumber FROM Transactions " +
+                "WHERE TransactionNumber > ? ORDER BY TransactionNumber LIMIT " + BACKFILL_CHUNK_SIZE + ") chunk");
+        try {
+            statement.setString(1, lastKey);
+            ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getString(1) : null;
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static boolean columnExists(Connection connection, String table, String column) throws SQLException {
+        return exists(connection, "SELECT 1 FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE() " +
+                "AND TABLE_NAME = ? AND COLUMN_NAME = ?", table, column);
+    }
+
+    private static void createIndexIfMissing(Connection connection, String table, String index, String columns) throws SQLException {
+        if (!exists(connection, "SELECT 1 FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE() " +
+                "AND TABLE_NAME = ? AND INDEX_NAME = ?", table, index)) {
+            execute(connection, "CREATE INDEX " + index + " ON " + table + " (" + columns + ") ALGORITHM=INPLACE LOCK=NONE");
+        }
+    }
+
+    private static boolean exists(Connection connection, String query, String... params) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(query);
+        try {
+            for (int i = 0; i < params.length; i++) {
+                statement.setString(i + 1, params[i]);
+            }
+            return statement.executeQuery().next();
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static void recordVersion(Connection connection, Migration migration) throws SQLException {
+        executeUpdate(connection, "INSERT INTO SchemaVersion (Version, Description, AppliedAt) VALUES (?, ?, NOW())",
+                migration.version, migration.description);
+    }
+
+    private static void acquireLock(Connection connection) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, 300)");
+        try {
+            statement.setString(1, LOCK_NAME);
+            ResultSet resultSet = statement.executeQuery();
+            if (!resultSet.next() || resultSet.getInt(1) != 1) {
+                throw new SQLException("Timed out waiting for the schema migration lock");
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static void releaseLock(Connection connection) {
+        try {
+            PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)");
+            try {
+                statement.setString(1, LOCK_NAME);
+                statement.executeQuery();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            LOG.warn("Error releasing schema migration lock", e);
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static int executeUpdate(Connection connection, String sql, Object... params) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try {
+            for (int i = 0; i < params.length; i++) {
+                statement.setObject(i + 1, params[i]);
+            }
+            return statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Thrown by AccountService when a request cannot be carried out. The reason tells the
+ * caller (console or HTTP front end) how to report it.
+ */
+public class ServiceException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        /** No session, or the session expired. */
+        UNAUTHORIZED,
+        /** Missing or malformed input. */
+        INVALID_REQUEST,
+        /** The customer has no such account. */
+        NOT_FOUND,
+        /** The request clashes with existing data, e.g. a taken username. */
+        CONFLICT,
+        INSUFFICIENT_FUNDS,
+        /** A bounded resource (login workers, sessions) is saturated; retry later. */
+        BUSY,
+        /** The database operation failed. */
+        FAILED
+    }
+
+    private final Reason reason;
+
+    public ServiceException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
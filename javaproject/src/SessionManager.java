@@ -0,0 +1,81 @@
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SessionManager issues short-lived session tokens after a successful login, so later
+ * requests are authorized with a map lookup instead of another password hash. A token
+ * expires after `banking.session.ttlMs` without use (15 minutes by default), and each use
+ * pushes the expiry back. Tokens are 256-bit random values and live only in this process.
+ */
+public final class SessionManager {
+
+    private static final long TTL_MILLIS = Long.getLong("banking.session.ttlMs", 15 * 60_000L);
+    private static final int MAX_SESSIONS = Integer.getInteger("banking.session.maxSessions", 100_000);
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final ConcurrentHashMap<String, Session> SESSIONS = new ConcurrentHashMap<>();
+    private static final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis());
+
+    private static final class Session {
+        final User user;
+        volatile long expiresAt;
+
+        Session(User user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private SessionManager() {}
+
+    /**
+     * Starts a session for an authenticated user
+     * @param user User returned by User.authenticateUser()
+     * @return Session token
+     * @throws IllegalStateException if banking.session.maxSessions sessions are active
+     */
+    public static String issue(User user) {
+        long now = System.currentTimeMillis();
+        long last = lastSweep.get();
+        if ((now - last > TTL_MILLIS / 2 || SESSIONS.size() >= MAX_SESSIONS) && lastSweep.compareAndSet(last, now)) {
+            SESSIONS.values().removeIf(session -> session.expiresAt < now);
+        }
+        if (SESSIONS.size() >= MAX_SESSIONS) {
+            throw new IllegalStateException("Too many active sessions");
+        }
+
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        SESSIONS.put(token, new Session(user, now + TTL_MILLIS));
+        return token;
+    }
+
+    /**
+     * Looks up a session and extends it
+     * @param token Token from issue()
+     * @return The session's user, or null if the token is unknown or expired
+     */
+    public static User resolve(String token) {
+        if (token == null) return null;
+        Session session = SESSIONS.get(token);
+        if (session == null) return null;
+        long now = System.currentTimeMillis();
+        if (session.expiresAt < now) {
+            SESSIONS.remove(token, session);
+            return null;
+        }
+        session.expiresAt = now + TTL_MILLIS;
+        return session.user;
+    }
+
+    public static void revoke(String token) {
+        if (token != null) SESSIONS.remove(token);
+    }
+
+    public static int size() {
+        return SESSIONS.size();
+    }
+}
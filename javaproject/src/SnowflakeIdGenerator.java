@@ -0,0 +1,92 @@
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake-style ID generator: 41 bits of milliseconds since 2015-01-01, 10 bits of node ID
+ * and 12 bits of per-millisecond sequence. IDs from one node strictly increase, so inserts
+ * into VARCHAR primary keys stay append-only, and nodes with different IDs never collide.
+ *
+ * Generation is lock-free: the last timestamp and sequence live in one AtomicLong updated
+ * with compare-and-set. When a millisecond's 4096 sequence values run out, or the clock
+ * steps backwards, the generator borrows the next millisecond rather than blocking, and
+ * only spins if it gets more than MAX_DRIFT_MS ahead of the wall clock.
+ *
+ * Each BankingSystem instance sharing a database must run with a distinct
+ * -Dbanking.node.id (0-1023). Without it the node ID is derived from host name and PID.
+ */
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    public static final long EPOCH_MILLIS = 1420070400000L; // 2015-01-01T00:00:00Z
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final long MAX_DRIFT_MS = 50;
+
+    private final long nodeBits;
+    // (millis since epoch << SEQUENCE_BITS) | sequence of the last ID handed out
+    private final AtomicLong lastState = new AtomicLong();
+
+    /**
+     * @param nodeId Node ID in the range 0-1023, unique per running instance
+     */
+    public SnowflakeIdGenerator(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node ID must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeBits = nodeId << SEQUENCE_BITS;
+    }
+
+    public static SnowflakeIdGenerator fromSystemProperties() {
+        Long configured = Long.getLong("banking.node.id");
+        return new SnowflakeIdGenerator(configured != null ? configured : defaultNodeId());
+    }
+
+    @Override
+    public long nextId() {
+        while (true) {
+            long last = lastState.get();
+            long lastMillis = last >>> SEQUENCE_BITS;
+            long now = System.currentTimeMillis() - EPOCH_MILLIS;
+
+            long next;
+            if (now > lastMillis) {
+                next = now << SEQUENCE_BITS;
+            } else if ((last & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = last + 1;
+            } else if (lastMillis - now < MAX_DRIFT_MS) {
+                next = (lastMillis + 1) << SEQUENCE_BITS;
+            } else {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            if (lastState.compareAndSet(last, next)) {
+                long millis = next >>> SEQUENCE_BITS;
+                return (millis << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    public long getNodeId() {
+        return nodeBits >>> SEQUENCE_BITS;
+    }
+
+    /** Extracts the wall-clock creation time (epoch millis) from an ID. */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    private static long defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "localhost";
+        }
+        String runtime = ManagementFactory.getRuntimeMXBean().getName(); // "pid@host"
+        return ((host.hashCode() * 31L) ^ runtime.hashCode() ^ ProcessHandle.current().pid()) & MAX_NODE_ID;
+    }
+}
@@ -0,0 +1,343 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * StatementProfiler wraps the connections handed out by DatabaseConnection, and the
+ * statements and result sets made from them, to measure every SQL statement the
+ * application runs. Statistics are kept per normalized SQL: literals become "?" and IN
+ * lists of any length become "(?...)", so the same query built for different inputs is
+ * counted once. For each statement it keeps call and error counts, execution time (total,
+ * max and percentiles), rows read or changed, and an estimate of the bytes fetched.
+ *
+ * Any execution slower than banking.profiler.slowMs (200) is appended to the slow-query
+ * log (banking.profiler.slowLog, slow-queries.log) with its bind parameters. Parameters of
+ * statements that mention a password column are written as "?".
+ *
+ * Profiling is off unless -Dbanking.profiler.enabled=true, because every JDBC call then
+ * goes through a proxy. report() lists the statements by total time; BankingHttpServer
+ * serves it at /metrics/sql, and it is printed when the JVM exits.
+ */
+public final class StatementProfiler {
+    private static final Log LOG = Log.get(StatementProfiler.class);
+
+    private static final boolean ENABLED = Boolean.getBoolean("banking.profiler.enabled");
+    private static final long SLOW_NANOS = Long.getLong("banking.profiler.slowMs", 200L) * 1_000_000L;
+    private static final Path SLOW_LOG = Paths.get(System.getProperty("banking.profiler.slowLog", "slow-queries.log"));
+    private static final int MAX_STATEMENTS = 2_000;
+    private static final int MAX_LOGGED_VALUE = 100;
+    private static final String OTHER = "(other statements)";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern VALUES_LIST = Pattern.compile("\\(\\?\\.\\.\\.\\)(?:\\s*,\\s*\\(\\?\\.\\.\\.\\))+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Map<String, SqlStats> STATS = new ConcurrentHashMap<>();
+    // Normalizing takes a few regex passes, so each distinct SQL text is normalized once
+    private static final Map<String, String> NORMALIZED = new ConcurrentHashMap<>();
+    private static final ReentrantLock SLOW_LOG_LOCK = new ReentrantLock();
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                if (!STATS.isEmpty()) System.out.print(report(50));
+            }, "statement-profiler-report"));
+        }
+    }
+
+    private StatementProfiler() {}
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /** Wraps a connection so that every statement made from it is profiled. */
+    public static Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new ProfiledConnection(connection));
+    }
+
+    /** Counters for one normalized statement. */
+    private static final class SqlStats {
+        final String sql;
+        final LatencyHistogram time = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+
+        SqlStats(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    private static SqlStats statsFor(String sql) {
+        String normalized = normalize(sql);
+        SqlStats stats = STATS.get(normalized);
+        if (stats != null) return stats;
+        // Bounded, in case some caller builds SQL with values the normalizer cannot strip
+        String key = STATS.size() < MAX_STATEMENTS ? normalized : OTHER;
+        return STATS.computeIfAbsent(key, SqlStats::new);
+    }
+
+    /** The SQL with literals replaced by "?" and placeholder lists collapsed. */
+    static String normalize(String sql) {
+        String normalized = NORMALIZED.get(sql);
+        if (normalized != null) return normalized;
+        normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+        normalized = PLACEHOLDER_LIST.matcher(normalized).replaceAll("(?...)");
+        normalized = VALUES_LIST.matcher(normalized).replaceAll("(?...)...");
+        if (NORMALIZED.size() < MAX_STATEMENTS * 4) {
+            NORMALIZED.put(sql, normalized);
+        }
+        return normalized;
+    }
+
+    /**
+     * Profile of every statement seen so far, slowest in total first
+     * @param limit Maximum number of statements listed
+     */
+    public static String report(int limit) {
+        List<SqlStats> all = new ArrayList<>(STATS.values());
+        Map<SqlStats, LatencyHistogram.Snapshot> snapshots = new HashMap<>();
+        for (SqlStats stats : all) snapshots.put(stats, stats.time.snapshot());
+        all.sort(Comparator.comparingLong((SqlStats s) -> snapshots.get(s).getSum()).reversed());
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%9s %7s %10s %9s %9s %9s %9s %10s %12s  %s%n",
+                "calls", "errors", "total ms", "mean ms", "p50 ms", "p99 ms", "max ms", "rows", "bytes", "sql"));
+        for (SqlStats stats : all.subList(0, Math.min(limit, all.size()))) {
+            LatencyHistogram.Snapshot s = snapshots.get(stats);
+            sb.append(String.format("%9d %7d %10.1f %9.3f %9.3f %9.3f %9.3f %10d %12d  %s%n",
+                    s.getCount(), stats.errors.sum(), s.getSum() / 1e6, s.getMean() / 1e6,
+                    s.getValueAtPercentile(50) / 1e6, s.getValueAtPercentile(99) / 1e6, s.getMax() / 1e6,
+                    stats.rows.sum(), stats.bytes.sum(), stats.sql));
+        }
+        return sb.toString();
+    }
+
+    private static void logSlow(String sql, long nanos, Object[] params, int batchSize, boolean failed) {
+        StringBuilder line = new StringBuilder(256);
+        line.append(LocalDateTime.now()).append(' ').append(String.format("%.1f", nanos / 1e6)).append(" ms");
+        if (failed) line.append(" FAILED");
+        if (batchSize > 0) line.append(" batch=").append(batchSize);
+        line.append(" | ").append(WHITESPACE.matcher(sql).replaceAll(" ").trim());
+        if (params != null) {
+            boolean redact = sql.toLowerCase(Locale.ROOT).contains("password");
+            line.append(" | params=[");
+            for (int i = 1; i < params.length; i++) {
+                if (i > 1) line.append(", ");
+                line.append(redact ? "?" : describe(params[i]));
+            }
+            line.append(']');
+        }
+        line.append(System.lineSeparator());
+
+        SLOW_LOG_LOCK.lock();
+        try (BufferedWriter out = Files.newBufferedWriter(SLOW_LOG, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(line.toString());
+        } catch (IOException e) {
+            LOG.warn("Could not write slow-query log: {}", e.getMessage());
+        } finally {
+            SLOW_LOG_LOCK.unlock();
+        }
+    }
+
+    private static String describe(Object value) {
+        if (value == null) return "NULL";
+        if (value instanceof String s) {
+            String shown = s.length() > MAX_LOGGED_VALUE ? s.substring(0, MAX_LOGGED_VALUE) + "..." : s;
+            return "'" + shown.replace("'", "''") + "'";
+        }
+        if (value instanceof byte[] b) return "<" + b.length + " bytes>";
+        if (value instanceof java.io.InputStream || value instanceof java.io.Reader) return "<stream>";
+        return value.toString();
+    }
+
+    // Rough size of a fetched value, for the bytes column
+    private static long sizeOf(Object value) {
+        if (value == null) return 0;
+        if (value instanceof String s) return s.length();
+        if (value instanceof byte[] b) return b.length;
+        if (value instanceof BigDecimal d) return d.unscaledValue().bitLength() / 8 + 1;
+        if (value instanceof Boolean || value instanceof Byte) return 1;
+        if (value instanceof Short) return 2;
+        if (value instanceof Integer || value instanceof Float) return 4;
+        return 8;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class ProfiledConnection implements InvocationHandler {
+        private final Connection connection;
+
+        ProfiledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals")) return proxy == args[0];
+            if (name.equals("hashCode")) return System.identityHashCode(proxy);
+            Object result = StatementProfiler.invoke(connection, method, args);
+            if (result instanceof Statement statement
+                    && (name.equals("createStatement") || name.equals("prepareStatement") || name.equals("prepareCall"))) {
+                String sql = name.equals("createStatement") ? null : (String) args[0];
+                return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { method.getReturnType() },
+                        new ProfiledStatement(statement, sql, (Connection) proxy));
+            }
+            return result;
+        }
+    }
+
+    private static final class ProfiledStatement implements InvocationHandler {
+        private final Statement statement;
+        private final String preparedSql;
+        private final SqlStats preparedStats;
+        private final Connection connection;
+        private Object[] params;
+        private int highestParam;
+        private int batchSize;
+        private String batchSql;
+        private SqlStats lastStats;
+
+        ProfiledStatement(Statement statement, String preparedSql, Connection connection) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+            this.preparedStats = preparedSql == null ? null : statsFor(preparedSql);
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(proxy, method, args);
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                bind(index, name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                params = null;
+                highestParam = 0;
+            } else if (name.equals("addBatch")) {
+                batchSize++;
+                if (args != null && args.length == 1) batchSql = (String) args[0];
+            } else if (name.equals("clearBatch")) {
+                batchSize = 0;
+            } else if (name.equals("getConnection")) {
+                return connection;
+            }
+            Object result = StatementProfiler.invoke(statement, method, args);
+            if (result instanceof ResultSet resultSet && name.equals("getResultSet")) {
+                return wrapResultSet(resultSet, lastStats != null ? lastStats : currentStats(args));
+            }
+            return result;
+        }
+
+        private void bind(int index, Object value) {
+            if (index < 1) return;
+            if (params == null || params.length <= index) {
+                params = Arrays.copyOf(params == null ? new Object[0] : params, Math.max(index + 1, 8));
+            }
+            params[index] = value;
+            highestParam = Math.max(highestParam, index);
+        }
+
+        // Statement.execute(sql) names its SQL; prepared statements were given theirs up front
+        private SqlStats currentStats(Object[] args) {
+            if (args != null && args.length > 0 && args[0] instanceof String sql) return statsFor(sql);
+            if (preparedStats != null) return preparedStats;
+            return statsFor(batchSql != null ? batchSql : "(unknown)");
+        }
+
+        private Object execute(Object proxy, Method method, Object[] args) throws Throwable {
+            SqlStats stats = currentStats(args);
+            lastStats = stats;
+            String sql = args != null && args.length > 0 && args[0] instanceof String s ? s
+                    : preparedSql != null ? preparedSql : batchSql;
+            int batch = method.getName().contains("Batch") ? batchSize : 0;
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = StatementProfiler.invoke(statement, method, args);
+                failed = false;
+                if (result instanceof ResultSet resultSet) {
+                    return wrapResultSet(resultSet, stats);
+                }
+                if (result instanceof Integer count) {
+                    if (count > 0) stats.rows.add(count);
+                } else if (result instanceof Long count) {
+                    if (count > 0) stats.rows.add(count);
+                } else if (result instanceof int[] counts) {
+                    for (int count : counts) if (count > 0) stats.rows.add(count);
+                } else if (result instanceof long[] counts) {
+                    for (long count : counts) if (count > 0) stats.rows.add(count);
+                }
+                return result;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                stats.time.record(elapsed);
+                if (failed) stats.errors.increment();
+                if (batch > 0) batchSize = 0;
+                if (elapsed >= SLOW_NANOS) {
+                    logSlow(sql == null ? "(unknown)" : sql, elapsed,
+                            params == null ? null : Arrays.copyOf(params, highestParam + 1), batch, failed);
+                }
+            }
+        }
+    }
+
+    private static ResultSet wrapResultSet(ResultSet resultSet, SqlStats stats) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, new ProfiledResultSet(resultSet, stats));
+    }
+
+    private static final class ProfiledResultSet implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final SqlStats stats;
+
+        ProfiledResultSet(ResultSet resultSet, SqlStats stats) {
+            this.resultSet = resultSet;
+            this.stats = stats;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = StatementProfiler.invoke(resultSet, method, args);
+            String name = method.getName();
+            if (name.equals("next")) {
+                if (Boolean.TRUE.equals(result)) stats.rows.increment();
+            } else if (name.startsWith("get") && args != null && args.length > 0) {
+                stats.bytes.add(sizeOf(result));
+            }
+            return result;
+        }
+    }
+}
@@ -1,53 +1,85 @@
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Transaction {
+    private static final Log LOG = Log.get(Transaction.class);
 
     private String transactionNumber;
-    private float transactionAmount;
+    private long transactionAmount; // minor units, see Money
     private String transactionType;
     private String transactionTime;
     private String transactionDate;
     private String fromAccount;
     private String toAccount;
     private String customerID;
+    private LocalDateTime transactionTimestamp;
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private static final Metrics.Timer RECORD = Metrics.timer("recordTransaction");
+    private static final Metrics.Timer HISTORY = Metrics.timer("history");
 
     public Transaction() {
         this.transactionNumber = generateTransactionNumber();
-        this.transactionTime = getCurrentTime();
-        this.transactionDate = getCurrentDate();
+        setTimestamp(LocalDateTime.now());
     }
 
-    public Transaction(float transactionAmount, String transactionType,
+    // For rows read back from the database: skips ID generation and clock reads
+    private Transaction(String transactionNumber) {
+        this.transactionNumber = transactionNumber;
+    }
+
+    public Transaction(long transactionAmount, String transactionType,
                        String fromAccount, String toAccount, String customerID) {
         this.transactionNumber = generateTransactionNumber();
         this.transactionAmount = transactionAmount;
         this.transactionType = transactionType;
-        this.transactionTime = getCurrentTime();
-        this.transactionDate = getCurrentDate();
+        setTimestamp(LocalDateTime.now());
         this.fromAccount = fromAccount;
         this.toAccount = toAccount;
         this.customerID = customerID;
     }
 
+    /** Stands in for the last row of a page when only its paging key is known, e.g. from an HTTP cursor. */
+    static Transaction pageCursor(String transactionNumber, LocalDateTime timestamp) {
+        Transaction cursor = new Transaction(transactionNumber);
+        cursor.transactionTimestamp = timestamp;
+        return cursor;
+    }
+
+    /** Rebuilds a row that was created earlier, e.g. from LedgerEngine's write-ahead log. */
+    static Transaction restore(String transactionNumber, long transactionAmount, String transactionType,
+                               String fromAccount, String toAccount, String customerID, LocalDateTime timestamp) {
+        Transaction t = new Transaction(transactionNumber);
+        t.transactionAmount = transactionAmount;
+        t.transactionType = transactionType;
+        t.fromAccount = fromAccount;
+        t.toAccount = toAccount;
+        t.customerID = customerID;
+        t.setTimestamp(timestamp);
+        return t;
+    }
+
     // Getters and Setters
     public String getTransactionNumber() { return transactionNumber; }
     public void setTransactionNumber(String transactionNumber) { this.transactionNumber = transactionNumber; }
 
-    public float getTransactionAmount() { return transactionAmount; }
-    public void setTransactionAmount(float transactionAmount) { this.transactionAmount = transactionAmount; }
+    public long getTransactionAmount() { return transactionAmount; }
+    public void setTransactionAmount(long transactionAmount) { this.transactionAmount = transactionAmount; }
 
     public String getTransactionType() { return transactionType; }
     public void setTransactionType(String transactionType) { this.transactionType = transactionType; }
 
     public String getTransactionTime() { return transactionTime; }
-    public void setTransactionTime(String transactionTime) { this.transactionTime = transactionTime; }
+    public void setTransactionTime(String transactionTime) { this.transactionTime = transactionTime; this.transactionTimestamp = null; }
 
     public String getTransactionDate() { return transactionDate; }
-    public void setTransactionDate(String transactionDate) { this.transactionDate = transactionDate; }
+    public void setTransactionDate(String transactionDate) { this.transactionDate = transactionDate; this.transactionTimestamp = null; }
 
     public String getFromAccount() { return fromAccount; }
     public void setFromAccount(String fromAccount) { this.fromAccount = fromAccount; }
@@ -59,82 +91,127 @@ public class Transaction {
     public void setCustomerID(String customerID) { this.customerID = customerID; }
 
     private String generateTransactionNumber() {
-        return "TXN" + System.currentTimeMillis();
+        return IdGenerators.get().nextId("TXN");
     }
 
-    private String getCurrentTime() {
-        return LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
+    // Date, time and timestamp all come from one clock reading so they cannot disagree at midnight
+    private void setTimestamp(LocalDateTime timestamp) {
+        LocalDateTime truncated = timestamp.withNano(0);
+        this.transactionTime = truncated.format(TIME_FORMAT);
+        this.transactionDate = truncated.format(DATE_FORMAT);
+        this.transactionTimestamp = truncated;
     }
 
-    private String getCurrentDate() {
-        return LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+    /** Date and time as one value, matching the TransactionTimestamp column. */
+    public LocalDateTime getTransactionTimestamp() {
+        if (transactionTimestamp == null && transactionDate != null && transactionTime != null) {
+            transactionTimestamp = LocalDateTime.parse(transactionDate + "T" + transactionTime);
+        }
+        return transactionTimestamp;
     }
 
-    public boolean recordTransaction() {
-        Connection connection = DatabaseConnection.getConnection();
-        PreparedStatement statement = null;
+    // Both served by the (CustomerID, TransactionTimestamp, TransactionNumber) index
+    private static final String HISTORY_ORDER = " ORDER BY TransactionTimestamp DESC, TransactionNumber DESC";
+    private static final String DATE_RANGE = " AND TransactionTimestamp >= ? AND TransactionTimestamp < DATE_ADD(?, INTERVAL 1 DAY)";
 
-        try {
-            String query = "INSERT INTO Transactions (TransactionNumber, TransactionAmount, TransactionType, " +
-                    "TransactionTime, TransactionDate, FromAccount, ToAccount, CustomerID) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    static final String INSERT_SQL = "INSERT INTO Transactions (TransactionNumber, TransactionAmount, TransactionType, " +
+            "TransactionTime, TransactionDate, FromAccount, ToAccount, CustomerID, TransactionTimestamp) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-            statement = connection.prepareStatement(query);
-            statement.setString(1, this.transactionNumber);
-            statement.setFloat(2, this.transactionAmount);
-            statement.setString(3, this.transactionType);
-            statement.setString(4, this.transactionTime);
-            statement.setString(5, this.transactionDate);
-            statement.setString(6, this.fromAccount);
-            statement.setString(7, this.toAccount);
-            statement.setString(8, this.customerID);
-
-            int rows = statement.executeUpdate();
-            if (rows > 0) {
-                System.out.println("Transaction recorded successfully!");
+    /**
+     * Writes this transaction on its own, in a transaction of its own. Money movements do not
+     * come through here: they write their row with recordTransaction(Connection) inside the
+     * UnitOfWork that changes the balance, so row and balance commit together. That leaves
+     * no standalone ledger writes in the application worth batching across requests, which
+     * is why there is no group-commit journal in front of this.
+     */
+    public boolean recordTransaction() {
+        return RECORD.time(this::recordNow);
+    }
+
+    private boolean recordNow() {
+        // One transaction, so the ledger row and its rollup change are durable together
+        try (UnitOfWork uow = UnitOfWork.begin()) {
+            if (recordTransaction(uow.getConnection())) {
+                uow.commit();
+                LOG.debug("Transaction recorded successfully!");
                 return true;
             }
-
         } catch (SQLException e) {
-            System.err.println("Error recording transaction: " + e.getMessage());
+            LOG.error("Error recording transaction", e);
+        }
+
+        return false;
+    }
+
+    /**
+     * Inserts this transaction and its DailyRollup change using the caller's connection, so
+     * they commit (or roll back) together with whatever else the caller does on that connection.
+     */
+    public boolean recordTransaction(Connection connection) throws SQLException {
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement(INSERT_SQL);
+            bindInsert(statement, 1);
+            if (statement.executeUpdate() == 0) return false;
+            DailyRollup.record(connection, List.of(this));
+            return true;
         } finally {
             DatabaseConnection.closeStatement(statement);
-            DatabaseConnection.closeConnection(connection);
         }
+    }
 
-        return false;
+    /** Binds the nine INSERT_SQL parameters starting at the given index. */
+    void bindInsert(PreparedStatement statement, int index) throws SQLException {
+        statement.setString(index, this.transactionNumber);
+        Money.bind(statement, index + 1, this.transactionAmount);
+        statement.setString(index + 2, this.transactionType);
+        statement.setString(index + 3, this.transactionTime);
+        statement.setString(index + 4, this.transactionDate);
+        statement.setString(index + 5, this.fromAccount);
+        statement.setString(index + 6, this.toAccount);
+        statement.setString(index + 7, this.customerID);
+        statement.setObject(index + 8, getTransactionTimestamp());
+    }
+
+    static Transaction fromResultSet(ResultSet resultSet) throws SQLException {
+        Transaction t = new Transaction(resultSet.getString("TransactionNumber"));
+        t.setTransactionAmount(Money.read(resultSet, "TransactionAmount"));
+        t.setTransactionType(resultSet.getString("TransactionType"));
+        t.setTransactionTime(resultSet.getString("TransactionTime"));
+        t.setTransactionDate(resultSet.getString("TransactionDate"));
+        t.setFromAccount(resultSet.getString("FromAccount"));
+        t.setToAccount(resultSet.getString("ToAccount"));
+        t.setCustomerID(resultSet.getString("CustomerID"));
+        t.transactionTimestamp = resultSet.getObject("TransactionTimestamp", LocalDateTime.class);
+        return t;
     }
 
     public static List<Transaction> getAllTransactions(String customerID) {
         List<Transaction> transactions = new ArrayList<>();
+        long start = Metrics.start();
+        boolean ok = false;
         Connection connection = DatabaseConnection.getConnection();
         PreparedStatement statement = null;
         ResultSet resultSet = null;
 
         try {
-            String query = "SELECT * FROM Transactions WHERE CustomerID = ? ORDER BY TransactionDate DESC, TransactionTime DESC";
+            String query = "SELECT * FROM Transactions WHERE CustomerID = ?" + HISTORY_ORDER;
             statement = connection.prepareStatement(query);
             statement.setString(1, customerID);
             resultSet = statement.executeQuery();
 
             while (resultSet.next()) {
-                Transaction t = new Transaction();
-                t.setTransactionNumber(resultSet.getString("TransactionNumber"));
-                t.setTransactionAmount(resultSet.getFloat("TransactionAmount"));
-                t.setTransactionType(resultSet.getString("TransactionType"));
-                t.setTransactionTime(resultSet.getString("TransactionTime"));
-                t.setTransactionDate(resultSet.getString("TransactionDate"));
-                t.setFromAccount(resultSet.getString("FromAccount"));
-                t.setToAccount(resultSet.getString("ToAccount"));
-                t.setCustomerID(resultSet.getString("CustomerID"));
-                transactions.add(t);
+                transactions.add(fromResultSet(resultSet));
             }
+            ok = true;
 
         } catch (SQLException e) {
-            System.err.println("Error retrieving transactions: " + e.getMessage());
+            LOG.error("Error retrieving transactions", e);
         } finally {
             DatabaseConnection.closeResultSet(resultSet);
             DatabaseConnection.closeStatement(statement);
             DatabaseConnection.closeConnection(connection);
+            HISTORY.record(start, ok);
         }
 
         return transactions;
@@ -142,35 +219,30 @@ public class Transaction {
 
     public static List<Transaction> getRecentTransactions(String customerID) {
         List<Transaction> transactions = new ArrayList<>();
+        long start = Metrics.start();
+        boolean ok = false;
         Connection connection = DatabaseConnection.getConnection();
         PreparedStatement statement = null;
         ResultSet resultSet = null;
 
         try {
-            String query = "SELECT * FROM Transactions WHERE CustomerID = ? ORDER BY TransactionDate DESC, TransactionTime DESC LIMIT 10";
+            String query = "SELECT * FROM Transactions WHERE CustomerID = ?" + HISTORY_ORDER + " LIMIT 10";
             statement = connection.prepareStatement(query);
             statement.setString(1, customerID);
             resultSet = statement.executeQuery();
 
             while (resultSet.next()) {
-                Transaction t = new Transaction();
-                t.setTransactionNumber(resultSet.getString("TransactionNumber"));
-                t.setTransactionAmount(resultSet.getFloat("TransactionAmount"));
-                t.setTransactionType(resultSet.getString("TransactionType"));
-                t.setTransactionTime(resultSet.getString("TransactionTime"));
-                t.setTransactionDate(resultSet.getString("TransactionDate"));
-                t.setFromAccount(resultSet.getString("FromAccount"));
-                t.setToAccount(resultSet.getString("ToAccount"));
-                t.setCustomerID(resultSet.getString("CustomerID"));
-                transactions.add(t);
+                transactions.add(fromResultSet(resultSet));
             }
+            ok = true;
 
         } catch (SQLException e) {
-            System.err.println("Error retrieving recent transactions: " + e.getMessage());
+            LOG.error("Error retrieving recent transactions", e);
         } finally {
             DatabaseConnection.closeResultSet(resultSet);
             DatabaseConnection.closeStatement(statement);
             DatabaseConnection.closeConnection(connection);
+            HISTORY.record(start, ok);
         }
 
         return transactions;
@@ -178,13 +250,14 @@ public class Transaction {
 
     public static List<Transaction> searchTransactions(String customerID, String startDate, String endDate) {
         List<Transaction> transactions = new ArrayList<>();
+        long start = Metrics.start();
+        boolean ok = false;
         Connection connection = DatabaseConnection.getConnection();
         PreparedStatement statement = null;
         ResultSet resultSet = null;
 
         try {
-            String query = "SELECT * FROM Transactions WHERE CustomerID = ? AND TransactionDate BETWEEN ? AND ? " +
-                    "ORDER BY TransactionDate DESC, TransactionTime DESC";
+            String query = "SELECT * FROM Transactions WHERE CustomerID = ?" + DATE_RANGE + HISTORY_ORDER;
 
             statement = connection.prepareStatement(query);
             statement.setString(1, customerID);
@@ -193,36 +266,166 @@ public class Transaction {
             resultSet = statement.executeQuery();
 
             while (resultSet.next()) {
-                Transaction t = new Transaction();
-                t.setTransactionNumber(resultSet.getString("TransactionNumber"));
-                t.setTransactionAmount(resultSet.getFloat("TransactionAmount"));
-                t.setTransactionType(resultSet.getString("TransactionType"));
-                t.setTransactionTime(resultSet.getString("TransactionTime"));
-                t.setTransactionDate(resultSet.getString("TransactionDate"));
-                t.setFromAccount(resultSet.getString("FromAccount"));
-                t.setToAccount(resultSet.getString("ToAccount"));
-                t.setCustomerID(resultSet.getString("CustomerID"));
-                transactions.add(t);
+                transactions.add(fromResultSet(resultSet));
             }
+            ok = true;
 
-            System.out.println("Found " + transactions.size() + " transactions for the specified date range.");
+            LOG.debug("Found {} transactions for the specified date range.", transactions.size());
 
         } catch (SQLException e) {
-            System.err.println("Error searching transactions: " + e.getMessage());
+            LOG.error("Error searching transactions", e);
         } finally {
             DatabaseConnection.closeResultSet(resultSet);
             DatabaseConnection.closeStatement(statement);
             DatabaseConnection.closeConnection(connection);
+            HISTORY.record(start, ok);
         }
 
         return transactions;
     }
 
+    private static final int HISTORY_FETCH_SIZE = Integer.getInteger("banking.history.fetchSize", 500);
+
+    /**
+     * Streams a customer's full history, newest first, through a forward-only server cursor
+     * so only one fetch of rows is held in memory at a time. The stream keeps a pooled
+     * connection open until it is closed, so use it in try-with-resources.
+     * @param customerID Customer whose history to read
+     * @return Lazily populated stream of transactions
+     */
+    public static Stream<Transaction> streamTransactions(String customerID) {
+        return streamQuery("SELECT * FROM Transactions WHERE CustomerID = ?" + HISTORY_ORDER, customerID);
+    }
+
+    /**
+     * Streams a customer's transactions between two dates (inclusive, yyyy-MM-dd), newest first
+     */
+    public static Stream<Transaction> streamTransactions(String customerID, String startDate, String endDate) {
+        return streamQuery("SELECT * FROM Transactions WHERE CustomerID = ?" + DATE_RANGE + HISTORY_ORDER,
+                customerID, startDate, endDate);
+    }
+
+    private static Stream<Transaction> streamQuery(String query, String... params) {
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) {
+            return Stream.empty();
+        }
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(HISTORY_FETCH_SIZE);
+            for (int i = 0; i < params.length; i++) {
+                statement.setString(i + 1, params[i]);
+            }
+            resultSet = statement.executeQuery();
+        } catch (SQLException e) {
+            LOG.error("Error streaming transactions", e);
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+            return Stream.empty();
+        }
+
+        ResultSet rows = resultSet;
+        PreparedStatement openStatement = statement;
+        Iterator<Transaction> iterator = new Iterator<>() {
+            private Boolean hasNext;
+
+            @Override
+            public boolean hasNext() {
+                if (hasNext == null) {
+                    try {
+                        hasNext = rows.next();
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("Error reading transactions: " + e.getMessage(), e);
+                    }
+                }
+                return hasNext;
+            }
+
+            @Override
+            public Transaction next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                hasNext = null;
+                try {
+                    return fromResultSet(rows);
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Error reading transactions: " + e.getMessage(), e);
+                }
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                        Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    DatabaseConnection.closeResultSet(rows);
+                    DatabaseConnection.closeStatement(openStatement);
+                    DatabaseConnection.closeConnection(connection);
+                });
+    }
+
+    /**
+     * Reads one page of history, newest first, using keyset pagination: the page starts
+     * strictly after the given transaction in (timestamp, number) order, so the cost of
+     * a page does not grow with how deep into the history it is.
+     * @param customerID Customer whose history to read
+     * @param after Last transaction of the previous page, or null for the first page
+     * @param pageSize Maximum number of transactions to return
+     * @return The page, with hasMore() telling whether another page follows
+     */
+    public static TransactionPage getTransactionPage(String customerID, Transaction after, int pageSize) {
+        List<Transaction> transactions = new ArrayList<>(pageSize + 1);
+        long start = Metrics.start();
+        boolean ok = false;
+        Connection connection = DatabaseConnection.getConnection();
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+
+        try {
+            String query = after == null
+                    ? "SELECT * FROM Transactions WHERE CustomerID = ?" + HISTORY_ORDER + " LIMIT ?"
+                    : "SELECT * FROM Transactions WHERE CustomerID = ? AND (TransactionTimestamp < ? " +
+                      "OR (TransactionTimestamp = ? AND TransactionNumber < ?))" + HISTORY_ORDER + " LIMIT ?";
+
+            statement = connection.prepareStatement(query);
+            int index = 1;
+            statement.setString(index++, customerID);
+            if (after != null) {
+                statement.setObject(index++, after.getTransactionTimestamp());
+                statement.setObject(index++, after.getTransactionTimestamp());
+                statement.setString(index++, after.getTransactionNumber());
+            }
+            // One extra row tells us whether there is a next page
+            statement.setInt(index, pageSize + 1);
+            resultSet = statement.executeQuery();
+
+            while (resultSet.next()) {
+                transactions.add(fromResultSet(resultSet));
+            }
+            ok = true;
+
+        } catch (SQLException e) {
+            LOG.error("Error retrieving transaction page", e);
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+            HISTORY.record(start, ok);
+        }
+
+        boolean hasMore = transactions.size() > pageSize;
+        if (hasMore) {
+            transactions.remove(transactions.size() - 1);
+        }
+        return new TransactionPage(transactions, hasMore);
+    }
+
     @Override
     public String toString() {
         return "Transaction{" +
                 "transactionNumber='" + transactionNumber + '\'' +
-                ", transactionAmount=" + transactionAmount +
+                ", transactionAmount=" + Money.format(transactionAmount) +
                 ", transactionType='" + transactionType + '\'' +
                 ", transactionTime='" + transactionTime + '\'' +
                 ", transactionDate='" + transactionDate + '\'' +
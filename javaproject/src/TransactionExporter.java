@@ -0,0 +1,294 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * TransactionExporter writes transaction history to CSV files named transactions_<USERID>.csv
+ * (or .csv.gz). Rows are copied straight from a server-side cursor into a byte buffer, with
+ * amounts formatted by hand, so no Transaction objects or format strings are created per row.
+ *
+ * Bulk mode exports every customer: customer IDs are split into ranges and each worker
+ * streams one range ordered by CustomerID, switching output files as the customer changes.
+ *
+ * Command line: java TransactionExporter <outputDir> [--gzip] [--threads N]
+ */
+public class TransactionExporter {
+
+    static final String HEADER = "TransactionNumber,TransactionAmount,TransactionType,TransactionDate,TransactionTime,FromAccount,ToAccount\n";
+
+    private static final String COLUMNS = "SELECT CustomerID, TransactionNumber, TransactionAmount, TransactionType, " +
+            "TransactionDate, TransactionTime, FromAccount, ToAccount FROM Transactions ";
+    private static final String ORDER = " ORDER BY CustomerID, TransactionTimestamp DESC, TransactionNumber DESC";
+    private static final int FETCH_SIZE = 1000;
+    private static final int CUSTOMERS_PER_RANGE = 500;
+    private static final Metrics.Timer EXPORT = Metrics.timer("export");
+
+    private final Path outputDir;
+    private final boolean gzip;
+
+    public TransactionExporter(Path outputDir, boolean gzip) {
+        this.outputDir = outputDir;
+        this.gzip = gzip;
+    }
+
+    public Path fileFor(String customerID) {
+        return outputDir.resolve("transactions_" + customerID + (gzip ? ".csv.gz" : ".csv"));
+    }
+
+    /**
+     * Exports one customer's history
+     * @param customerID Customer to export
+     * @return Number of rows written; 0 means no file was created
+     */
+    public long exportCustomer(String customerID) throws SQLException, IOException {
+        long start = Metrics.start();
+        boolean ok = false;
+        try {
+            long rows = exportRange(COLUMNS + "WHERE CustomerID = ?" + ORDER, customerID);
+            ok = true;
+            return rows;
+        } finally {
+            EXPORT.record(start, ok);
+        }
+    }
+
+    /**
+     * Exports every customer that has transactions, one file each, using a pool of workers
+     * @param threads Number of parallel workers (each holds one pooled connection), at most the pool's maximum size
+     * @return Total number of rows written
+     */
+    public long exportAllCustomers(int threads) throws SQLException, IOException, InterruptedException {
+        if (threads <= 0 || threads > DatabaseConnection.getPoolMaxSize()) {
+            throw new IllegalArgumentException("threads must be between 1 and the connection pool size ("
+                    + DatabaseConnection.getPoolMaxSize() + ")");
+        }
+        Files.createDirectories(outputDir);
+        List<String[]> ranges = customerRanges();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        AtomicLong total = new AtomicLong();
+        try {
+            List<Future<?>> futures = new ArrayList<>(ranges.size());
+            for (String[] range : ranges) {
+                futures.add(workers.submit(() -> {
+                    total.addAndGet(exportRange(COLUMNS + "WHERE CustomerID BETWEEN ? AND ?" + ORDER, range));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof SQLException) throw (SQLException) cause;
+                    if (cause instanceof IOException) throw (IOException) cause;
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return total.get();
+    }
+
+    // Splits the sorted customer IDs into [first, last] ranges of CUSTOMERS_PER_RANGE customers
+    private List<String[]> customerRanges() throws SQLException {
+        List<String[]> ranges = new ArrayList<>();
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) throw new SQLException("No database connection available");
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = connection.prepareStatement("SELECT UserID FROM Users ORDER BY UserID",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            resultSet = statement.executeQuery();
+            String first = null;
+            String last = null;
+            int count = 0;
+            while (resultSet.next()) {
+                last = resultSet.getString(1);
+                if (first == null) first = last;
+                if (++count == CUSTOMERS_PER_RANGE) {
+                    ranges.add(new String[] { first, last });
+                    first = null;
+                    count = 0;
+                }
+            }
+            if (first != null) ranges.add(new String[] { first, last });
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+        return ranges;
+    }
+
+    private long exportRange(String query, String... params) throws SQLException, IOException {
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) throw new SQLException("No database connection available");
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        CsvOutput out = null;
+        long rows = 0;
+        try {
+            statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            for (int i = 0; i < params.length; i++) {
+                statement.setString(i + 1, params[i]);
+            }
+            resultSet = statement.executeQuery();
+
+            String currentCustomer = null;
+            while (resultSet.next()) {
+                String customerID = resultSet.getString(1);
+                if (!customerID.equals(currentCustomer)) {
+                    if (out != null) out.close();
+                    out = new CsvOutput(open(fileFor(customerID)));
+                    out.writeAscii(HEADER);
+                    currentCustomer = customerID;
+                }
+                out.writeField(resultSet.getString(2));
+                out.writeByte(',');
+                out.writeAmount(Money.read(resultSet, 3));
+                out.writeByte(',');
+                out.writeField(resultSet.getString(4));
+                out.writeByte(',');
+                out.writeField(resultSet.getString(5));
+                out.writeByte(',');
+                out.writeField(resultSet.getString(6));
+                out.writeByte(',');
+                out.writeField(resultSet.getString(7));
+                out.writeByte(',');
+                out.writeField(resultSet.getString(8));
+                out.writeByte('\n');
+                rows++;
+            }
+        } finally {
+            if (out != null) out.close();
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+        return rows;
+    }
+
+    private OutputStream open(Path file) throws IOException {
+        OutputStream raw = Files.newOutputStream(file);
+        return gzip ? new GZIPOutputStream(raw, 1 << 16) : raw;
+    }
+
+    /**
+     * Buffered CSV byte writer. Fields are written without quoting unless they contain a
+     * comma, quote or line break; null fields are written as empty.
+     */
+    static final class CsvOutput implements AutoCloseable {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[1 << 16];
+        private final byte[] digits = new byte[20];
+        private int position = 0;
+
+        CsvOutput(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeByte(int b) throws IOException {
+            if (position == buffer.length) flushBuffer();
+            buffer[position++] = (byte) b;
+        }
+
+        void writeAscii(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) {
+                writeByte(s.charAt(i));
+            }
+        }
+
+        void writeField(String value) throws IOException {
+            if (value == null) return;
+            boolean plain = true;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == ',' || c == '"' || c == '\n' || c == '\r' || c > 0x7F) {
+                    plain = false;
+                    break;
+                }
+            }
+            if (plain) {
+                writeAscii(value);
+                return;
+            }
+            boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            String text = quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+            for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+                writeByte(b);
+            }
+        }
+
+        /** Writes an amount in minor units with two decimals, like Money.format(). */
+        void writeAmount(long amount) throws IOException {
+            if (amount < 0) {
+                writeByte('-');
+            }
+            long whole = Math.abs(amount / 100);
+            int fraction = (int) Math.abs(amount % 100);
+            int n = 0;
+            do {
+                digits[n++] = (byte) ('0' + (whole % 10));
+                whole /= 10;
+            } while (whole > 0);
+            while (n > 0) {
+                writeByte(digits[--n]);
+            }
+            writeByte('.');
+            writeByte('0' + fraction / 10);
+            writeByte('0' + fraction % 10);
+        }
+
+        private void flushBuffer() throws IOException {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flushBuffer();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java TransactionExporter <outputDir> [--gzip] [--threads N]");
+            System.exit(1);
+        }
+        boolean gzip = false;
+        // Each worker holds a connection for its whole range, so more workers than pooled
+        // connections would only time out waiting for one
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), DatabaseConnection.getPoolMaxSize());
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--gzip")) gzip = true;
+            else if (args[i].equals("--threads") && i + 1 < args.length) threads = Integer.parseInt(args[++i]);
+        }
+        if (threads <= 0 || threads > DatabaseConnection.getPoolMaxSize()) {
+            System.err.println("--threads must be between 1 and " + DatabaseConnection.getPoolMaxSize()
+                    + " (banking.pool.maxSize)");
+            System.exit(1);
+        }
+        long start = System.currentTimeMillis();
+        long rows = new TransactionExporter(Paths.get(args[0]), gzip).exportAllCustomers(threads);
+        System.out.println("Exported " + rows + " transactions in " + (System.currentTimeMillis() - start) + " ms");
+        DatabaseConnection.shutdownPool();
+    }
+}
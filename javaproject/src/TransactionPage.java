@@ -0,0 +1,25 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a customer's transaction history, newest first.
+ * Pass getLast() to Transaction.getTransactionPage() to fetch the next page.
+ */
+public class TransactionPage {
+
+    private final List<Transaction> transactions;
+    private final boolean hasMore;
+
+    public TransactionPage(List<Transaction> transactions, boolean hasMore) {
+        this.transactions = Collections.unmodifiableList(transactions);
+        this.hasMore = hasMore;
+    }
+
+    public List<Transaction> getTransactions() { return transactions; }
+    public boolean hasMore() { return hasMore; }
+    public boolean isEmpty() { return transactions.isEmpty(); }
+
+    public Transaction getLast() {
+        return transactions.isEmpty() ? null : transactions.get(transactions.size() - 1);
+    }
+}
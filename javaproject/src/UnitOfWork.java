@@ -0,0 +1,112 @@
+import java.sql.*;
+import java.util.List;
+
+/**
+ * UnitOfWork holds one pooled connection with autocommit off, so a balance change and
+ * its ledger row are committed together. Closing without commit() rolls everything back.
+ *
+ * When multi-statement mode is enabled (-Dbanking.db.multiStatement=true) the UPDATE and
+ * the ledger INSERT are sent to MySQL as a single statement, i.e. one round-trip; the
+ * DailyRollup change follows as its own statement.
+ */
+public class UnitOfWork implements AutoCloseable {
+    private static final Log LOG = Log.get(UnitOfWork.class);
+
+    private final Connection connection;
+    private boolean committed = false;
+
+    private UnitOfWork(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Borrows a connection and starts a database transaction on it
+     * @return UnitOfWork that must be closed by the caller
+     * @throws SQLException if no connection is available
+     */
+    public static UnitOfWork begin() throws SQLException {
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) {
+            throw new SQLException("No database connection available");
+        }
+        try {
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            DatabaseConnection.closeConnection(connection);
+            throw e;
+        }
+        return new UnitOfWork(connection);
+    }
+
+    public Connection getConnection() { return connection; }
+
+    public void commit() throws SQLException {
+        connection.commit();
+        committed = true;
+    }
+
+    /**
+     * Applies a balance UPDATE and inserts the ledger row for it. Nothing is committed;
+     * if the UPDATE matched no row the caller should simply close without committing.
+     * @param updateSql Balance UPDATE statement
+     * @param transaction Ledger row describing the change
+     * @param updateParams Parameters for updateSql, in order
+     * @return Number of account rows changed by the UPDATE
+     */
+    public int postBalanceChange(String updateSql, Transaction transaction, Object... updateParams) throws SQLException {
+        if (DatabaseConnection.isMultiStatementEnabled()) {
+            return postAsOneStatement(updateSql, transaction, updateParams);
+        }
+
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement(updateSql);
+            bind(statement, updateParams);
+            int rows = statement.executeUpdate();
+            if (rows > 0 && !transaction.recordTransaction(connection)) {
+                throw new SQLException("Ledger row was not written for " + transaction.getTransactionNumber());
+            }
+            return rows;
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+    }
+
+    private int postAsOneStatement(String updateSql, Transaction transaction, Object... updateParams) throws SQLException {
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement(updateSql + "; " + Transaction.INSERT_SQL);
+            bind(statement, updateParams);
+            transaction.bindInsert(statement, updateParams.length + 1);
+            statement.execute();
+            int rows = statement.getUpdateCount();
+            statement.getMoreResults();
+            // The INSERT runs even when the UPDATE matched nothing; the caller's rollback discards it
+            if (rows > 0 && statement.getUpdateCount() <= 0) {
+                throw new SQLException("Ledger row was not written for " + transaction.getTransactionNumber());
+            }
+            if (rows > 0) DailyRollup.record(connection, List.of(transaction));
+            return rows;
+        } finally {
+            DatabaseConnection.closeStatement(statement);
+        }
+    }
+
+    private static void bind(PreparedStatement statement, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            statement.setObject(i + 1, params[i]);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!committed) {
+            try {
+                connection.rollback();
+            } catch (SQLException e) {
+                LOG.error("Rollback Error", e);
+            }
+        }
+        DatabaseConnection.closeConnection(connection);
+    }
+}
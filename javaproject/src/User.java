@@ -1,12 +1,18 @@
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * User class represents a bank customer with authentication capabilities
  * This class handles user registration, login, and user data management
  */
 public class User {
+    private static final Log LOG = Log.get(User.class);
+
+    private static final Metrics.Timer REGISTER = Metrics.timer("register");
+    private static final Metrics.Timer AUTHENTICATE = Metrics.timer("authenticate");
     
     // Private instance variables (encapsulation)
     private String userID;
@@ -67,7 +73,7 @@ public class User {
      * @return String representing unique user ID
      */
     private String generateUserID() {
-        return "USER" + System.currentTimeMillis();
+        return IdGenerators.get().nextId("USER");
     }
     
     /**
@@ -80,21 +86,65 @@ public class User {
         return now.format(formatter);
     }
     
+    /** Outcome of register(). */
+    public enum RegistrationResult {
+        SUCCESS,
+        USERNAME_TAKEN,
+        BUSY,
+        ERROR
+    }
+    
     /**
-     * Registers a new user in the database
+     * Registers a new user in the database and reports the outcome on the console
      * @return true if registration successful, false otherwise
      */
     public boolean registerUser() {
+        switch (register()) {
+            case SUCCESS -> {
+                System.out.println("User registered successfully!");
+                return true;
+            }
+            case USERNAME_TAKEN -> System.out.println("Username already exists! Please choose a different username.");
+            case BUSY -> System.out.println("The system is busy. Please try registering again.");
+            default -> {}
+        }
+        return false;
+    }
+    
+    /**
+     * Registers a new user in the database. The password is hashed on the login
+     * executor and only the hash is stored. Uniqueness is enforced by the UNIQUE
+     * constraint on Username; a duplicate-key error is reported as a taken username.
+     * @return SUCCESS, USERNAME_TAKEN, BUSY if the login executor is saturated, or ERROR
+     */
+    public RegistrationResult register() {
+        return REGISTER.time(this::insertUser, result -> result == RegistrationResult.SUCCESS);
+    }
+    
+    private RegistrationResult insertUser() {
+        // The UNIQUE constraint on Username decides; this lookup only spares the password hash
+        // for a name the loaded filter reports as probably taken. Before the filter is loaded
+        // it would report every name, so the INSERT alone is relied on.
+        if (UsernameFilter.isReady() && UsernameFilter.mightContain(this.username) && isUsernameExists(this.username)) {
+            return RegistrationResult.USERNAME_TAKEN;
+        }
+        
+        // Hash before borrowing a connection so the slow part holds no pooled connection
+        String passwordHash;
+        try {
+            String plain = this.password;
+            passwordHash = LoginExecutor.call(() -> PasswordHasher.hash(plain));
+        } catch (RejectedExecutionException | TimeoutException e) {
+            return RegistrationResult.BUSY;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return RegistrationResult.ERROR;
+        }
+        
         Connection connection = DatabaseConnection.getConnection();
         PreparedStatement statement = null;
         
         try {
-            // Check if username already exists
-            if (isUsernameExists(this.username)) {
-                System.out.println("Username already exists! Please choose a different username.");
-                return false;
-            }
-            
             // SQL query to insert new user
             String query = """
                 INSERT INTO Users (UserID, Username, Password, FullName, Email, Phone, CreatedDate) 
@@ -104,7 +154,7 @@ public class User {
             statement = connection.prepareStatement(query);
             statement.setString(1, this.userID);
             statement.setString(2, this.username);
-            statement.setString(3, this.password); // In real application, password should be hashed
+            statement.setString(3, passwordHash);
             statement.setString(4, this.fullName);
             statement.setString(5, this.email);
             statement.setString(6, this.phone);
@@ -113,68 +163,125 @@ public class User {
             int rowsAffected = statement.executeUpdate();
             
             if (rowsAffected > 0) {
-                System.out.println("User registered successfully!");
-                return true;
+                this.password = passwordHash;
+                UsernameFilter.add(this.username);
+                return RegistrationResult.SUCCESS;
             }
             
         } catch (SQLException e) {
-            System.err.println("Error registering user: " + e.getMessage());
-            e.printStackTrace();
+            if (DatabaseConnection.isDuplicateKey(e)) {
+                UsernameFilter.add(this.username);
+                return RegistrationResult.USERNAME_TAKEN;
+            }
+            LOG.error("Error registering user", e);
         } finally {
             DatabaseConnection.closeStatement(statement);
             DatabaseConnection.closeConnection(connection);
         }
         
-        return false;
+        return RegistrationResult.ERROR;
     }
     
     /**
-     * Authenticates user login credentials
+     * Authenticates user login credentials and reports the outcome on the console
      * @param username Username to verify
      * @param password Password to verify
      * @return User object if login successful, null if failed
      */
     public static User authenticateUser(String username, String password) {
+        User user;
+        try {
+            user = authenticate(username, password);
+        } catch (RejectedExecutionException e) {
+            System.out.println("Too many logins in progress. Please try again.");
+            return null;
+        }
+        if (user == null) {
+            System.out.println("Invalid username or password!");
+            return null;
+        }
+        System.out.println("User authenticated successfully!");
+        return user;
+    }
+    
+    /**
+     * Authenticates user login credentials. The row is read first and its connection
+     * returned; the password is then checked on the login executor. A plain-text or
+     * outdated hash is replaced by a fresh one after a successful check.
+     * @param username Username to verify
+     * @param password Password to verify
+     * @return User object if the credentials match, null otherwise
+     * @throws RejectedExecutionException if the login executor is saturated or timed out
+     */
+    public static User authenticate(String username, String password) {
+        return AUTHENTICATE.time(() -> checkCredentials(username, password), user -> user != null);
+    }
+    
+    private static User checkCredentials(String username, String password) {
+        User user = getUserByUsername(username);
+        String stored = user == null ? null : user.getPassword();
+        
+        String current;
+        try {
+            current = LoginExecutor.call(() -> {
+                if (stored == null) {
+                    // Unknown user: take as long as a real check would
+                    PasswordHasher.verifyAgainstDummy(password);
+                    return null;
+                }
+                if (!PasswordHasher.verify(password, stored)) {
+                    return null;
+                }
+                return PasswordHasher.needsRehash(stored) ? PasswordHasher.hash(password) : stored;
+            });
+        } catch (TimeoutException e) {
+            throw new RejectedExecutionException("Login timed out", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        
+        if (current == null) {
+            return null;
+        }
+        if (!current.equals(stored) && replacePassword(user.getUserID(), stored, current)) {
+            user.setPassword(current);
+        }
+        return user;
+    }
+    
+    /**
+     * Replaces a stored password value, unless it was changed in the meantime
+     * @return true if the row was updated
+     */
+    private static boolean replacePassword(String userID, String oldValue, String newValue) {
         Connection connection = DatabaseConnection.getConnection();
         PreparedStatement statement = null;
-        ResultSet resultSet = null;
         
         try {
-            String query = "SELECT * FROM Users WHERE Username = ? AND Password = ?";
-            
-            statement = connection.prepareStatement(query);
-            statement.setString(1, username);
-            statement.setString(2, password); // In real application, compare with hashed password
-            
-            resultSet = statement.executeQuery();
-            
-            if (resultSet.next()) {
-                // Create User object with retrieved data
-                User user = new User();
-                user.setUserID(resultSet.getString("UserID"));
-                user.setUsername(resultSet.getString("Username"));
-                user.setPassword(resultSet.getString("Password"));
-                user.setFullName(resultSet.getString("FullName"));
-                user.setEmail(resultSet.getString("Email"));
-                user.setPhone(resultSet.getString("Phone"));
-                user.setCreatedDate(resultSet.getString("CreatedDate"));
-                
-                System.out.println("User authenticated successfully!");
-                return user;
-            } else {
-                System.out.println("Invalid username or password!");
-            }
-            
+            statement = connection.prepareStatement("UPDATE Users SET Password = ? WHERE UserID = ? AND Password = ?");
+            statement.setString(1, newValue);
+            statement.setString(2, userID);
+            statement.setString(3, oldValue);
+            return statement.executeUpdate() > 0;
         } catch (SQLException e) {
-            System.err.println("Error authenticating user: " + e.getMessage());
-            e.printStackTrace();
+            LOG.warn("Error upgrading password hash", e);
         } finally {
-            DatabaseConnection.closeResultSet(resultSet);
             DatabaseConnection.closeStatement(statement);
             DatabaseConnection.closeConnection(connection);
         }
         
-        return null;
+        return false;
+    }
+    
+    /**
+     * Checks whether a username can still be registered. Most free names are answered
+     * from UsernameFilter without a query.
+     * @param username Username to check
+     * @return true if the username is free
+     */
+    public static boolean isUsernameAvailable(String username) {
+        return !UsernameFilter.mightContain(username) || !isUsernameExists(username);
     }
     
     /**
@@ -182,25 +289,22 @@ public class User {
      * @param username Username to check
      * @return true if username exists, false otherwise
      */
-    private boolean isUsernameExists(String username) {
+    private static boolean isUsernameExists(String username) {
         Connection connection = DatabaseConnection.getConnection();
         PreparedStatement statement = null;
         ResultSet resultSet = null;
         
         try {
-            String query = "SELECT COUNT(*) FROM Users WHERE Username = ?";
+            String query = "SELECT 1 FROM Users WHERE Username = ? LIMIT 1";
             statement = connection.prepareStatement(query);
             statement.setString(1, username);
             
             resultSet = statement.executeQuery();
             
-            if (resultSet.next()) {
-                return resultSet.getInt(1) > 0;
-            }
+            return resultSet.next();
             
         } catch (SQLException e) {
-            System.err.println("Error checking username: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error checking username", e);
         } finally {
             DatabaseConnection.closeResultSet(resultSet);
             DatabaseConnection.closeStatement(statement);
@@ -233,13 +337,12 @@ public class User {
             int rowsAffected = statement.executeUpdate();
             
             if (rowsAffected > 0) {
-                System.out.println("User information updated successfully!");
+                LOG.debug("User information updated successfully!");
                 return true;
             }
             
         } catch (SQLException e) {
-            System.err.println("Error updating user info: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error updating user info", e);
         } finally {
             DatabaseConnection.closeStatement(statement);
             DatabaseConnection.closeConnection(connection);
@@ -279,8 +382,7 @@ public class User {
             }
             
         } catch (SQLException e) {
-            System.err.println("Error retrieving user: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error retrieving user", e);
         } finally {
             DatabaseConnection.closeResultSet(resultSet);
             DatabaseConnection.closeStatement(statement);
@@ -0,0 +1,161 @@
+import java.sql.*;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * UsernameFilter is an in-memory Bloom filter of taken usernames. mightContain() returning
+ * false means the username is definitely free (as far as this process knows), so the
+ * registration form can say so without a query. true means "probably taken" and is
+ * confirmed against the database.
+ *
+ * The filter is filled once at startup by warmUp(), retried with backoff until it succeeds,
+ * and updated on every registration. Until warm-up has finished, every name counts as
+ * "probably taken" and isReady() is false. Usernames registered
+ * by other instances are not seen here. That is safe because the UNIQUE constraint on
+ * Users.Username remains the real check at INSERT time.
+ *
+ * Names are folded the way MySQL's default case- and accent-insensitive collation compares
+ * them, so "Alice" and "alice " are the same name to the filter too.
+ */
+public final class UsernameFilter {
+    private static final Log LOG = Log.get(UsernameFilter.class);
+
+    private static final int EXPECTED_NAMES = Integer.getInteger("banking.usernames.expected", 1_000_000);
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int FETCH_SIZE = 5000;
+    private static final long WARM_UP_FIRST_RETRY_MILLIS = 1_000;
+    private static final long WARM_UP_MAX_RETRY_MILLIS = 60_000;
+
+    // m = -n ln p / (ln 2)^2 bits, k = (m / n) ln 2 hash functions
+    private static final long BITS = Math.max(64,
+            (long) Math.ceil(-EXPECTED_NAMES * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2))));
+    private static final int HASHES = Math.max(1, (int) Math.round((double) BITS / EXPECTED_NAMES * Math.log(2)));
+    private static final AtomicLongArray WORDS = new AtomicLongArray((int) ((BITS + 63) / 64));
+
+    private static volatile boolean ready = false;
+
+    private UsernameFilter() {}
+
+    /**
+     * Loads the filter in a background thread so startup does not wait for it. A failed
+     * load is retried, waiting twice as long after each failure, up to a minute.
+     */
+    public static void startWarmUp() {
+        Thread loader = new Thread(() -> {
+            long delay = WARM_UP_FIRST_RETRY_MILLIS;
+            while (!ready) {
+                try {
+                    int loaded = warmUp();
+                    LOG.info("Username filter loaded with {} usernames", loaded);
+                } catch (SQLException e) {
+                    LOG.error("Error loading username filter; retrying in {} ms", delay, e);
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                    delay = Math.min(delay * 2, WARM_UP_MAX_RETRY_MILLIS);
+                }
+            }
+        }, "username-filter-warmup");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Adds every existing username to the filter
+     * @return Number of usernames read
+     */
+    public static int warmUp() throws SQLException {
+        Connection connection = DatabaseConnection.getConnection();
+        if (connection == null) throw new SQLException("No database connection available");
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        int count = 0;
+        try {
+            statement = connection.prepareStatement("SELECT Username FROM Users",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                add(resultSet.getString(1));
+                count++;
+            }
+            ready = true;
+        } finally {
+            DatabaseConnection.closeResultSet(resultSet);
+            DatabaseConnection.closeStatement(statement);
+            DatabaseConnection.closeConnection(connection);
+        }
+        return count;
+    }
+
+    public static boolean isReady() {
+        return ready;
+    }
+
+    /** Records a username as taken. */
+    public static void add(String username) {
+        if (username == null) return;
+        String folded = fold(username);
+        long h1 = hash(folded, 0x9E3779B97F4A7C15L);
+        long h2 = hash(folded, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Math.floorMod(h1 + i * h2, BITS);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while (((current = WORDS.get(word)) & mask) == 0 && !WORDS.compareAndSet(word, current, current | mask)) {
+                // Another thread changed this word; retry with its value
+            }
+        }
+    }
+
+    /**
+     * @param username Username to look up
+     * @return false if the username is definitely not taken; true if it probably is, or
+     *         if the filter has not finished loading
+     */
+    public static boolean mightContain(String username) {
+        if (!ready || username == null) return true;
+        String folded = fold(username);
+        long h1 = hash(folded, 0x9E3779B97F4A7C15L);
+        long h2 = hash(folded, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Math.floorMod(h1 + i * h2, BITS);
+            if ((WORDS.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    // Case-, accent- and trailing-space-insensitive form of a username
+    static String fold(String username) {
+        String stripped = username.stripTrailing();
+        boolean plain = true;
+        for (int i = 0; i < stripped.length(); i++) {
+            if (stripped.charAt(i) > 0x7F) {
+                plain = false;
+                break;
+            }
+        }
+        if (!plain) {
+            stripped = Normalizer.normalize(stripped, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        }
+        return stripped.toLowerCase(Locale.ROOT);
+    }
+
+    // 64-bit string hash: per-char multiply-xor, then the MurmurHash3 finalizer
+    private static long hash(String s, long seed) {
+        long h = seed ^ s.length();
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * Outcome of a withdrawal or transfer, so callers can tell a declined request from a failed one.
+ */
+public enum WithdrawalResult {
+    SUCCESS,
+    INVALID_AMOUNT,
+    INSUFFICIENT_FUNDS,
+    /** The account to debit or credit does not exist. */
+    ACCOUNT_NOT_FOUND,
+    ERROR
+}